@@ -0,0 +1,138 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that {@code MonteCarloCalibrator} picks the same levels whatever its parallelism.
+ *
+ * Every seed builds a random bar series and calibrates it, long and short, with a new
+ * calibrator per run so the cache plays no part. The first parallelism is the reference; every
+ * other parallelism, and every repeat, must produce an equal grid (every stop/target pair's
+ * probabilities, mean and deviation) and the same best level. Leaves are kept at the minimum
+ * size so each run forks many tasks, and path counts that don't divide evenly are included.
+ * Runs with every {@code mvn verify} of this module (see {@link Checks}).
+ *
+ * Usage: CalibrationDeterminismCheck [--seeds N] [--paths N,N...] [--parallelism N,N...]
+ *        [--repeats N] [--leaf-paths N]
+ */
+public class CalibrationDeterminismCheck {
+    private static final MethodHandle NEW_CALIBRATOR;
+    private static final MethodHandle CALIBRATE;
+    private static final MethodHandle GRID;
+    private static final MethodHandle BEST;
+
+    static {
+        try {
+            Class<?> calibrator = Class.forName("MonteCarloCalibrator");
+            Class<?> calibration = Class.forName("MonteCarloCalibrator$Calibration");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEW_CALIBRATOR = lookup.unreflectConstructor(calibrator.getConstructor(Properties.class))
+                .asType(MethodType.methodType(Object.class, Properties.class));
+            CALIBRATE = lookup.unreflect(calibrator.getMethod("calibrate", Class.forName("BarSeries"), double.class))
+                .asType(MethodType.methodType(Object.class, Object.class, Object.class, double.class));
+            GRID = lookup.unreflect(calibration.getMethod("grid"))
+                .asType(MethodType.methodType(List.class, Object.class));
+            BEST = lookup.unreflect(calibration.getMethod("best"))
+                .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Checks.exit(run(Checks.Options.parse(args, "seeds", "paths", "parallelism", "repeats", "leaf-paths")));
+    }
+
+    /**
+     * Runs every seed; returns the number of failed comparisons.
+     */
+    public static int run(Checks.Options options) throws Throwable {
+        int[] pathCounts = options.integers("paths", 20000, 4099);
+        int[] parallelisms = options.integers("parallelism", 1, 4);
+        int repeats = options.integer("repeats", 3);
+        int leafPaths = options.integer("leaf-paths", 256);
+        return Checks.forEachSeed(options.integer("seeds", 5), seed -> {
+            Object series = randomSeries(seed);
+            double predicted = new SplittableRandom(seed).nextDouble() * 6 - 3;
+            Map<String, Checks.Case> cases = new LinkedHashMap<>();
+            for (int paths : pathCounts) {
+                for (double change : new double[] {Math.abs(predicted), -Math.abs(predicted)}) {
+                    cases.put(String.format("seed %d, %d paths, %s %.2f%%", seed, paths,
+                                            change >= 0 ? "long" : "short", change),
+                              () -> compare(series, change, paths, parallelisms, repeats, leafPaths));
+                }
+            }
+            return cases;
+        });
+    }
+
+    // Null when every run matched the first, otherwise the first difference
+    private static String compare(Object series, double change, int paths, int[] parallelisms, int repeats,
+                                  int leafPaths) throws Throwable {
+        List<?> referenceGrid = null;
+        Object referenceBest = null;
+        for (int parallelism : parallelisms) {
+            for (int repeat = 0; repeat < repeats; repeat++) {
+                Properties props = new Properties();
+                props.setProperty("mc.paths", String.valueOf(paths));
+                props.setProperty("mc.parallelism", String.valueOf(parallelism));
+                props.setProperty("mc.leaf.paths", String.valueOf(leafPaths));
+                Object calibrator = NEW_CALIBRATOR.invokeExact(props);
+                Object calibration = CALIBRATE.invokeExact(calibrator, series, change);
+                if (calibration == null) {
+                    return "no calibration (too little history)";
+                }
+                List<?> grid = (List<?>) GRID.invokeExact(calibration);
+                Object best = BEST.invokeExact(calibration);
+                if (referenceGrid == null) {
+                    referenceGrid = grid;
+                    referenceBest = best;
+                    continue;
+                }
+                if (grid.size() != referenceGrid.size()) {
+                    return "parallelism " + parallelism + ", run " + (repeat + 1) + ": " + grid.size() +
+                           " levels instead of " + referenceGrid.size();
+                }
+                for (int i = 0; i < referenceGrid.size(); i++) {
+                    if (!referenceGrid.get(i).equals(grid.get(i))) {
+                        return "parallelism " + parallelism + ", run " + (repeat + 1) + ": " + grid.get(i) +
+                               " instead of " + referenceGrid.get(i);
+                    }
+                }
+                if (!referenceBest.equals(best)) {
+                    return "parallelism " + parallelism + ", run " + (repeat + 1) + ": best " + best +
+                           " instead of " + referenceBest;
+                }
+            }
+        }
+        return null;
+    }
+
+    // 300 bars of a random walk with fat-tailed days
+    private static Object randomSeries(long seed) throws Throwable {
+        Random random = new Random(seed);
+        int n = 300;
+        int[] dates = new int[n];
+        double[] close = new double[n];
+        double price = 20 + random.nextDouble() * 200;
+        double volatility = 0.005 + random.nextDouble() * 0.03;
+        for (int i = 0; i < n; i++) {
+            double shock = random.nextGaussian() * volatility;
+            if (random.nextDouble() < 0.02) {
+                shock *= 4;
+            }
+            price *= Math.exp(shock);
+            dates[i] = 19000 + i;
+            close[i] = price;
+        }
+        return Checks.barSeries("SYM" + seed, dates, close);
+    }
+}
@@ -0,0 +1,165 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Correctness checks of the server's classes, and the harness they share.
+ *
+ * Each check class has a {@code run(Options)} that returns its number of failures and a
+ * {@code main} for runs by hand with other options. {@code mvn verify} in this module runs
+ * {@link #main}, which runs every check with its defaults and fails the build on any failure;
+ * {@code -DskipTests} skips it.
+ *
+ * The server's classes are in the default package, so checks bind them by name; the server jar
+ * has to be on the classpath.
+ *
+ * Usage: java -cp target/benchmarks.jar benchmarks.Checks
+ */
+public final class Checks {
+    /**
+     * One case; null when it passed, otherwise what went wrong.
+     */
+    public interface Case {
+        String run() throws Throwable;
+    }
+
+    /**
+     * The named cases to run for one seed, in order.
+     */
+    public interface SeedCases {
+        Map<String, Case> cases(long seed) throws Throwable;
+    }
+
+    /**
+     * {@code --name value} arguments.
+     */
+    public static final class Options {
+        private final Map<String, String> values = new HashMap<>();
+
+        public static Options defaults() {
+            return new Options();
+        }
+
+        /**
+         * Parses the arguments, exiting with 1 on one not in {@code names}.
+         */
+        public static Options parse(String[] args, String... names) {
+            Options options = new Options();
+            List<String> known = Arrays.asList(names);
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i].startsWith("--") ? args[i].substring(2) : null;
+                if (name == null || !known.contains(name) || i + 1 == args.length) {
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+                }
+                options.values.put(name, args[++i]);
+            }
+            return options;
+        }
+
+        public int integer(String name, int defaultValue) {
+            String value = values.get(name);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        }
+
+        public double number(String name, double defaultValue) {
+            String value = values.get(name);
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        }
+
+        // A comma-separated list
+        public int[] integers(String name, int... defaultValues) {
+            String value = values.get(name);
+            if (value == null) {
+                return defaultValues;
+            }
+            return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .toArray();
+        }
+    }
+
+    private static final MethodHandle NEW_SERIES;
+
+    static {
+        try {
+            Class<?> series = Class.forName("BarSeries");
+            NEW_SERIES = MethodHandles.lookup()
+                .unreflectConstructor(series.getConstructor(String.class, int[].class, double[].class, double[].class,
+                                                            double[].class, double[].class, double[].class,
+                                                            boolean.class))
+                .asType(MethodType.methodType(Object.class, String.class, int[].class, double[].class, double[].class,
+                                              double[].class, double[].class, double[].class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Checks() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length > 0) {
+            System.err.println("Unknown argument: " + args[0]);
+            System.exit(1);
+        }
+        int failures = 0;
+        System.out.println("RiskEngineCheck:");
+        failures += RiskEngineCheck.run(Options.defaults());
+        System.out.println("CalibrationDeterminismCheck:");
+        failures += CalibrationDeterminismCheck.run(Options.defaults());
+        System.out.println("SeriesQueryCheck:");
+        failures += SeriesQueryCheck.run(Options.defaults());
+        System.out.println("PaperRestartCheck:");
+        failures += PaperRestartCheck.run(Options.defaults());
+        exit(failures);
+    }
+
+    /**
+     * A real (not mock) series whose open, high and low are its closes, with no volume.
+     */
+    public static Object barSeries(String symbol, int[] dates, double[] close) throws Throwable {
+        return (Object) NEW_SERIES.invokeExact(symbol, dates, close, close, close, close, new double[dates.length],
+                                               false);
+    }
+
+    /**
+     * Runs the cases of seeds 1 to {@code seeds}; returns how many failed.
+     */
+    public static int forEachSeed(int seeds, SeedCases cases) throws Throwable {
+        int failures = 0;
+        for (long seed = 1; seed <= seeds; seed++) {
+            for (Map.Entry<String, Case> entry : cases.cases(seed).entrySet()) {
+                failures += report(entry.getKey(), entry.getValue());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Runs one case and prints "name: ok" or "name: FAILED why"; returns 1 if it failed.
+     */
+    public static int report(String name, Case check) throws Throwable {
+        String failure = check.run();
+        System.out.println(name + (failure == null ? ": ok" : ": FAILED " + failure));
+        return failure == null ? 0 : 1;
+    }
+
+    /**
+     * Exits with 1 if anything failed.
+     */
+    public static void exit(int failures) {
+        if (failures > 0) {
+            System.out.println(failures + " failed");
+            System.exit(1);
+        }
+    }
+}
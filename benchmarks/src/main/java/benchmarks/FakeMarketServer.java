@@ -0,0 +1,212 @@
+package benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for Alpha Vantage and the eToro virtual trading API.
+ *
+ * {@code /query?function=TIME_SERIES_DAILY&symbol=X} answers with the fixture
+ * {@code <fixtures>/X_daily.json}, or Alpha Vantage's "Error Message" body for unknown
+ * symbols. Beyond {@code --rate-limit-per-minute} calls in the current minute it answers
+ * with the "Note" body the real API sends when rate limited. The eToro endpoints live
+ * under {@code /etoro}: login returns a token, the portfolio a fixed balance, and trades
+ * and signals succeed. Every response is delayed by {@code --latency-ms} plus up to
+ * {@code --jitter-ms}, so results do not depend on the network or on API quotas. It also
+ * counts the client connections it sees, to check that callers reuse them.
+ *
+ * Usage: FakeMarketServer [--port 8090] [--fixtures ../data/json] [--latency-ms N]
+ *        [--jitter-ms N] [--rate-limit-per-minute N]
+ */
+public class FakeMarketServer {
+    private static final String RATE_LIMIT_NOTE = "{\"Note\":\"Thank you for using Alpha Vantage! Our standard " +
+        "API call frequency is 5 calls per minute and 500 calls per day.\"}";
+
+    static {
+        // Without TCP_NODELAY Nagle and delayed ACKs add ~40 ms to every keep-alive response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        // Keeps idle client connections open for the whole run, so connections() counts reuse only
+        System.setProperty("sun.net.httpserver.idleInterval", "3600");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> fixtures = new ConcurrentHashMap<>();
+    private final File fixtureDir;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final int rateLimitPerMinute;
+    private final AtomicLong minute = new AtomicLong();
+    private final AtomicLong callsThisMinute = new AtomicLong();
+
+    final AtomicLong seriesCalls = new AtomicLong();
+    final AtomicLong rateLimited = new AtomicLong();
+    final AtomicLong etoroCalls = new AtomicLong();
+    // Each client socket has its own remote port, so this counts TCP connections opened
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    public FakeMarketServer(int port, File fixtureDir, long latencyMillis, long jitterMillis,
+                            int rateLimitPerMinute) throws IOException {
+        this.fixtureDir = fixtureDir;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.rateLimitPerMinute = rateLimitPerMinute;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fake-market");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/query", this::query);
+        server.createContext("/etoro/login", exchange -> respond(exchange, 200, "{\"token\":\"load-test-token\"}", true));
+        server.createContext("/etoro/portfolio/virtual", exchange -> respond(exchange, 200, "{\"balance\":100000.0}", true));
+        server.createContext("/etoro/trade/virtual", exchange -> respond(exchange, 200, "{\"success\":true}", true));
+        server.createContext("/etoro/trading/signals", exchange -> respond(exchange, 200,
+            "{\"sentiment\":\"bullish\",\"stopLossPercent\":2.5,\"takeProfitPercent\":5.0,\"confidence\":0.8}", true));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Distinct client connections seen so far; far fewer than calls means keep-alive works.
+     */
+    public int connections() {
+        return connections.size();
+    }
+
+    private void query(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+        if (rateLimitPerMinute > 0 && overRateLimit()) {
+            rateLimited.incrementAndGet();
+            respond(exchange, 200, RATE_LIMIT_NOTE, false);
+            return;
+        }
+        seriesCalls.incrementAndGet();
+        String symbol = params.getOrDefault("symbol", "");
+        byte[] body = fixtures.computeIfAbsent(symbol, this::loadFixture);
+        if (body.length == 0) {
+            respond(exchange, 200, "{\"Error Message\":\"Invalid API call. Please retry or visit the documentation " +
+                                   "for TIME_SERIES_DAILY.\"}", false);
+            return;
+        }
+        delay();
+        send(exchange, 200, body);
+    }
+
+    private boolean overRateLimit() {
+        long now = System.currentTimeMillis() / 60_000;
+        long current = minute.get();
+        if (now != current && minute.compareAndSet(current, now)) {
+            callsThisMinute.set(0);
+        }
+        return callsThisMinute.incrementAndGet() > rateLimitPerMinute;
+    }
+
+    private byte[] loadFixture(String symbol) {
+        File file = new File(fixtureDir, symbol + "_daily.json");
+        try {
+            return file.isFile() ? Files.readAllBytes(file.toPath()) : new byte[0];
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body, boolean etoro) throws IOException {
+        if (etoro) {
+            etoroCalls.incrementAndGet();
+        }
+        delay();
+        send(exchange, status, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void delay() {
+        long millis = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        connections.add(exchange.getRemoteAddress());
+        exchange.getRequestBody().readAllBytes();
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> queryParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                           URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8090;
+        File fixtures = new File("../data/json");
+        long latencyMillis = 50;
+        long jitterMillis = 50;
+        int rateLimit = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--fixtures": fixtures = new File(args[++i]); break;
+                case "--latency-ms": latencyMillis = Long.parseLong(args[++i]); break;
+                case "--jitter-ms": jitterMillis = Long.parseLong(args[++i]); break;
+                case "--rate-limit-per-minute": rateLimit = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        FakeMarketServer server = new FakeMarketServer(port, fixtures, latencyMillis, jitterMillis, rateLimit);
+        server.start();
+        System.out.println("Fake Alpha Vantage on http://localhost:" + server.port() + "/query, eToro on http://localhost:" +
+                           server.port() + "/etoro, fixtures from " + fixtures.getAbsolutePath());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,315 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Instances;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the prediction model's hot paths: {@code Model.prepareData}, {@code trainModel} with
+ * its 10-fold cross-validation and without it (the random forest alone), {@code
+ * predictNextDayPrice}, and each indicator evaluated at every bar as prepareData does. Each
+ * runs on 100, 1,000 and 10,000 bars.
+ *
+ * Histories are built from the bundled {@code data/json} fixtures: every fixture day becomes
+ * its open, high, low and close relative to the previous close, and the days of all fixtures,
+ * oldest first and less their average drift, are chained from a price of 100 (cycling for the
+ * longer histories). The same bars come out on every run, so results compare across changes
+ * to {@code Model}.
+ * {@code -Dfixtures.dir} points at another directory of fixtures.
+ *
+ * Model and its indicators are in the default package and private, so they are bound by name
+ * to method handles once; the calls themselves don't box. Model's progress output is
+ * discarded during the run.
+ *
+ * predictNextDayPrice takes a different branch when the market is open, so compare runs made
+ * at the same time of day.
+ *
+ * Usage: java -jar target/benchmarks.jar ModelBenchmark -prof gc
+ *    or: java -cp target/benchmarks.jar benchmarks.ModelBenchmark [regex], which adds the GC
+ *        profiler itself
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+    private static final int SMA_PERIOD = 20;
+    private static final int RSI_PERIOD = 14;
+    private static final int EMA_PERIOD = 26;
+    private static final int FIRST_INDEX = 35; // prepareData's first bar: MACD_SLOW + MACD_SIGNAL
+
+    private static final Constructor<?> NEW_ENTRY;
+    private static final MethodHandle NEW_MODEL;
+    private static final MethodHandle PREPARE_DATA;
+    private static final MethodHandle TRAIN_MODEL;
+    private static final MethodHandle PREDICT;
+    private static final MethodHandle SMA;
+    private static final MethodHandle RSI;
+    private static final MethodHandle EMA;
+    private static final MethodHandle MACD;
+    private static final Field TRAINING_DATA;
+    private static final Field CLASSIFIER;
+
+    static {
+        try {
+            Class<?> model = Class.forName("Model");
+            Class<?> entry = Class.forName("StockDataManager$StockEntry");
+            NEW_ENTRY = entry.getConstructor(String.class, double.class, double.class, double.class, double.class,
+                                             double.class);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEW_MODEL = lookup.unreflectConstructor(model.getConstructor())
+                .asType(MethodType.methodType(Object.class));
+            PREPARE_DATA = lookup.unreflect(model.getMethod("prepareData", List.class))
+                .asType(MethodType.methodType(void.class, Object.class, List.class));
+            TRAIN_MODEL = lookup.unreflect(model.getMethod("trainModel"))
+                .asType(MethodType.methodType(void.class, Object.class));
+            PREDICT = lookup.unreflect(model.getMethod("predictNextDayPrice", entry, List.class))
+                .asType(MethodType.methodType(double.class, Object.class, Object.class, List.class));
+            SMA = indicator(lookup, model, "calculateSMA", List.class, int.class, int.class);
+            RSI = indicator(lookup, model, "calculateRSI", List.class, int.class, int.class);
+            EMA = indicator(lookup, model, "calculateEMA", List.class, int.class, int.class);
+            MACD = indicator(lookup, model, "calculateMACD", List.class, int.class);
+            TRAINING_DATA = model.getDeclaredField("trainingData");
+            TRAINING_DATA.setAccessible(true);
+            CLASSIFIER = model.getDeclaredField("classifier");
+            CLASSIFIER.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"100", "1000", "10000"})
+    public int bars;
+
+    private List<Object> history;
+    private List<Double> closes;
+    private Object lastEntry;
+    private Object prepared;
+    private Object trained;
+    private PrintStream out;
+
+    @Setup
+    public void setup() throws Throwable {
+        // Model reports every prepare and training run on stdout
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        history = buildHistory(bars);
+        closes = new ArrayList<>(bars);
+        for (Object entry : history) {
+            closes.add(entry.getClass().getField("close").getDouble(entry));
+        }
+        lastEntry = history.get(history.size() - 1);
+
+        prepared = NEW_MODEL.invokeExact();
+        PREPARE_DATA.invokeExact(prepared, history);
+        trained = NEW_MODEL.invokeExact();
+        PREPARE_DATA.invokeExact(trained, history);
+        CLASSIFIER.set(trained, buildForest(trained));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object prepareData() throws Throwable {
+        Object model = NEW_MODEL.invokeExact();
+        PREPARE_DATA.invokeExact(model, history);
+        return model;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public Object trainModel() throws Throwable {
+        TRAIN_MODEL.invokeExact(prepared);
+        return prepared;
+    }
+
+    // trainModel's random forest without the cross-validation that follows it
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1, time = 2)
+    @Measurement(iterations = 3, time = 2)
+    public Object trainModelWithoutCrossValidation() throws Exception {
+        return buildForest(prepared);
+    }
+
+    @Benchmark
+    public double predictNextDayPrice() throws Throwable {
+        return (double) PREDICT.invokeExact(trained, lastEntry, history);
+    }
+
+    @Benchmark
+    public double sma() throws Throwable {
+        double sum = 0;
+        for (int i = FIRST_INDEX; i < bars - 1; i++) {
+            sum += (double) SMA.invokeExact(prepared, closes, i, SMA_PERIOD);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double rsi() throws Throwable {
+        double sum = 0;
+        for (int i = FIRST_INDEX; i < bars - 1; i++) {
+            sum += (double) RSI.invokeExact(prepared, closes, i, RSI_PERIOD);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double ema() throws Throwable {
+        double sum = 0;
+        for (int i = FIRST_INDEX; i < bars - 1; i++) {
+            sum += (double) EMA.invokeExact(prepared, closes, i, EMA_PERIOD);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double macd() throws Throwable {
+        double sum = 0;
+        for (int i = FIRST_INDEX; i < bars - 1; i++) {
+            double[] values = (double[]) MACD.invokeExact(prepared, closes, i);
+            sum += values[0] + values[1];
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : ModelBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+    // Same forest as trainModel: 100 trees over the prepared instances
+    private static RandomForest buildForest(Object model) throws Exception {
+        RandomForest forest = new RandomForest();
+        forest.setNumIterations(100);
+        forest.buildClassifier((Instances) TRAINING_DATA.get(model));
+        return forest;
+    }
+
+    private static MethodHandle indicator(MethodHandles.Lookup lookup, Class<?> model, String name,
+                                          Class<?>... parameters) throws ReflectiveOperationException {
+        Method method = model.getDeclaredMethod(name, parameters);
+        method.setAccessible(true);
+        MethodHandle handle = lookup.unreflect(method);
+        return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }
+
+    private static List<Object> buildHistory(int bars) throws Exception {
+        List<double[]> days = fixtureDays();
+        List<Object> history = new ArrayList<>(bars);
+        double close = 100;
+        long day = LocalDate.of(2000, 1, 3).toEpochDay();
+        for (int i = 0; i < bars; i++) {
+            double[] d = days.get(i % days.size());
+            String date = LocalDate.ofEpochDay(day + i).toString();
+            history.add(NEW_ENTRY.newInstance(date, close * d[0], close * d[1], close * d[2], close * d[3], d[4]));
+            close *= d[3];
+        }
+        return history;
+    }
+
+    // Every fixture day as {open, high, low, close} over the previous close, plus volume
+    private static List<double[]> fixtureDays() throws IOException {
+        File dir = new File(System.getProperty("fixtures.dir", "data/json"));
+        if (!dir.isDirectory()) {
+            dir = new File("..", dir.getPath()); // Run from the benchmarks directory
+        }
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null || files.length == 0) {
+            throw new IOException("No fixtures in " + dir.getAbsolutePath() + " (set -Dfixtures.dir)");
+        }
+        Arrays.sort(files);
+
+        Gson gson = new Gson();
+        List<double[]> days = new ArrayList<>();
+        for (File file : files) {
+            JsonObject series;
+            try (Reader reader = new FileReader(file)) {
+                series = gson.fromJson(reader, JsonObject.class).getAsJsonObject("Time Series (Daily)");
+            }
+            if (series == null) {
+                continue;
+            }
+            TreeMap<String, JsonObject> byDate = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> entry : series.entrySet()) {
+                byDate.put(entry.getKey(), entry.getValue().getAsJsonObject());
+            }
+            double previous = Double.NaN;
+            for (JsonObject bar : byDate.values()) {
+                double close = bar.get("4. close").getAsDouble();
+                if (previous > 0) {
+                    days.add(new double[] {
+                        bar.get("1. open").getAsDouble() / previous,
+                        bar.get("2. high").getAsDouble() / previous,
+                        bar.get("3. low").getAsDouble() / previous,
+                        close / previous,
+                        bar.get("5. volume").getAsDouble()
+                    });
+                }
+                previous = close;
+            }
+        }
+
+        // Without the fixtures' average drift, so long histories stay near the starting price
+        double logDrift = 0;
+        for (double[] d : days) {
+            logDrift += Math.log(d[3]);
+        }
+        double drift = Math.exp(logDrift / days.size());
+        for (double[] d : days) {
+            for (int i = 0; i < 4; i++) {
+                d[i] /= drift;
+            }
+        }
+        return days;
+    }
+}
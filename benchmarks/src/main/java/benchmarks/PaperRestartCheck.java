@@ -0,0 +1,192 @@
+package benchmarks;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the paper account survives a restart of the server.
+ *
+ * Wires {@code PaperBroker} to a {@code PortfolioLedger} as the server does with
+ * {@code trading.gateway=paper}: the broker is restored from the ledger, and its fills are
+ * recorded in the ledger. After a few trades the broker and ledger are built again from the
+ * ledger's journal, twice, and must agree with each other and with before on cash and
+ * positions. Across the restart:
+ * <ul>
+ *   <li>an order sent again with a client order ID filled before must not trade;</li>
+ *   <li>selling the whole of a position bought before must leave it flat, not short;</li>
+ *   <li>the broker must report no balance, so reconciliation can't overwrite the ledger.</li>
+ * </ul>
+ * Runs with every {@code mvn verify} of this module (see {@link Checks}).
+ *
+ * Usage: PaperRestartCheck
+ */
+public class PaperRestartCheck {
+    private static final Map<String, Double> PRICES = Map.of("AAPL", 100.0, "MSFT", 50.0);
+
+    private static final Constructor<?> NEW_LEDGER;
+    private static final Constructor<?> NEW_BROKER;
+    private static final Constructor<?> NEW_ORDER;
+    private static final Method LEDGER_STATE;
+    private static final Method RECORD_FILL;
+    private static final Method SET_FILL_LISTENER;
+    private static final Method RESTORE;
+    private static final Method SUBMIT_ORDER;
+    private static final Method POSITION;
+    private static final Method BALANCE;
+    private static final Method BROKER_BALANCE;
+
+    static {
+        try {
+            Class<?> ledger = Class.forName("PortfolioLedger");
+            Class<?> broker = Class.forName("PaperBroker");
+            Class<?> order = Class.forName("OrderOutbox$Order");
+            NEW_LEDGER = ledger.getConstructor(File.class, double.class);
+            NEW_BROKER = broker.getConstructor(Function.class, Properties.class);
+            NEW_ORDER = order.getConstructor(String.class, String.class, int.class, boolean.class, long.class);
+            LEDGER_STATE = ledger.getMethod("state");
+            RECORD_FILL = ledger.getMethod("recordFill", String.class, String.class, int.class, boolean.class,
+                                           double.class, double.class);
+            SET_FILL_LISTENER = broker.getMethod("setFillListener", Consumer.class);
+            RESTORE = broker.getMethod("restore", ledger);
+            SUBMIT_ORDER = broker.getMethod("submitOrder", order);
+            POSITION = broker.getMethod("position", String.class);
+            BALANCE = broker.getMethod("getPortfolioBalance");
+            BROKER_BALANCE = broker.getMethod("fetchBrokerBalance");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Checks.exit(run(Checks.Options.parse(args)));
+    }
+
+    public static int run(Checks.Options options) throws Throwable {
+        File directory = Files.createTempDirectory("paper-restart").toFile();
+        try {
+            return Checks.report("restart keeps the paper account", () -> restart(new File(directory, "ledger.log")));
+        } finally {
+            try (Stream<Path> files = Files.walk(directory.toPath())) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    // Null when every step matched, otherwise the first mismatch
+    private static String restart(File journal) throws Exception {
+        Object[] account = start(journal);
+        submit(account[1], "a1", "AAPL", 100, true);
+        submit(account[1], "m1", "MSFT", 40, true);
+        submit(account[1], "a2", "AAPL", 30, false);
+        String failure = agree("before the restart", account, null);
+        if (failure != null) {
+            return failure;
+        }
+        double cash = cash(account[0]);
+
+        account = start(journal);
+        failure = agree("after the restart", account, cash);
+        if (failure == null && position(account[1], "AAPL") != 70) {
+            failure = "after the restart: broker holds " + position(account[1], "AAPL") + " AAPL, expected 70";
+        }
+        if (failure == null && BROKER_BALANCE.invoke(account[1]) != null) {
+            failure = "the paper broker reports a balance for reconciliation";
+        }
+        if (failure != null) {
+            return failure;
+        }
+
+        Object price = submit(account[1], "a1", "AAPL", 100, true); // The outbox sending a1 again
+        failure = agree("after resending a filled order", account, cash);
+        if (failure == null && price != null) {
+            failure = "resending a filled order was filled again at " + price;
+        }
+        if (failure != null) {
+            return failure;
+        }
+
+        submit(account[1], "a3", "AAPL", 70, false);
+        failure = agree("after selling the position bought before the restart", account, null);
+        if (failure == null && position(account[1], "AAPL") != 0) {
+            failure = "selling 70 AAPL left the broker with " + position(account[1], "AAPL");
+        }
+        if (failure != null) {
+            return failure;
+        }
+
+        cash = cash(account[0]);
+        return agree("after a second restart", start(journal), cash);
+    }
+
+    // A ledger on the journal and a broker restored from it, as the server wires them
+    private static Object[] start(File journal) throws Exception {
+        Object ledger = NEW_LEDGER.newInstance(journal, 100_000.0);
+        Properties props = new Properties();
+        props.setProperty("paper.initial.cash", "100000");
+        props.setProperty("paper.fee.bps", "10");
+        Object broker = NEW_BROKER.newInstance((Function<String, Double>) PRICES::get, props);
+        RESTORE.invoke(broker, ledger);
+        Consumer<Object> listener = fill -> {
+            try {
+                Class<?> type = fill.getClass();
+                RECORD_FILL.invoke(ledger, type.getMethod("clientOrderId").invoke(fill),
+                                   type.getMethod("symbol").invoke(fill), type.getMethod("quantity").invoke(fill),
+                                   type.getMethod("buy").invoke(fill), type.getMethod("price").invoke(fill),
+                                   type.getMethod("fee").invoke(fill));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        SET_FILL_LISTENER.invoke(broker, listener);
+        return new Object[] {ledger, broker};
+    }
+
+    private static Object submit(Object broker, String id, String symbol, int quantity, boolean buy) throws Exception {
+        return SUBMIT_ORDER.invoke(broker, NEW_ORDER.newInstance(id, symbol, quantity, buy, System.currentTimeMillis()));
+    }
+
+    // Broker and ledger hold the same cash and positions, and the cash is the expected one if given
+    private static String agree(String when, Object[] account, Double expectedCash) throws Exception {
+        double ledgerCash = cash(account[0]);
+        double brokerCash = (double) BALANCE.invoke(account[1]);
+        if (Math.abs(ledgerCash - brokerCash) > 1e-6) {
+            return when + ": broker cash " + brokerCash + ", ledger cash " + ledgerCash;
+        }
+        if (expectedCash != null && Math.abs(ledgerCash - expectedCash) > 1e-6) {
+            return when + ": cash " + ledgerCash + ", expected " + expectedCash;
+        }
+        Map<?, ?> positions = positions(account[0]);
+        for (String symbol : PRICES.keySet()) {
+            Object held = positions.get(symbol);
+            int ledgerQuantity = held != null ? (int) held.getClass().getMethod("quantity").invoke(held) : 0;
+            int brokerQuantity = position(account[1], symbol);
+            if (ledgerQuantity != brokerQuantity) {
+                return when + ": broker holds " + brokerQuantity + " " + symbol + ", ledger " + ledgerQuantity;
+            }
+        }
+        return null;
+    }
+
+    private static double cash(Object ledger) throws Exception {
+        Object state = LEDGER_STATE.invoke(ledger);
+        return (double) state.getClass().getMethod("cash").invoke(state);
+    }
+
+    private static Map<?, ?> positions(Object ledger) throws Exception {
+        Object state = LEDGER_STATE.invoke(ledger);
+        return (Map<?, ?>) state.getClass().getMethod("positions").invoke(state);
+    }
+
+    private static int position(Object broker, String symbol) throws Exception {
+        return (int) POSITION.invoke(broker, symbol);
+    }
+}
@@ -0,0 +1,231 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Checks {@code RiskEngine}'s running sums against a brute-force covariance.
+ *
+ * A random universe of price paths is fed through {@code onSeries} the way the bar store
+ * feeds it, one trading day at a time, while a plain model of the window (a list of the
+ * accepted days and the latest return of each symbol on each day) is fed the same series.
+ * After every day the engine's covariance of sampled pairs is compared with a two-pass
+ * covariance over that model. The run covers:
+ * <ul>
+ *   <li>day eviction: the run is several windows long;</li>
+ *   <li>late corrections: a recent close is revised and the series sent again, changing
+ *       returns already in the window;</li>
+ *   <li>stale series: a series ending days ago is sent again, so it rewrites existing days and
+ *       offers days older than the window;</li>
+ *   <li>column growth: symbols join throughout the run, past the engine's initial 64
+ *       columns.</li>
+ * </ul>
+ * Each seed runs twice, with {@code risk.rebuild.days} large enough that only the incremental
+ * updates run, and with a rebuild every few days. Runs with every {@code mvn verify} of this
+ * module (see {@link Checks}).
+ *
+ * Usage: RiskEngineCheck [--seeds N] [--symbols N] [--days N] [--window N] [--sample N]
+ *        [--tolerance X]
+ */
+public class RiskEngineCheck {
+    private static final MethodHandle NEW_ENGINE;
+    private static final MethodHandle ON_SERIES;
+    private static final MethodHandle COVARIANCE;
+
+    static {
+        try {
+            Class<?> engine = Class.forName("RiskEngine");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEW_ENGINE = lookup.unreflectConstructor(engine.getConstructor(Properties.class))
+                .asType(MethodType.methodType(Object.class, Properties.class));
+            ON_SERIES = lookup.unreflect(engine.getMethod("onSeries", Class.forName("BarSeries")))
+                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            COVARIANCE = lookup.unreflect(engine.getMethod("covariance", String.class, String.class))
+                .asType(MethodType.methodType(double.class, Object.class, String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Checks.exit(run(Checks.Options.parse(args, "seeds", "symbols", "days", "window", "sample", "tolerance")));
+    }
+
+    /**
+     * Runs every seed; returns the number of failed runs.
+     */
+    public static int run(Checks.Options options) throws Throwable {
+        int symbols = options.integer("symbols", 150);
+        int days = options.integer("days", 400);
+        int window = options.integer("window", 20);
+        int sample = options.integer("sample", 40);
+        double tolerance = options.number("tolerance", 1e-9);
+        if (window < 3) {
+            System.err.println("--window must be at least 3, the engine's minimum");
+            System.exit(1);
+        }
+        return Checks.forEachSeed(options.integer("seeds", 5), seed -> {
+            Map<String, Checks.Case> cases = new LinkedHashMap<>();
+            cases.put("seed " + seed + ", no rebuilds",
+                      () -> run(seed, symbols, days, window, sample, tolerance, Integer.MAX_VALUE));
+            cases.put("seed " + seed + ", rebuild every 7 days",
+                      () -> run(seed, symbols, days, window, sample, tolerance, 7));
+            return cases;
+        });
+    }
+
+    // Null when every comparison matched, otherwise the first mismatch
+    private static String run(long seed, int symbolCount, int days, int window, int sample, double tolerance,
+                              int rebuildDays) throws Throwable {
+        Random random = new Random(seed);
+        Properties props = new Properties();
+        props.setProperty("risk.window.days", String.valueOf(window));
+        props.setProperty("risk.rebuild.days", String.valueOf(rebuildDays));
+        Object engine = NEW_ENGINE.invokeExact(props);
+        Window model = new Window(window);
+
+        // One path per symbol; symbols join at random days, the first few at the start
+        String[] names = new String[symbolCount];
+        double[][] closes = new double[symbolCount][days + 1];
+        int[] joins = new int[symbolCount];
+        for (int s = 0; s < symbolCount; s++) {
+            names[s] = "SYM" + s;
+            joins[s] = s < 8 ? 0 : random.nextInt(days * 3 / 4);
+            closes[s][0] = 20 + random.nextDouble() * 200;
+            double volatility = 0.005 + random.nextDouble() * 0.03;
+            for (int d = 1; d <= days; d++) {
+                closes[s][d] = closes[s][d - 1] * Math.exp(random.nextGaussian() * volatility);
+            }
+        }
+        int firstDate = 20000;
+
+        List<Integer> order = new ArrayList<>(symbolCount);
+        for (int s = 0; s < symbolCount; s++) {
+            order.add(s);
+        }
+        for (int d = 1; d <= days; d++) {
+            Collections.shuffle(order, random);
+            for (int s : order) {
+                if (joins[s] > d || random.nextDouble() < 0.1) {
+                    continue; // Not listed yet, or no bar today
+                }
+                int end = d;
+                double roll = random.nextDouble();
+                if (roll < 0.1) {
+                    // Late correction of a close already in the window
+                    int revised = Math.max(joins[s], d - 1 - random.nextInt(window));
+                    closes[s][revised] *= 1 + (random.nextDouble() - 0.5) * 0.02;
+                } else if (roll < 0.15) {
+                    end = Math.max(joins[s] + 1, d - 1 - random.nextInt(2 * window)); // Stale series
+                }
+                int start = Math.max(joins[s], end - window - random.nextInt(10));
+                if (end - start < 1) {
+                    continue;
+                }
+                int n = end - start + 1;
+                int[] dates = new int[n];
+                double[] close = new double[n];
+                for (int i = 0; i < n; i++) {
+                    dates[i] = firstDate + start + i;
+                    close[i] = closes[s][start + i];
+                }
+                ON_SERIES.invokeExact(engine, Checks.barSeries(names[s], dates, close));
+                model.onSeries(names[s], dates, close);
+            }
+
+            // Known symbols in a random sample, plus one that hasn't been sent yet
+            List<String> known = new ArrayList<>(model.symbols);
+            Collections.shuffle(known, random);
+            List<String> checked = known.subList(0, Math.min(sample, known.size()));
+            for (int i = 0; i < checked.size(); i++) {
+                String a = checked.get(i);
+                for (int j = i; j < checked.size(); j++) {
+                    String b = checked.get(j);
+                    double actual = (double) COVARIANCE.invokeExact(engine, a, b);
+                    double expected = model.covariance(a, b);
+                    double scale = Math.sqrt(model.covariance(a, a) * model.covariance(b, b));
+                    boolean match = Double.isNaN(expected) ? Double.isNaN(actual) :
+                        Math.abs(actual - expected) <= tolerance * Math.max(scale, 1e-12);
+                    if (!match) {
+                        return String.format("day %d: covariance(%s, %s) = %s, brute force %s over %d days",
+                                             d, a, b, actual, expected, model.dates.size());
+                    }
+                }
+            }
+            String other = known.isEmpty() ? "UNSEEN" : known.get(0);
+            double unknown = (double) COVARIANCE.invokeExact(engine, "UNSEEN", other);
+            if (!Double.isNaN(unknown)) {
+                return "day " + d + ": covariance of an unknown symbol is " + unknown + ", expected NaN";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The window as RiskEngine defines it, kept the obvious way: accepted days oldest first
+     * and each symbol's latest return on each day; a missing return counts as 0.
+     */
+    private static class Window {
+        final int size;
+        final ArrayDeque<Integer> dates = new ArrayDeque<>();
+        final Map<Integer, Map<String, Double>> returns = new HashMap<>();
+        final List<String> symbols = new ArrayList<>();
+
+        Window(int size) {
+            this.size = size;
+        }
+
+        void onSeries(String symbol, int[] dates, double[] close) {
+            if (!symbols.contains(symbol)) {
+                symbols.add(symbol); // The engine gives it a column even if no return is accepted
+            }
+            for (int t = Math.max(1, dates.length - size); t < dates.length; t++) {
+                if (!(close[t - 1] > 0) || !(close[t] > 0)) {
+                    continue;
+                }
+                int date = dates[t];
+                if (!returns.containsKey(date)) {
+                    if (!this.dates.isEmpty() && date < this.dates.peekLast()) {
+                        continue; // Older than the window, or a day it skipped
+                    }
+                    if (this.dates.size() == size) {
+                        returns.remove(this.dates.removeFirst());
+                    }
+                    this.dates.addLast(date);
+                    returns.put(date, new HashMap<>());
+                }
+                returns.get(date).put(symbol, Math.log(close[t] / close[t - 1]));
+            }
+        }
+
+        double covariance(String a, String b) {
+            int n = dates.size();
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double meanA = 0;
+            double meanB = 0;
+            for (int date : dates) {
+                meanA += returns.get(date).getOrDefault(a, 0.0);
+                meanB += returns.get(date).getOrDefault(b, 0.0);
+            }
+            meanA /= n;
+            meanB /= n;
+            double sum = 0;
+            for (int date : dates) {
+                sum += (returns.get(date).getOrDefault(a, 0.0) - meanA) * (returns.get(date).getOrDefault(b, 0.0) - meanB);
+            }
+            return sum / (n - 1);
+        }
+    }
+}
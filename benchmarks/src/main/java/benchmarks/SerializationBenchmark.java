@@ -0,0 +1,158 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and ranking cost of a top-predictions response.
+ *
+ * Compares the old shape (a HashMap per prediction, serialized by a new Gson per call and
+ * sorted by unboxing values out of the nested signals map) with the typed records, the
+ * shared serializer and the primitive-key comparator the server uses now.
+ *
+ * The server's classes live in the default package, so they are loaded by name; the
+ * server jar has to be on the classpath (see the module's pom.xml).
+ *
+ * Usage: java -jar target/benchmarks.jar SerializationBenchmark [-prof gc]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"20", "500"})
+    public int predictions;
+
+    private List<Map<String, Object>> maps;
+    private List<Object> records;
+    private Gson shared;
+    private Comparator<Object> byRank;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        Class<?> signalsType = Class.forName("TradingSignals");
+        Class<?> resultType = Class.forName("PredictionResult");
+        Constructor<?> signalsConstructor = signalsType.getDeclaredConstructors()[0];
+        Constructor<?> resultConstructor = resultType.getDeclaredConstructors()[0];
+
+        Field gson = Class.forName("Json").getField("GSON");
+        shared = (Gson) gson.get(null);
+        Field comparator = Class.forName("RankingService").getDeclaredField("BY_RANK");
+        comparator.setAccessible(true);
+        byRank = (Comparator<Object>) comparator.get(null);
+
+        Random random = new Random(42);
+        maps = new ArrayList<>(predictions);
+        records = new ArrayList<>(predictions);
+        for (int i = 0; i < predictions; i++) {
+            String symbol = "SYM" + i;
+            double close = 50 + random.nextDouble() * 200;
+            double open = close * (1 + (random.nextDouble() - 0.5) * 0.04);
+            double predicted = close * (1 + (random.nextDouble() - 0.5) * 0.06);
+            double change = (predicted - close) / close * 100;
+            double openToClose = (close - open) / open * 100;
+            double stopLoss = Math.max(2.0, Math.abs(change));
+            double takeProfit = stopLoss * 1.5;
+            String sentiment = change > 1 ? "Bullish" : change < -1 ? "Bearish" : "Neutral";
+            String recommendation = change > 1 ? "Consider Buy" : change < -1 ? "Consider Sell" : "Hold";
+
+            Map<String, Object> signals = new HashMap<>();
+            signals.put("dataSource", "Real Data");
+            signals.put("stopLossPercent", stopLoss);
+            signals.put("takeProfitPercent", takeProfit);
+            signals.put("riskRewardRatio", takeProfit / stopLoss);
+            signals.put("predictedChange", change);
+            signals.put("openToCloseChange", openToClose);
+            signals.put("currentToPredictedChange", change);
+            signals.put("confidence", 0.85);
+            signals.put("sentiment", sentiment);
+            signals.put("recommendation", recommendation);
+            Map<String, Object> map = new HashMap<>();
+            map.put("success", true);
+            map.put("symbol", symbol);
+            map.put("date", "2024-01-02");
+            map.put("lastClose", close);
+            map.put("todayOpen", open);
+            map.put("currentPrice", close);
+            map.put("predictedHigh", Math.max(close, predicted) * 1.01);
+            map.put("predictedLow", Math.min(close, predicted) * 0.99);
+            map.put("predictedClose", predicted);
+            map.put("volume", 1_000_000.0 + i);
+            map.put("tradingSignals", signals);
+            map.put("stale", false);
+            maps.add(map);
+
+            Object typedSignals = signalsConstructor.newInstance(null, null, "Real Data", stopLoss, takeProfit,
+                takeProfit / stopLoss, change, openToClose, change, 0.85, sentiment, recommendation);
+            records.add(resultConstructor.newInstance(true, symbol, "2024-01-02", close, open, close,
+                Math.max(close, predicted) * 1.01, Math.min(close, predicted) * 0.99, predicted,
+                1_000_000.0 + i, null, typedSignals, false, null));
+        }
+    }
+
+    @Benchmark
+    public String mapsNewGsonPerCall() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("predictions", maps);
+        return new Gson().toJson(response);
+    }
+
+    @Benchmark
+    public String mapsSharedGson() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("predictions", maps);
+        return shared.toJson(response);
+    }
+
+    @Benchmark
+    public String recordsSharedGson() {
+        return shared.toJson(records);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> sortMaps() {
+        List<Map<String, Object>> ranked = new ArrayList<>(maps);
+        ranked.sort((a, b) -> Double.compare(Math.abs(predictedChange(b)), Math.abs(predictedChange(a))));
+        return ranked;
+    }
+
+    @Benchmark
+    public List<Object> sortRecords() {
+        List<Object> ranked = new ArrayList<>(records);
+        ranked.sort(byRank);
+        return ranked;
+    }
+
+    // The ranking key as it was read before the typed records
+    @SuppressWarnings("unchecked")
+    private static double predictedChange(Map<String, Object> prediction) {
+        Map<String, Object> signals = (Map<String, Object>) prediction.get("tradingSignals");
+        Object change = signals != null ? signals.get("predictedChange") : null;
+        return change instanceof Number ? ((Number) change).doubleValue() : 0.0;
+    }
+}
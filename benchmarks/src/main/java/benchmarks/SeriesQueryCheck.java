@@ -0,0 +1,163 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that {@code SeriesQuery} never returns more points than were asked for.
+ *
+ * {@code parse} must refuse 1 and 2 points, which neither method can honour since both keep the
+ * first and last bar. For every other count, on random series and ranges, both methods must
+ * return at most that many bars, in date order, and lttb must keep the range's first and last
+ * bar; 0 points and counts of at least the range's length must return the whole range. The
+ * package-private samplers are also called directly with 0 to 2 points. Runs with every
+ * {@code mvn verify} of this module (see {@link Checks}).
+ *
+ * Usage: SeriesQueryCheck [--seeds N] [--bars N]
+ */
+public class SeriesQueryCheck {
+    private static final int FIRST_DATE = 18000;
+
+    private static final MethodHandle PARSE;
+    private static final MethodHandle RUN;
+    private static final MethodHandle LTTB;
+    private static final MethodHandle MIN_MAX;
+    private static final MethodHandle DATES;
+    private static final MethodHandle TOTAL;
+
+    static {
+        try {
+            Class<?> query = Class.forName("SeriesQuery");
+            Class<?> series = Class.forName("BarSeries");
+            Class<?> response = Class.forName("SeriesQuery$Response");
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PARSE = lookup.unreflect(query.getMethod("parse", String.class, String.class, String.class, String.class,
+                                                     String.class, int.class))
+                .asType(MethodType.methodType(Object.class, String.class, String.class, String.class, String.class,
+                                              String.class, int.class));
+            RUN = lookup.unreflect(query.getMethod("run", series))
+                .asType(MethodType.methodType(Object.class, Object.class, Object.class));
+            LTTB = sampler(lookup, query, series, "lttb");
+            MIN_MAX = sampler(lookup, query, series, "minMax");
+            DATES = lookup.unreflect(response.getMethod("dates"))
+                .asType(MethodType.methodType(String[].class, Object.class));
+            TOTAL = lookup.unreflect(response.getMethod("total"))
+                .asType(MethodType.methodType(int.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Checks.exit(run(Checks.Options.parse(args, "seeds", "bars")));
+    }
+
+    /**
+     * Runs the parse check and every seed; returns the number of failures.
+     */
+    public static int run(Checks.Options options) throws Throwable {
+        int bars = options.integer("bars", 400);
+        int failures = Checks.report("points 1 and 2 refused", SeriesQueryCheck::refusesTooFewPoints);
+        failures += Checks.forEachSeed(options.integer("seeds", 5), seed -> {
+            Object series = randomSeries(seed, bars);
+            Map<String, Checks.Case> cases = new LinkedHashMap<>();
+            for (String method : new String[] {"lttb", "minmax"}) {
+                cases.put("seed " + seed + ", " + method, () -> queries(series, bars, method, new Random(seed)));
+            }
+            cases.put("seed " + seed + ", samplers with 0 to 2 points", () -> samplers(series, bars));
+            return cases;
+        });
+        return failures;
+    }
+
+    private static String refusesTooFewPoints() throws Throwable {
+        for (String points : new String[] {"-1", "1", "2"}) {
+            try {
+                Object accepted = PARSE.invokeExact((String) null, (String) null, (String) null, points, (String) null,
+                                                    1000);
+                return "points=" + points + " was accepted";
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        for (String points : new String[] {"0", "3"}) {
+            Object accepted = PARSE.invokeExact((String) null, (String) null, (String) null, points, (String) null,
+                                                1000); // Throws if refused
+        }
+        return null;
+    }
+
+    // Random ranges and point counts through parse and run
+    private static String queries(Object series, int bars, String method, Random random) throws Throwable {
+        for (int q = 0; q < 300; q++) {
+            int from = random.nextInt(bars);
+            int to = from + random.nextInt(bars - from);
+            int points = random.nextInt(4) == 0 ? 0 : 3 + random.nextInt(Math.max(1, to - from + 10));
+            String fromDate = LocalDate.ofEpochDay(FIRST_DATE + from).toString();
+            String toDate = LocalDate.ofEpochDay(FIRST_DATE + to).toString();
+            Object query = PARSE.invokeExact(fromDate, toDate, (String) null, String.valueOf(points), method, 1000);
+            Object response = RUN.invokeExact(query, series);
+            String[] dates = (String[]) DATES.invokeExact(response);
+            int total = (int) TOTAL.invokeExact(response);
+            String name = method + " " + fromDate + ".." + toDate + " points=" + points;
+            if (total != to - from + 1) {
+                return name + ": total " + total + ", expected " + (to - from + 1);
+            }
+            int expected = points == 0 || points >= total ? total : -1;
+            if (expected >= 0 && dates.length != expected) {
+                return name + ": " + dates.length + " points, expected the whole range of " + expected;
+            }
+            if (points > 0 && dates.length > points) {
+                return name + ": " + dates.length + " points";
+            }
+            for (int i = 1; i < dates.length; i++) {
+                if (dates[i].compareTo(dates[i - 1]) <= 0) {
+                    return name + ": " + dates[i] + " after " + dates[i - 1];
+                }
+            }
+            if (method.equals("lttb") && (!dates[0].equals(fromDate) || !dates[dates.length - 1].equals(toDate))) {
+                return name + ": first and last bar not kept (" + dates[0] + ", " + dates[dates.length - 1] + ")";
+            }
+        }
+        return null;
+    }
+
+    private static String samplers(Object series, int bars) throws Throwable {
+        for (int threshold = 0; threshold <= 2; threshold++) {
+            int[] lttb = (int[]) LTTB.invokeExact(series, 0, bars, threshold);
+            int[] minMax = (int[]) MIN_MAX.invokeExact(series, 0, bars, threshold);
+            if (lttb.length > threshold || minMax.length > threshold) {
+                return threshold + " points: lttb kept " + lttb.length + ", minmax " + minMax.length;
+            }
+        }
+        return null;
+    }
+
+    // Consecutive days of a random walk
+    private static Object randomSeries(long seed, int bars) throws Throwable {
+        Random random = new Random(seed);
+        int[] dates = new int[bars];
+        double[] close = new double[bars];
+        double price = 100;
+        for (int i = 0; i < bars; i++) {
+            price *= Math.exp(random.nextGaussian() * 0.02);
+            dates[i] = FIRST_DATE + i;
+            close[i] = price;
+        }
+        return Checks.barSeries("SYM" + seed, dates, close);
+    }
+
+    private static MethodHandle sampler(MethodHandles.Lookup lookup, Class<?> query, Class<?> series, String name)
+            throws ReflectiveOperationException {
+        Method method = query.getDeclaredMethod(name, series, int.class, int.class, int.class);
+        method.setAccessible(true);
+        return lookup.unreflect(method)
+            .asType(MethodType.methodType(int[].class, Object.class, int.class, int.class, int.class));
+    }
+}
@@ -0,0 +1,405 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reproducible load test of the WebVisualization server.
+ *
+ * Starts a {@link FakeMarketServer} in process and the server jar as a separate JVM in a
+ * scratch directory, configured to fetch from the stand-in instead of Alpha Vantage and
+ * eToro. Once {@code /ready} answers 200 it drives {@code /predict}, {@code /top-predictions}
+ * and the trade route at a fixed request rate (open loop: requests are sent on schedule
+ * whether or not earlier ones have finished, and latency is measured from the scheduled
+ * time) and reports throughput and latency percentiles per route.
+ *
+ * The run fails (exit status 1) if overall p99 exceeds {@code --max-p99-ms}, the error rate
+ * exceeds {@code --max-error-rate} or the achieved rate falls below
+ * {@code --min-throughput-ratio} of the target, or if the server opened more connections to the
+ * stand-in than {@code --max-connections} (its {@code http.host.max.concurrency}, so keep-alive
+ * must hold), so it can gate performance changes. With
+ * {@code --paper} trades go to the server's paper broker instead of the fake eToro.
+ *
+ * Usage: ServerLoadTest [--jar PATH] [--port 8085] [--fixtures ../data/json] [--rps N]
+ *        [--duration-seconds N] [--warmup-seconds N] [--mix predict:60,top:30,trade:10]
+ *        [--latency-ms N] [--jitter-ms N] [--rate-limit-per-minute N]
+ *        [--ready-timeout-seconds N] [--max-p99-ms N] [--max-error-rate F]
+ *        [--min-throughput-ratio F] [--max-connections N] [--keep-workdir] [--paper]
+ */
+public class ServerLoadTest {
+    private static final String[] ROUTES = {"predict", "top", "trade"};
+
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, AtomicLong>> statuses = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> failures = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        String jar = "../target/stock-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar";
+        int port = 8085;
+        File fixtures = new File("../data/json");
+        int rps = 100;
+        int durationSeconds = 60;
+        int warmupSeconds = 10;
+        String mix = "predict:60,top:30,trade:10";
+        long latencyMillis = 50;
+        long jitterMillis = 50;
+        int rateLimit = 0;
+        long readyTimeoutSeconds = 600;
+        double maxP99Millis = 0;
+        double maxErrorRate = 0.01;
+        double minThroughputRatio = 0.95;
+        int maxConnections = 8;
+        boolean keepWorkdir = false;
+        boolean paper = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jar": jar = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--fixtures": fixtures = new File(args[++i]); break;
+                case "--rps": rps = Integer.parseInt(args[++i]); break;
+                case "--duration-seconds": durationSeconds = Integer.parseInt(args[++i]); break;
+                case "--warmup-seconds": warmupSeconds = Integer.parseInt(args[++i]); break;
+                case "--mix": mix = args[++i]; break;
+                case "--latency-ms": latencyMillis = Long.parseLong(args[++i]); break;
+                case "--jitter-ms": jitterMillis = Long.parseLong(args[++i]); break;
+                case "--rate-limit-per-minute": rateLimit = Integer.parseInt(args[++i]); break;
+                case "--ready-timeout-seconds": readyTimeoutSeconds = Long.parseLong(args[++i]); break;
+                case "--max-p99-ms": maxP99Millis = Double.parseDouble(args[++i]); break;
+                case "--max-error-rate": maxErrorRate = Double.parseDouble(args[++i]); break;
+                case "--min-throughput-ratio": minThroughputRatio = Double.parseDouble(args[++i]); break;
+                case "--max-connections": maxConnections = Integer.parseInt(args[++i]); break;
+                case "--keep-workdir": keepWorkdir = true; break;
+                case "--paper": paper = true; break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        File jarFile = new File(jar).getAbsoluteFile();
+        if (!jarFile.exists()) {
+            System.err.println("Server jar not found: " + jarFile + " (run mvn package in the project root first)");
+            System.exit(1);
+        }
+        List<String> symbols = fixtureSymbols(fixtures);
+        if (symbols.isEmpty()) {
+            System.err.println("No *_daily.json fixtures in " + fixtures.getAbsolutePath());
+            System.exit(1);
+        }
+        int[] weights = parseMix(mix);
+
+        FakeMarketServer fake = new FakeMarketServer(0, fixtures, latencyMillis, jitterMillis, rateLimit);
+        fake.start();
+        File workdir = Files.createTempDirectory("load-test").toFile();
+        Process server = startServer(jarFile, workdir, port, fake.port(), paper, maxConnections);
+        boolean passed;
+        try {
+            String url = "http://localhost:" + port;
+            HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(8))
+                .build();
+
+            long readyMillis = waitForReady(client, url, server, readyTimeoutSeconds);
+            System.out.println("Server ready after " + readyMillis + " ms (" + fake.seriesCalls.get() +
+                               " fake Alpha Vantage calls)");
+
+            ServerLoadTest test = new ServerLoadTest();
+            if (warmupSeconds > 0) {
+                System.out.println("Warming up at " + rps + " req/s for " + warmupSeconds + " s...");
+                test.run(client, url, symbols, weights, rps, warmupSeconds);
+                test.latencies.clear();
+                test.statuses.clear();
+                test.failures.clear();
+            }
+
+            System.out.println("Measuring at " + rps + " req/s for " + durationSeconds + " s, mix " + mix + "...");
+            long start = System.nanoTime();
+            test.run(client, url, symbols, weights, rps, durationSeconds);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            passed = test.report(rps, seconds, maxP99Millis, maxErrorRate, minThroughputRatio);
+            System.out.println("Fake backend: " + fake.seriesCalls.get() + " series calls, " + fake.rateLimited.get() +
+                               " rate limited, " + fake.etoroCalls.get() + " eToro calls over " +
+                               fake.connections() + " connections");
+            if (fake.connections() > maxConnections) {
+                System.out.println("Connections " + fake.connections() + " > limit " + maxConnections +
+                                   ": outbound connections are not being reused");
+                passed = false;
+            }
+        } finally {
+            server.destroy();
+            server.waitFor(30, TimeUnit.SECONDS);
+            fake.stop();
+            if (keepWorkdir) {
+                System.out.println("Server log and data kept in " + workdir.getAbsolutePath());
+            } else {
+                deleteRecursively(workdir);
+            }
+        }
+        System.out.println(passed ? "PASS" : "FAIL");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Sends requests on a fixed schedule and waits for the stragglers
+    private void run(HttpClient client, String url, List<String> symbols, int[] weights,
+                     int rps, int seconds) throws InterruptedException {
+        long intervalNanos = 1_000_000_000L / Math.max(1, rps);
+        long total = (long) rps * seconds;
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        for (long n = 0; n < total; n++) {
+            long scheduled = start + n * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            String route = pickRoute(weights);
+            HttpRequest request = request(url, route, symbols.get(ThreadLocalRandom.current().nextInt(symbols.size())));
+            inFlight.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - scheduled;
+                    if (error != null) {
+                        failures.computeIfAbsent(route, r -> new AtomicLong()).incrementAndGet();
+                    } else {
+                        statuses.computeIfAbsent(route, r -> new ConcurrentHashMap<>())
+                            .computeIfAbsent(response.statusCode(), s -> new AtomicLong()).incrementAndGet();
+                    }
+                    record(route, latency);
+                }));
+            if (inFlight.size() >= 10_000) {
+                inFlight.removeIf(CompletableFuture::isDone);
+            }
+        }
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).get(120, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            System.out.println("Some requests did not finish: " + e.getMessage());
+        }
+    }
+
+    private static HttpRequest request(String url, String route, String symbol) {
+        HttpRequest.Builder builder;
+        switch (route) {
+            case "predict":
+                builder = HttpRequest.newBuilder(URI.create(url + "/predict?symbol=" + symbol))
+                    .POST(HttpRequest.BodyPublishers.noBody());
+                break;
+            case "top":
+                builder = HttpRequest.newBuilder(URI.create(url + "/top-predictions")).GET();
+                break;
+            default:
+                builder = HttpRequest.newBuilder(URI.create(url + "/etoro-trade"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"symbol\":\"" + symbol + "\",\"isBuy\":" +
+                                                              ThreadLocalRandom.current().nextBoolean() + "}"));
+                break;
+        }
+        return builder.timeout(Duration.ofSeconds(60)).build();
+    }
+
+    private void record(String route, long latencyNanos) {
+        List<Long> samples = latencies.computeIfAbsent(route, r -> new ArrayList<>());
+        synchronized (samples) {
+            samples.add(latencyNanos);
+        }
+    }
+
+    private boolean report(int targetRps, double seconds, double maxP99Millis, double maxErrorRate,
+                           double minThroughputRatio) {
+        long[] all = new long[0];
+        long requests = 0;
+        long errors = 0;
+        long shed = 0;
+        System.out.println(String.format("%-8s %8s %9s %9s %9s %9s %9s  %s",
+            "route", "count", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "statuses"));
+        for (String route : ROUTES) {
+            List<Long> samples = latencies.getOrDefault(route, new ArrayList<>());
+            long[] sorted;
+            synchronized (samples) {
+                sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            if (sorted.length == 0) {
+                continue;
+            }
+            Map<Integer, Long> codes = new TreeMap<>();
+            statuses.getOrDefault(route, new ConcurrentHashMap<>()).forEach((code, count) -> codes.put(code, count.get()));
+            long failed = failures.getOrDefault(route, new AtomicLong()).get();
+            for (Map.Entry<Integer, Long> entry : codes.entrySet()) {
+                if (entry.getKey() == 429 || entry.getKey() == 503) {
+                    shed += entry.getValue();
+                } else if (entry.getKey() >= 400) {
+                    errors += entry.getValue();
+                }
+            }
+            errors += failed;
+            requests += sorted.length;
+            System.out.println(String.format("%-8s %8d %9.1f %9.1f %9.1f %9.1f %9.1f  %s%s",
+                route, sorted.length, sorted.length / seconds, percentile(sorted, 0.50), percentile(sorted, 0.95),
+                percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6, codes,
+                failed > 0 ? " +" + failed + " failed" : ""));
+
+            long[] merged = Arrays.copyOf(all, all.length + sorted.length);
+            System.arraycopy(sorted, 0, merged, all.length, sorted.length);
+            all = merged;
+        }
+        if (all.length == 0) {
+            System.out.println("No requests completed");
+            return false;
+        }
+        Arrays.sort(all);
+
+        double achieved = requests / seconds;
+        double p99 = percentile(all, 0.99);
+        double errorRate = (double) errors / requests;
+        System.out.println(String.format("overall: %.1f req/s of %d targeted, p50 %.1f ms, p99 %.1f ms, " +
+                                         "%.2f%% errors, %d shed (429/503)",
+            achieved, targetRps, percentile(all, 0.50), p99, errorRate * 100, shed));
+
+        boolean passed = true;
+        if (maxP99Millis > 0 && p99 > maxP99Millis) {
+            System.out.println(String.format("p99 %.1f ms exceeds the %.1f ms budget", p99, maxP99Millis));
+            passed = false;
+        }
+        if (errorRate > maxErrorRate) {
+            System.out.println(String.format("Error rate %.2f%% exceeds %.2f%%", errorRate * 100, maxErrorRate * 100));
+            passed = false;
+        }
+        if (achieved < targetRps * minThroughputRatio) {
+            System.out.println(String.format("Achieved %.1f req/s, below %.0f%% of the target", achieved, minThroughputRatio * 100));
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static Process startServer(File jar, File workdir, int port, int fakePort, boolean paper,
+                                       int maxConnections) throws IOException {
+        // Written to the scratch directory and passed as -D, which overrides a bundled config
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("api.key", "LOADTEST");
+        settings.put("etoro.username", "load-test");
+        settings.put("etoro.password", "load-test");
+        settings.put("alphavantage.base.url", "http://127.0.0.1:" + fakePort);
+        settings.put("alphavantage.rate.limit.wait.ms", "1000");
+        settings.put("etoro.base.url", "http://127.0.0.1:" + fakePort + "/etoro");
+        settings.put("prefetch.api.delay.ms", "0");
+        settings.put("snapshot.enabled", "false");
+        settings.put("server.port", String.valueOf(port));
+        settings.put("trading.gateway", paper ? "paper" : "etoro");
+        settings.put("http.host.max.concurrency", String.valueOf(maxConnections));
+        try (PrintWriter out = new PrintWriter(new File(workdir, "config.properties"))) {
+            settings.forEach((key, value) -> out.println(key + "=" + value));
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        settings.forEach((key, value) -> command.add("-D" + key + "=" + value));
+        // Idle connections outlive the run, so every new connection counts against the limit
+        command.add("-Djdk.httpclient.keepalive.timeout=3600");
+        command.add("-cp");
+        command.add(jar.getAbsolutePath());
+        command.add("WebVisualization");
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(workdir);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(workdir, "server.log"));
+        return builder.start();
+    }
+
+    private static long waitForReady(HttpClient client, String url, Process server, long timeoutSeconds) throws Exception {
+        HttpRequest ready = HttpRequest.newBuilder(URI.create(url + "/ready")).timeout(Duration.ofSeconds(5)).GET().build();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Server exited with code " + server.exitValue() + " before it was ready");
+            }
+            try {
+                if (client.send(ready, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return (System.nanoTime() - start) / 1_000_000;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Server not ready within " + timeoutSeconds + " seconds");
+    }
+
+    private static List<String> fixtureSymbols(File fixtures) {
+        List<String> symbols = new ArrayList<>();
+        File[] files = fixtures.listFiles((dir, name) -> name.endsWith("_daily.json"));
+        if (files != null) {
+            for (File file : files) {
+                symbols.add(file.getName().substring(0, file.getName().length() - "_daily.json".length()));
+            }
+        }
+        symbols.sort(null);
+        return symbols;
+    }
+
+    // Cumulative weights in ROUTES order
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[ROUTES.length];
+        for (String part : mix.split(",")) {
+            String[] fields = part.trim().split(":");
+            int index = Arrays.asList(ROUTES).indexOf(fields[0]);
+            if (index < 0 || fields.length != 2) {
+                throw new IllegalArgumentException("Bad mix entry '" + part + "', expected route:weight with route one of " +
+                                                   Arrays.toString(ROUTES));
+            }
+            weights[index] = Integer.parseInt(fields[1]);
+        }
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("Mix has no weight");
+        }
+        return weights;
+    }
+
+    private static String pickRoute(int[] cumulative) {
+        int pick = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (pick < cumulative[i]) {
+                return ROUTES[i];
+            }
+        }
+        return ROUTES[ROUTES.length - 1];
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,131 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures restart-to-first-200 time of the WebVisualization server.
+ *
+ * Each run starts the server as a fresh JVM, polls an endpoint until it answers 200 and
+ * then stops the server with SIGTERM, which also lets it write its warm state snapshot
+ * for the next run. "cold" runs disable the snapshot so every start loads from scratch;
+ * "warm" runs restore it.
+ *
+ * Usage: StartupBenchmark [--jar PATH] [--workdir DIR] [--port N] [--path /top-predictions]
+ *        [--runs N] [--mode warm|cold|both] [--timeout-seconds N]
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        String jar = "../target/stock-analysis-1.0-SNAPSHOT-jar-with-dependencies.jar";
+        File workdir = new File("..");
+        int port = 8080;
+        String path = "/top-predictions";
+        int runs = 5;
+        String mode = "both";
+        long timeoutSeconds = 1800;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jar": jar = args[++i]; break;
+                case "--workdir": workdir = new File(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--path": path = args[++i]; break;
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--mode": mode = args[++i]; break;
+                case "--timeout-seconds": timeoutSeconds = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        File jarFile = new File(jar);
+        if (!jarFile.isAbsolute()) {
+            jarFile = new File(System.getProperty("user.dir"), jar);
+        }
+        if (!jarFile.exists()) {
+            System.err.println("Server jar not found: " + jarFile + " (run mvn package in the project root first)");
+            System.exit(1);
+        }
+
+        URI uri = URI.create("http://localhost:" + port + path);
+        if (mode.equals("cold") || mode.equals("both")) {
+            System.out.println("Cold starts (no snapshot):");
+            report("cold", measure(jarFile, workdir, port, uri, runs, timeoutSeconds, false));
+        }
+        if (mode.equals("warm") || mode.equals("both")) {
+            // One unmeasured run makes sure a current snapshot exists
+            startAndWait(jarFile, workdir, port, uri, timeoutSeconds, true);
+            System.out.println("Warm starts (snapshot restore):");
+            report("warm", measure(jarFile, workdir, port, uri, runs, timeoutSeconds, true));
+        }
+    }
+
+    private static List<Long> measure(File jar, File workdir, int port, URI uri, int runs,
+                                      long timeoutSeconds, boolean snapshot) throws Exception {
+        List<Long> times = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            long millis = startAndWait(jar, workdir, port, uri, timeoutSeconds, snapshot);
+            System.out.println("  run " + run + ": " + millis + " ms");
+            times.add(millis);
+        }
+        return times;
+    }
+
+    private static long startAndWait(File jar, File workdir, int port, URI uri,
+                                     long timeoutSeconds, boolean snapshot) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(
+            javaExecutable(), "-Dserver.port=" + port, "-Dsnapshot.enabled=" + snapshot,
+            "-cp", jar.getAbsolutePath(), "WebVisualization");
+        builder.directory(workdir);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(workdir, "benchmark-server.log"));
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(timeoutSeconds)).GET().build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + timeoutSeconds * 1_000_000_000L;
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with code " + process.exitValue() +
+                                                    ", see benchmark-server.log");
+                }
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1_000_000;
+                    }
+                } catch (IOException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(20);
+            }
+            throw new IllegalStateException("No 200 response from " + uri + " within " + timeoutSeconds + " seconds");
+        } finally {
+            process.destroy(); // SIGTERM, so the server writes its snapshot on the way down
+            process.waitFor();
+        }
+    }
+
+    private static void report(String label, List<Long> times) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        System.out.println(String.format("%s: min %d ms, median %d ms, max %d ms over %d runs",
+            label, sorted.get(0), sorted.get(sorted.size() / 2), sorted.get(sorted.size() - 1), sorted.size()));
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+}
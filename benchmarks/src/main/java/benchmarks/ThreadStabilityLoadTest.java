@@ -0,0 +1,158 @@
+package benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives a running server with many concurrent clients and checks that its thread count
+ * stays flat.
+ *
+ * Each client loops over the given paths (closed loop, one request in flight per client).
+ * Once a second the server's live thread count is sampled from /metrics/executors; after
+ * the warmup the spread between the lowest and highest sample must stay within
+ * --max-thread-growth, otherwise the test exits with status 1.
+ *
+ * Usage: ThreadStabilityLoadTest [--url http://localhost:8080] [--clients N]
+ *        [--duration-seconds N] [--warmup-seconds N] [--max-thread-growth N]
+ *        [--paths GET:/top-predictions,GET:/health,POST:/predict?symbol=AAPL]
+ */
+public class ThreadStabilityLoadTest {
+    private static final Pattern LIVE_THREADS = Pattern.compile("\"liveThreads\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int clients = 500;
+        int durationSeconds = 60;
+        int warmupSeconds = 10;
+        int maxThreadGrowth = 20;
+        String paths = "GET:/top-predictions,GET:/health,POST:/predict?symbol=AAPL";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": url = args[++i]; break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--duration-seconds": durationSeconds = Integer.parseInt(args[++i]); break;
+                case "--warmup-seconds": warmupSeconds = Integer.parseInt(args[++i]); break;
+                case "--max-thread-growth": maxThreadGrowth = Integer.parseInt(args[++i]); break;
+                case "--paths": paths = args[++i]; break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(Math.max(4, clients / 50)))
+            .build();
+        List<HttpRequest> requests = new ArrayList<>();
+        for (String spec : paths.split(",")) {
+            String[] parts = spec.split(":", 2);
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + parts[1])).timeout(Duration.ofSeconds(60));
+            requests.add(parts[0].equalsIgnoreCase("POST")
+                ? builder.POST(HttpRequest.BodyPublishers.noBody()).build()
+                : builder.GET().build());
+        }
+        HttpRequest metrics = HttpRequest.newBuilder(URI.create(url + "/metrics/executors")).timeout(Duration.ofSeconds(10)).GET().build();
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        AtomicLong errors = new AtomicLong();
+        Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+        List<long[]> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        System.out.println("Running " + clients + " clients against " + url + " for " + durationSeconds + " s...");
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            int offset = c;
+            workers.submit(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                int next = offset;
+                while (System.nanoTime() < end) {
+                    HttpRequest request = requests.get(next++ % requests.size());
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        statuses.computeIfAbsent(response.statusCode(), s -> new AtomicLong()).incrementAndGet();
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - sent;
+                }
+                latencies.add(Arrays.copyOf(samples, count));
+            });
+        }
+
+        // Sample the server's thread count once a second
+        List<Integer> threadSamples = new ArrayList<>();
+        int second = 0;
+        while (System.nanoTime() < end) {
+            Thread.sleep(1000);
+            second++;
+            try {
+                String body = client.send(metrics, HttpResponse.BodyHandlers.ofString()).body();
+                Matcher matcher = LIVE_THREADS.matcher(body);
+                if (matcher.find()) {
+                    int live = Integer.parseInt(matcher.group(1));
+                    System.out.println(String.format("  %3ds: %d live server threads", second, live));
+                    if (second > warmupSeconds) {
+                        threadSamples.add(live);
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println(String.format("  %3ds: metrics unavailable (%s)", second, e.getMessage()));
+            }
+        }
+        workers.shutdown();
+        workers.awaitTermination(120, TimeUnit.SECONDS);
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d requests in %.1f s (%.0f req/s), %d errors, statuses %s",
+            all.length, seconds, all.length / seconds, errors.get(), new TreeMap<>(statuses)));
+        if (all.length > 0) {
+            System.out.println(String.format("Latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), all[all.length - 1] / 1e6));
+        }
+
+        if (threadSamples.isEmpty()) {
+            System.out.println("No thread samples after warmup; is /metrics/executors reachable?");
+            System.exit(1);
+        }
+        int min = Collections.min(threadSamples);
+        int max = Collections.max(threadSamples);
+        System.out.println(String.format("Server threads after warmup: min %d, max %d, growth %d (allowed %d)",
+            min, max, max - min, maxThreadGrowth));
+        if (max - min > maxThreadGrowth) {
+            System.out.println("FAIL: server thread count is not stable under load");
+            System.exit(1);
+        }
+        System.out.println("PASS");
+        System.exit(0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the server CPU cost of open dashboards.
+ *
+ * Samples the server's process CPU time from /metrics/executors over a window with no
+ * WebSocket clients, then opens --clients connections to /updates and samples the same
+ * window again. Reports CPU per wall-clock second for both windows, the difference per
+ * client and how many messages the clients received.
+ *
+ * Usage: WebSocketFanoutLoadTest [--url http://localhost:8080] [--clients N]
+ *        [--window-seconds N] [--max-cpu-percent-increase N]
+ */
+public class WebSocketFanoutLoadTest {
+    private static final Pattern CPU_MILLIS = Pattern.compile("\"processCpuMillis\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int clients = 500;
+        int windowSeconds = 30;
+        double maxCpuPercentIncrease = 5.0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": url = args[++i]; break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--window-seconds": windowSeconds = Integer.parseInt(args[++i]); break;
+                case "--max-cpu-percent-increase": maxCpuPercentIncrease = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        HttpRequest metrics = HttpRequest.newBuilder(URI.create(url + "/metrics/executors")).GET().build();
+
+        System.out.println("Measuring idle server CPU for " + windowSeconds + " s...");
+        double idle = cpuPercent(http, metrics, windowSeconds);
+        System.out.println(String.format("  idle: %.2f%% of one core", idle));
+
+        AtomicLong messages = new AtomicLong();
+        AtomicLong bytes = new AtomicLong();
+        URI updates = URI.create(url.replaceFirst("^http", "ws") + "/updates");
+        List<WebSocket> sockets = new ArrayList<>();
+        System.out.println("Opening " + clients + " WebSocket clients...");
+        for (int c = 0; c < clients; c++) {
+            sockets.add(http.newWebSocketBuilder().buildAsync(updates, new WebSocket.Listener() {
+                @Override
+                public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+                    bytes.addAndGet(data.length());
+                    if (last) {
+                        messages.incrementAndGet();
+                    }
+                    socket.request(1);
+                    return CompletableFuture.completedFuture(null);
+                }
+            }).get(10, TimeUnit.SECONDS));
+        }
+        // Let the connection burst settle before measuring steady state
+        Thread.sleep(2000);
+        long messagesBefore = messages.get();
+
+        System.out.println("Measuring server CPU with " + clients + " clients for " + windowSeconds + " s...");
+        double connected = cpuPercent(http, metrics, windowSeconds);
+        long received = messages.get() - messagesBefore;
+        System.out.println(String.format("  connected: %.2f%% of one core", connected));
+
+        for (WebSocket socket : sockets) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+        }
+
+        double increase = connected - idle;
+        System.out.println(String.format("CPU increase %.2f%% of one core (%.4f%% per client), %d messages (%d bytes total) received in the window",
+            increase, increase / clients, received, bytes.get()));
+        if (increase > maxCpuPercentIncrease) {
+            System.out.println("FAIL: open dashboards cost more than " + maxCpuPercentIncrease + "% of a core");
+            System.exit(1);
+        }
+        System.out.println("PASS");
+        System.exit(0);
+    }
+
+    // Server process CPU time over the window, as a percentage of one core
+    private static double cpuPercent(HttpClient http, HttpRequest metrics, int windowSeconds) throws Exception {
+        long startCpu = cpuMillis(http, metrics);
+        long start = System.nanoTime();
+        Thread.sleep(windowSeconds * 1000L);
+        long endCpu = cpuMillis(http, metrics);
+        double wallMillis = (System.nanoTime() - start) / 1e6;
+        return 100.0 * (endCpu - startCpu) / wallMillis;
+    }
+
+    private static long cpuMillis(HttpClient http, HttpRequest metrics) throws Exception {
+        String body = http.send(metrics, HttpResponse.BodyHandlers.ofString()).body();
+        Matcher matcher = CPU_MILLIS.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No processCpuMillis in /metrics/executors: " + body);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for request routes.
+ *
+ * Each class of request gets its own lane: a fixed number of concurrent permits, a bounded
+ * number of waiters and a deadline for waiting. A request that finds the queue full is
+ * rejected at once with 429; one whose deadline passes in the queue gets 503. Both carry a
+ * Retry-After estimated from the lane's recent service times. Because lanes do not share
+ * permits, a pile-up of expensive requests (uncached predictions that fetch and train)
+ * cannot take the request threads that cheap ones (cached predictions, the ranking) need.
+ *
+ * Lanes are configured with {@code admission.<lane>.concurrency}, {@code .queue} and
+ * {@code .queue.timeout.ms}.
+ */
+public class AdmissionController {
+    public static final String CACHED = "cached";
+    public static final String UNCACHED = "uncached";
+    public static final String BATCH = "batch";
+    public static final String STREAM = "stream";
+
+    /**
+     * Thrown when a request is not admitted; carries the HTTP status and Retry-After to send.
+     */
+    public static class RejectedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+        public final long retryAfterSeconds;
+
+        RejectedException(String message, int status, long retryAfterSeconds) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * A held permit; closing it releases the permit and records the service time.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    public AdmissionController(Properties props) {
+        lanes.put(CACHED, lane(props, CACHED, 256, 0, 0));
+        lanes.put(UNCACHED, lane(props, UNCACHED, 4, 16, 2000));
+        lanes.put(BATCH, lane(props, BATCH, 2, 4, 2000));
+        lanes.put(STREAM, lane(props, STREAM, 8, 0, 0));
+    }
+
+    private static Lane lane(Properties props, String name, int concurrency, int queue, long timeoutMillis) {
+        String prefix = "admission." + name + ".";
+        return new Lane(name,
+            Integer.parseInt(props.getProperty(prefix + "concurrency", String.valueOf(concurrency))),
+            Integer.parseInt(props.getProperty(prefix + "queue", String.valueOf(queue))),
+            Long.parseLong(props.getProperty(prefix + "queue.timeout.ms", String.valueOf(timeoutMillis))));
+    }
+
+    /**
+     * Waits for a permit in the named lane, up to the lane's queue deadline.
+     */
+    public Permit acquire(String lane) throws RejectedException {
+        Lane target = lanes.get(lane);
+        if (target == null) {
+            throw new IllegalArgumentException("Unknown admission lane: " + lane);
+        }
+        return target.acquire();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Lane lane : lanes.values()) {
+            stats.put(lane.name, lane.stats());
+        }
+        return stats;
+    }
+
+    private static class Lane {
+        private final String name;
+        private final int concurrency;
+        private final int maxQueue;
+        private final long queueTimeoutMillis;
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejectedQueueFull = new AtomicLong();
+        private final AtomicLong rejectedDeadline = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private volatile double avgServiceMillis; // Exponentially weighted; a lost update only blurs the estimate
+
+        Lane(String name, int concurrency, int maxQueue, long queueTimeoutMillis) {
+            this.name = name;
+            this.concurrency = Math.max(1, concurrency);
+            this.maxQueue = Math.max(0, maxQueue);
+            this.queueTimeoutMillis = Math.max(0, queueTimeoutMillis);
+            this.permits = new Semaphore(this.concurrency, true); // First come, first served
+        }
+
+        Permit acquire() throws RejectedException {
+            long start = System.nanoTime();
+            if (!tryAcquire(0)) {
+                if (waiting.incrementAndGet() > maxQueue) {
+                    waiting.decrementAndGet();
+                    rejectedQueueFull.incrementAndGet();
+                    throw new RejectedException("Too many " + name + " requests", 429, retryAfterSeconds());
+                }
+                boolean acquired;
+                try {
+                    acquired = tryAcquire(queueTimeoutMillis);
+                } finally {
+                    waiting.decrementAndGet();
+                }
+                if (!acquired) {
+                    rejectedDeadline.incrementAndGet();
+                    throw new RejectedException("Timed out waiting for a " + name + " slot", 503, retryAfterSeconds());
+                }
+            }
+
+            long admittedAt = System.nanoTime();
+            long waited = admittedAt - start;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            admitted.incrementAndGet();
+            AtomicInteger released = new AtomicInteger();
+            return () -> {
+                if (released.getAndIncrement() == 0) {
+                    double serviceMillis = (System.nanoTime() - admittedAt) / 1_000_000.0;
+                    avgServiceMillis = avgServiceMillis == 0 ? serviceMillis : avgServiceMillis * 0.9 + serviceMillis * 0.1;
+                    permits.release();
+                }
+            };
+        }
+
+        // The timed form honours fairness, so new arrivals cannot barge past queued requests
+        private boolean tryAcquire(long timeoutMillis) {
+            try {
+                return permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        // Time for everything already queued to drain through the lane's permits
+        private long retryAfterSeconds() {
+            double drainMillis = avgServiceMillis * (waiting.get() + 1) / concurrency;
+            return Math.max(1, (long) Math.ceil(drainMillis / 1000.0));
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long count = admitted.get();
+            stats.put("concurrency", concurrency);
+            stats.put("active", concurrency - permits.availablePermits());
+            stats.put("waiting", waiting.get());
+            stats.put("maxQueue", maxQueue);
+            stats.put("admitted", count);
+            stats.put("rejectedQueueFull", rejectedQueueFull.get());
+            stats.put("rejectedDeadline", rejectedDeadline.get());
+            stats.put("avgWaitMillis", count > 0 ? totalWaitNanos.get() / count / 1_000_000.0 : 0.0);
+            stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000.0);
+            stats.put("avgServiceMillis", avgServiceMillis);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Daily bars for one symbol stored as primitive columns, ordered oldest first.
+ *
+ * Dates are kept as epoch days so lookups are a binary search over an int array. The
+ * arrays are never modified after construction, so a series can be shared between
+ * threads freely; use {@link #merge(BarSeries)} to produce an updated copy.
+ */
+public class BarSeries {
+    private final String symbol;
+    private final int[] dates;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final boolean mockData;
+
+    public BarSeries(String symbol, int[] dates, double[] open, double[] high, double[] low,
+                     double[] close, double[] volume, boolean mockData) {
+        int n = dates.length;
+        if (open.length != n || high.length != n || low.length != n || close.length != n || volume.length != n) {
+            throw new IllegalArgumentException("Column lengths differ for " + symbol);
+        }
+        for (int i = 1; i < n; i++) {
+            if (dates[i] <= dates[i - 1]) {
+                throw new IllegalArgumentException("Dates must be strictly increasing for " + symbol);
+            }
+        }
+        this.symbol = symbol;
+        this.dates = dates;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.mockData = mockData;
+    }
+
+    /**
+     * Builds a series from entries in any order, keeping the last entry seen for each date.
+     */
+    public static BarSeries fromEntries(String symbol, List<StockDataManager.StockEntry> entries) {
+        Builder builder = new Builder(symbol, entries.size());
+        boolean mock = false;
+        for (StockDataManager.StockEntry entry : entries) {
+            builder.add((int) LocalDate.parse(entry.date).toEpochDay(),
+                        entry.open, entry.high, entry.low, entry.close, entry.volume);
+            mock |= entry.isMockData;
+        }
+        return builder.build(mock);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int size() {
+        return dates.length;
+    }
+
+    public boolean isMockData() {
+        return mockData;
+    }
+
+    public int dateAt(int i) { return dates[i]; }
+    public double openAt(int i) { return open[i]; }
+    public double highAt(int i) { return high[i]; }
+    public double lowAt(int i) { return low[i]; }
+    public double closeAt(int i) { return close[i]; }
+    public double volumeAt(int i) { return volume[i]; }
+
+    public int firstDate() {
+        return dates.length > 0 ? dates[0] : Integer.MIN_VALUE;
+    }
+
+    public int lastDate() {
+        return dates.length > 0 ? dates[dates.length - 1] : Integer.MIN_VALUE;
+    }
+
+    /**
+     * Index of the first bar on or after the given epoch day (size() if there is none).
+     */
+    public int lowerBound(int epochDay) {
+        int lo = 0;
+        int hi = dates.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dates[mid] < epochDay) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Combines this series with another, taking the other series' bar where both have the same date.
+     */
+    public BarSeries merge(BarSeries other) {
+        if (other.size() == 0) {
+            return this;
+        }
+        if (size() == 0 || other.firstDate() > lastDate()) {
+            return concat(other);
+        }
+
+        Builder builder = new Builder(symbol, size() + other.size());
+        int i = 0;
+        int j = 0;
+        while (i < size() || j < other.size()) {
+            if (j >= other.size() || (i < size() && dates[i] < other.dates[j])) {
+                builder.addSorted(this, i++);
+            } else {
+                if (i < size() && dates[i] == other.dates[j]) {
+                    i++;
+                }
+                builder.addSorted(other, j++);
+            }
+        }
+        return builder.build(mockData || other.mockData);
+    }
+
+    private BarSeries concat(BarSeries other) {
+        return new BarSeries(symbol,
+            concat(dates, other.dates),
+            concat(open, other.open), concat(high, other.high), concat(low, other.low),
+            concat(close, other.close), concat(volume, other.volume),
+            mockData || other.mockData);
+    }
+
+    /**
+     * Converts to the entry list used by {@link Model}, newest first.
+     */
+    public List<StockDataManager.StockEntry> toEntries() {
+        List<StockDataManager.StockEntry> entries = new ArrayList<>(dates.length);
+        for (int i = dates.length - 1; i >= 0; i--) {
+            double change = ((close[i] - open[i]) / open[i]) * 100;
+            entries.add(new StockDataManager.StockEntry(
+                LocalDate.ofEpochDay(dates[i]).toString(),
+                open[i], high[i], low[i], close[i], volume[i],
+                mockData,
+                Double.NaN,
+                0,
+                change,
+                StockDataManager.determineSentiment(change),
+                "Unknown",
+                0.0
+            ));
+        }
+        return entries;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static double[] concat(double[] a, double[] b) {
+        double[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Accumulates bars in growable primitive arrays. Bars may be added in any order;
+     * {@link #build(boolean)} sorts them and drops duplicate dates, keeping the last one added.
+     */
+    public static class Builder {
+        private final String symbol;
+        private int[] dates;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private double[] volume;
+        private int size;
+        private boolean sorted = true;
+
+        public Builder(String symbol, int initialCapacity) {
+            int capacity = Math.max(16, initialCapacity);
+            this.symbol = symbol;
+            this.dates = new int[capacity];
+            this.open = new double[capacity];
+            this.high = new double[capacity];
+            this.low = new double[capacity];
+            this.close = new double[capacity];
+            this.volume = new double[capacity];
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void add(int date, double o, double h, double l, double c, double v) {
+            if (size == dates.length) {
+                grow();
+            }
+            if (size > 0 && date <= dates[size - 1]) {
+                sorted = false;
+            }
+            dates[size] = date;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            volume[size] = v;
+            size++;
+        }
+
+        /**
+         * Appends every bar from another builder, e.g. one filled by a different parser thread.
+         */
+        public void addAll(Builder other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.dates[i], other.open[i], other.high[i], other.low[i], other.close[i], other.volume[i]);
+            }
+        }
+
+        private void addSorted(BarSeries series, int i) {
+            add(series.dates[i], series.open[i], series.high[i], series.low[i], series.close[i], series.volume[i]);
+        }
+
+        public BarSeries build(boolean mockData) {
+            if (!sorted) {
+                sortAndDeduplicate();
+            }
+            return new BarSeries(symbol,
+                Arrays.copyOf(dates, size),
+                Arrays.copyOf(open, size), Arrays.copyOf(high, size), Arrays.copyOf(low, size),
+                Arrays.copyOf(close, size), Arrays.copyOf(volume, size),
+                mockData);
+        }
+
+        private void sortAndDeduplicate() {
+            // Sort an index permutation by (date, insertion order) so later bars win on duplicates
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) dates[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            int[] newDates = new int[size];
+            double[] newOpen = new double[size];
+            double[] newHigh = new double[size];
+            double[] newLow = new double[size];
+            double[] newClose = new double[size];
+            double[] newVolume = new double[size];
+            int count = 0;
+            for (int k = 0; k < size; k++) {
+                int i = (int) keys[k];
+                int date = (int) (keys[k] >> 32);
+                if (count > 0 && newDates[count - 1] == date) {
+                    count--; // Replace the earlier bar for this date
+                }
+                newDates[count] = date;
+                newOpen[count] = open[i];
+                newHigh[count] = high[i];
+                newLow[count] = low[i];
+                newClose[count] = close[i];
+                newVolume[count] = volume[i];
+                count++;
+            }
+
+            dates = newDates;
+            open = newOpen;
+            high = newHigh;
+            low = newLow;
+            close = newClose;
+            volume = newVolume;
+            size = count;
+            sorted = true;
+        }
+
+        private void grow() {
+            int capacity = dates.length * 2;
+            dates = Arrays.copyOf(dates, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory store of {@link BarSeries} keyed by symbol.
+ *
+ * Series are immutable, so readers never block; writers replace a symbol's series
+ * atomically with {@link ConcurrentHashMap#merge}.
+ */
+public class BarStore {
+    private final Map<String, BarSeries> series = new ConcurrentHashMap<>();
+    private final Map<String, Long> updatedAt = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private volatile Consumer<BarSeries> updateListener = bars -> { };
+
+    public BarSeries get(String symbol) {
+        return series.get(symbol);
+    }
+
+    /**
+     * Called with a symbol's new series after every put or merge, on the writer's thread.
+     */
+    public void setUpdateListener(Consumer<BarSeries> updateListener) {
+        this.updateListener = updateListener;
+    }
+
+    public void put(BarSeries bars) {
+        series.put(bars.getSymbol(), bars);
+        updatedAt.put(bars.getSymbol(), System.currentTimeMillis());
+        versions.merge(bars.getSymbol(), 1L, Long::sum);
+        updateListener.accept(bars);
+    }
+
+    /**
+     * Merges bars into the symbol's existing series, replacing bars with the same date.
+     */
+    public BarSeries merge(BarSeries bars) {
+        BarSeries merged = series.merge(bars.getSymbol(), bars, BarSeries::merge);
+        updatedAt.put(bars.getSymbol(), System.currentTimeMillis());
+        versions.merge(bars.getSymbol(), 1L, Long::sum);
+        updateListener.accept(merged);
+        return merged;
+    }
+
+    /**
+     * When the symbol's series was last replaced, in epoch millis (0 if never).
+     */
+    public long lastUpdated(String symbol) {
+        return updatedAt.getOrDefault(symbol, 0L);
+    }
+
+    /**
+     * Counts the symbol's puts and merges (0 if never). It is bumped after the series is
+     * replaced, so a caller that reads the version before {@link #get} never pairs a new
+     * version with an older series.
+     */
+    public long version(String symbol) {
+        return versions.getOrDefault(symbol, 0L);
+    }
+
+    public boolean contains(String symbol) {
+        return series.containsKey(symbol);
+    }
+
+    public Set<String> symbols() {
+        return series.keySet();
+    }
+
+    public int size() {
+        return series.size();
+    }
+
+    public long totalBars() {
+        long total = 0;
+        for (BarSeries bars : series.values()) {
+            total += bars.size();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Predicts many symbols in one call.
+ *
+ * Cached predictions are answered in one pass without touching the executor; the misses are
+ * predicted with at most {@code maxConcurrency} in flight, topping up as each one finishes,
+ * until they are all done or the deadline passes. Failures don't fail the batch: each one is
+ * reported next to the predictions that did succeed.
+ */
+public class BatchPredictor {
+    /**
+     * Body of {@code POST /predict/batch}. Only {@code symbols} is required.
+     */
+    public record Request(List<String> symbols, Boolean refresh, Integer timeoutMs) {
+    }
+
+    /**
+     * A symbol that could not be predicted; {@code status} is {@code loading}, {@code error}
+     * or {@code timeout}.
+     */
+    public record Failure(String symbol, String status, String error) {
+    }
+
+    public record Result(boolean success, int requested, int succeeded, int failed, int cached, long elapsedMs,
+                         List<PredictionResult> predictions, List<Failure> failures) {
+    }
+
+    private final Map<String, PredictionResult> cachedPredictions;
+    private final RankingService.Predictor predictor;
+    private final Predicate<String> loading;
+    private final ExecutorService executor;
+    private final int maxConcurrency;
+    private final long timeoutMillis;
+
+    public BatchPredictor(Map<String, PredictionResult> cachedPredictions, RankingService.Predictor predictor,
+                          Predicate<String> loading, ExecutorService executor, int maxConcurrency, long timeoutMillis) {
+        this.cachedPredictions = cachedPredictions;
+        this.predictor = predictor;
+        this.loading = loading;
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Predicts every symbol, in request order, with duplicates removed. With {@code refresh}
+     * set, cached predictions are recomputed instead of replayed.
+     */
+    public Result predict(List<String> requested, boolean refresh, long timeoutMillis) {
+        long startTime = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, this.timeoutMillis));
+
+        LinkedHashSet<String> symbols = new LinkedHashSet<>();
+        for (String symbol : requested) {
+            if (symbol != null && !symbol.trim().isEmpty()) {
+                symbols.add(symbol.trim());
+            }
+        }
+
+        Map<String, PredictionResult> results = new HashMap<>();
+        Map<String, Failure> failures = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        int cached = 0;
+        for (String symbol : symbols) {
+            PredictionResult hit = refresh ? null : cachedPredictions.get(symbol);
+            if (hit != null) {
+                results.put(symbol, hit);
+                cached++;
+            } else if (loading.test(symbol)) {
+                // Don't start a second fetch next to the background load
+                failures.put(symbol, new Failure(symbol, "loading", "Data for " + symbol + " is still loading"));
+            } else {
+                misses.add(symbol);
+            }
+        }
+
+        CompletionService<PredictionResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<PredictionResult>, String> pending = new HashMap<>();
+        int next = 0;
+        try {
+            while (next < misses.size() || !pending.isEmpty()) {
+                while (next < misses.size() && pending.size() < maxConcurrency) {
+                    String symbol = misses.get(next++);
+                    pending.put(completion.submit(() -> predictor.predict(symbol)), symbol);
+                }
+
+                long remaining = deadline - System.nanoTime();
+                Future<PredictionResult> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    break;
+                }
+                String symbol = pending.remove(done);
+                try {
+                    PredictionResult prediction = done.get();
+                    if (prediction != null) {
+                        results.put(symbol, prediction);
+                    } else {
+                        failures.put(symbol, new Failure(symbol, "error", "No prediction available yet"));
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    failures.put(symbol, new Failure(symbol, "error", cause.getMessage()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Map.Entry<Future<PredictionResult>, String> entry : pending.entrySet()) {
+                entry.getKey().cancel(true);
+                failures.put(entry.getValue(), new Failure(entry.getValue(), "timeout", "Deadline passed"));
+            }
+            // Never started before the deadline
+            for (String symbol : misses.subList(next, misses.size())) {
+                failures.put(symbol, new Failure(symbol, "timeout", "Deadline passed"));
+            }
+        }
+
+        List<PredictionResult> predictions = new ArrayList<>(results.size());
+        List<Failure> failed = new ArrayList<>(failures.size());
+        for (String symbol : symbols) {
+            PredictionResult prediction = results.get(symbol);
+            if (prediction != null) {
+                predictions.add(prediction);
+            } else if (failures.containsKey(symbol)) {
+                failed.add(failures.get(symbol));
+            }
+        }
+        return new Result(failed.isEmpty(), symbols.size(), predictions.size(), failed.size(), cached,
+                          System.currentTimeMillis() - startTime, predictions, failed);
+    }
+}
@@ -0,0 +1,614 @@
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports daily bars from local CSV archives straight into a {@link BarStore}.
+ *
+ * Files are split into byte ranges and every range is parsed on its own thread from a
+ * memory-mapped view of the file. Numbers and dates are parsed directly from the bytes,
+ * so the only objects allocated per row are the ones needed when the symbol changes.
+ *
+ * Two layouts are understood, both identified from the header row:
+ * <ul>
+ *   <li>vendor dumps with a Symbol (or Ticker) column, e.g. {@code Symbol,Date,Open,High,Low,Close,Volume}</li>
+ *   <li>per-symbol files like {@code data/csv/AAPL_daily.csv}, where the symbol comes from the file name</li>
+ * </ul>
+ * Extra columns such as Adj Close are ignored. Rows that fail validation are counted and skipped.
+ */
+public class BulkCsvImporter {
+    private static final int DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_LINE_BYTES = 4096;
+
+    // Exact powers of ten for the fast double parsing path
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private final int threads;
+    private final int chunkBytes;
+
+    public BulkCsvImporter() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_BYTES);
+    }
+
+    public BulkCsvImporter(int threads, int chunkBytes) {
+        this.threads = Math.max(1, threads);
+        this.chunkBytes = Math.max(MAX_LINE_BYTES, chunkBytes);
+    }
+
+    public static class ImportStats {
+        public int files;
+        public int chunks;
+        public final AtomicLong rows = new AtomicLong();
+        public final AtomicLong rejected = new AtomicLong();
+        public int symbols;
+        public long bars;
+        public long millis;
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d bars for %d symbols from %d files (%d chunks) in %d ms: %d rows read, %d rejected",
+                bars, symbols, files, chunks, millis, rows.get(), rejected.get());
+        }
+    }
+
+    // Column positions taken from a file's header row
+    private static class Layout {
+        int symbolColumn = -1;
+        int dateColumn = -1;
+        int openColumn = -1;
+        int highColumn = -1;
+        int lowColumn = -1;
+        int closeColumn = -1;
+        int volumeColumn = -1;
+        long dataStart;
+        String fileSymbol;
+
+        boolean isComplete() {
+            return dateColumn >= 0 && openColumn >= 0 && highColumn >= 0 && lowColumn >= 0 &&
+                   closeColumn >= 0 && volumeColumn >= 0 && (symbolColumn >= 0 || fileSymbol != null);
+        }
+    }
+
+    /**
+     * Imports every .csv file under the given files or directories.
+     */
+    public ImportStats importPaths(List<File> paths, BarStore store) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (File path : paths) {
+            collectCsvFiles(path, files);
+        }
+        return importFiles(files, store);
+    }
+
+    public ImportStats importFiles(List<File> files, BarStore store) throws IOException {
+        long startTime = System.currentTimeMillis();
+        ImportStats stats = new ImportStats();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<Map<String, BarSeries.Builder>>> chunkResults = new ArrayList<>();
+            for (File file : files) {
+                Layout layout = readLayout(file);
+                if (layout == null) {
+                    System.err.println("Skipping " + file.getPath() + ": unrecognised header");
+                    continue;
+                }
+                stats.files++;
+
+                long length = file.length();
+                for (long start = layout.dataStart; start < length; start += chunkBytes) {
+                    long chunkStart = start;
+                    long chunkEnd = Math.min(length, start + chunkBytes);
+                    chunkResults.add(executor.submit(() -> parseChunk(file, layout, chunkStart, chunkEnd, stats)));
+                    stats.chunks++;
+                }
+            }
+
+            // Combine each symbol's bars from every chunk that saw it
+            Map<String, BarSeries.Builder> combined = new HashMap<>();
+            for (Future<Map<String, BarSeries.Builder>> result : chunkResults) {
+                for (Map.Entry<String, BarSeries.Builder> entry : result.get().entrySet()) {
+                    if (entry.getValue().size() == 0) {
+                        continue;
+                    }
+                    BarSeries.Builder existing = combined.get(entry.getKey());
+                    if (existing == null) {
+                        combined.put(entry.getKey(), entry.getValue());
+                    } else {
+                        existing.addAll(entry.getValue());
+                    }
+                }
+            }
+
+            // Sorting and de-duplicating is per symbol, so it parallelises the same way
+            List<Future<BarSeries>> built = new ArrayList<>();
+            for (BarSeries.Builder builder : combined.values()) {
+                built.add(executor.submit(() -> store.merge(builder.build(false))));
+            }
+            for (Future<BarSeries> series : built) {
+                stats.bars += series.get().size();
+            }
+            stats.symbols = combined.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        stats.millis = System.currentTimeMillis() - startTime;
+        return stats;
+    }
+
+    private static void collectCsvFiles(File path, List<File> files) {
+        if (path.isDirectory()) {
+            File[] children = path.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectCsvFiles(child, files);
+                }
+            }
+        } else if (path.getName().toLowerCase().endsWith(".csv") && path.length() > 0) {
+            files.add(path);
+        }
+    }
+
+    private static Layout readLayout(File file) throws IOException {
+        Layout layout = new Layout();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] head = new byte[(int) Math.min(MAX_LINE_BYTES, raf.length())];
+            raf.readFully(head);
+
+            int lineEnd = 0;
+            while (lineEnd < head.length && head[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            String header = new String(head, 0, lineEnd, StandardCharsets.UTF_8).trim();
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+
+            String[] columns = header.split(",");
+            for (int i = 0; i < columns.length; i++) {
+                String name = columns[i].trim().replace("\"", "").toLowerCase();
+                switch (name) {
+                    case "symbol": case "ticker": layout.symbolColumn = i; break;
+                    case "date": case "timestamp": layout.dateColumn = i; break;
+                    case "open": layout.openColumn = i; break;
+                    case "high": layout.highColumn = i; break;
+                    case "low": layout.lowColumn = i; break;
+                    case "close": layout.closeColumn = i; break;
+                    case "volume": layout.volumeColumn = i; break;
+                    default: break; // Ignore extra columns such as Adj Close
+                }
+            }
+            layout.dataStart = Math.min(lineEnd + 1, raf.length());
+        }
+
+        if (layout.symbolColumn < 0) {
+            layout.fileSymbol = symbolFromFileName(file.getName());
+        }
+        return layout.isComplete() ? layout : null;
+    }
+
+    static String symbolFromFileName(String name) {
+        String base = name.replaceAll("\\.[^.]+$", "");
+        if (base.startsWith("stock_data_")) {
+            base = base.substring("stock_data_".length());
+        }
+        if (base.endsWith("_daily")) {
+            base = base.substring(0, base.length() - "_daily".length());
+        }
+        return base.isEmpty() ? null : base.toUpperCase();
+    }
+
+    /**
+     * Parses every line that starts inside [start, end). A line that starts before the
+     * range belongs to the previous chunk, one that runs past the end is still read here.
+     */
+    private Map<String, BarSeries.Builder> parseChunk(File file, Layout layout, long start, long end,
+                                                      ImportStats stats) throws IOException {
+        Map<String, BarSeries.Builder> builders = new HashMap<>();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // Map one byte before the range to see whether it begins on a line boundary
+            long mapStart = start > layout.dataStart ? start - 1 : start;
+            long mapEnd = Math.min(channel.size(), end + MAX_LINE_BYTES);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+
+            int limit = (int) (end - mapStart);
+            int pos = 0;
+            if (mapStart < start) {
+                // Skip the remainder of a line owned by the previous chunk
+                while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+
+            int[] fieldStart = new int[64];
+            int[] fieldEnd = new int[64];
+            byte[] symbolBytes = new byte[16];
+            int symbolLength = -1;
+            BarSeries.Builder current = null;
+            if (layout.fileSymbol != null) {
+                current = new BarSeries.Builder(layout.fileSymbol, 1024);
+                builders.put(layout.fileSymbol, current);
+            }
+
+            while (pos < limit && pos < buffer.limit()) {
+                int lineStart = pos;
+                int fields = 0;
+                fieldStart[0] = pos;
+                while (pos < buffer.limit()) {
+                    byte b = buffer.get(pos);
+                    if (b == '\n') {
+                        break;
+                    }
+                    if (b == ',' && fields < fieldStart.length - 1) {
+                        fieldEnd[fields++] = pos;
+                        fieldStart[fields] = pos + 1;
+                    }
+                    pos++;
+                }
+                fieldEnd[fields++] = pos;
+                boolean complete = pos < buffer.limit() || mapEnd == channel.size();
+                pos++; // Step over the newline
+
+                if (pos - lineStart <= 1 || (pos - lineStart == 2 && buffer.get(lineStart) == '\r')) {
+                    continue; // Blank line
+                }
+                stats.rows.incrementAndGet();
+                if (!complete) {
+                    stats.rejected.incrementAndGet(); // Line longer than MAX_LINE_BYTES
+                    continue;
+                }
+
+                // Trim quotes and carriage returns from each field
+                for (int f = 0; f < fields; f++) {
+                    int s = fieldStart[f];
+                    int e = fieldEnd[f];
+                    while (e > s && (buffer.get(e - 1) == '\r' || buffer.get(e - 1) == ' ')) e--;
+                    while (s < e && buffer.get(s) == ' ') s++;
+                    if (e - s >= 2 && buffer.get(s) == '"' && buffer.get(e - 1) == '"') {
+                        s++;
+                        e--;
+                    }
+                    fieldStart[f] = s;
+                    fieldEnd[f] = e;
+                }
+
+                if (layout.symbolColumn >= 0) {
+                    if (layout.symbolColumn >= fields) {
+                        stats.rejected.incrementAndGet();
+                        continue;
+                    }
+                    int s = fieldStart[layout.symbolColumn];
+                    int length = fieldEnd[layout.symbolColumn] - s;
+                    if (length == 0) {
+                        stats.rejected.incrementAndGet();
+                        continue;
+                    }
+                    // Vendor dumps are grouped by symbol, so only allocate when it changes
+                    if (!sameBytes(buffer, s, length, symbolBytes, symbolLength)) {
+                        if (symbolBytes.length < length) {
+                            symbolBytes = new byte[length];
+                        }
+                        for (int k = 0; k < length; k++) {
+                            symbolBytes[k] = buffer.get(s + k);
+                        }
+                        symbolLength = length;
+                        String symbol = new String(symbolBytes, 0, length, StandardCharsets.US_ASCII).toUpperCase();
+                        current = builders.computeIfAbsent(symbol, sym -> new BarSeries.Builder(sym, 1024));
+                    }
+                }
+
+                int maxColumn = Math.max(layout.dateColumn, Math.max(layout.volumeColumn,
+                    Math.max(Math.max(layout.openColumn, layout.highColumn), Math.max(layout.lowColumn, layout.closeColumn))));
+                if (maxColumn >= fields) {
+                    stats.rejected.incrementAndGet();
+                    continue;
+                }
+
+                int date = parseEpochDay(buffer, fieldStart[layout.dateColumn], fieldEnd[layout.dateColumn]);
+                double open = parseDouble(buffer, fieldStart[layout.openColumn], fieldEnd[layout.openColumn]);
+                double high = parseDouble(buffer, fieldStart[layout.highColumn], fieldEnd[layout.highColumn]);
+                double low = parseDouble(buffer, fieldStart[layout.lowColumn], fieldEnd[layout.lowColumn]);
+                double close = parseDouble(buffer, fieldStart[layout.closeColumn], fieldEnd[layout.closeColumn]);
+                double volume = parseDouble(buffer, fieldStart[layout.volumeColumn], fieldEnd[layout.volumeColumn]);
+
+                if (date == Integer.MIN_VALUE || !isValidBar(open, high, low, close, volume)) {
+                    stats.rejected.incrementAndGet();
+                    continue;
+                }
+                current.add(date, open, high, low, close, volume);
+            }
+        }
+
+        return builders;
+    }
+
+    private static boolean sameBytes(MappedByteBuffer buffer, int start, int length, byte[] bytes, int bytesLength) {
+        if (length != bytesLength) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (buffer.get(start + k) != bytes[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isValidBar(double open, double high, double low, double close, double volume) {
+        if (!(open > 0) || !(high > 0) || !(low > 0) || !(close > 0) || !(volume >= 0)) {
+            return false; // Also rejects NaN
+        }
+        if (Double.isInfinite(open) || Double.isInfinite(high) || Double.isInfinite(low) ||
+            Double.isInfinite(close) || Double.isInfinite(volume)) {
+            return false;
+        }
+        // Allow for vendors rounding high/low and open/close to different precisions
+        double tolerance = 1e-6 * high;
+        return high + tolerance >= Math.max(open, close) && low - tolerance <= Math.min(open, close) && high >= low;
+    }
+
+    /**
+     * Parses a decimal number without allocating. Values with at most 15 significant
+     * digits and a small exponent take an exact fast path; anything else falls back to
+     * {@link Double#parseDouble}. Returns NaN if the field is not a number.
+     */
+    static double parseDouble(MappedByteBuffer buffer, int start, int end) {
+        int pos = start;
+        if (pos >= end) {
+            return Double.NaN;
+        }
+
+        boolean negative = false;
+        byte b = buffer.get(pos);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean seenPoint = false;
+        for (; pos < end; pos++) {
+            b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (mantissa == 0 && b == '0') {
+                    if (seenPoint) {
+                        exponent--; // Leading zero after the point
+                    }
+                    continue;
+                }
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    significantDigits++;
+                    if (seenPoint) {
+                        exponent--;
+                    }
+                } else if (!seenPoint) {
+                    exponent++; // Digits beyond what a long holds still scale the integer part
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+
+        if (pos < end) {
+            b = buffer.get(pos);
+            if (b != 'e' && b != 'E') {
+                return Double.NaN;
+            }
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+                negativeExponent = buffer.get(pos) == '-';
+                pos++;
+            }
+            int explicitExponent = 0;
+            int exponentDigits = 0;
+            for (; pos < end; pos++) {
+                b = buffer.get(pos);
+                if (b < '0' || b > '9') {
+                    return Double.NaN;
+                }
+                if (explicitExponent < 10000) {
+                    explicitExponent = explicitExponent * 10 + (b - '0');
+                }
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (significantDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            // Both the mantissa and the power of ten are exact doubles, so one rounding step
+            value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+        } else {
+            byte[] text = new byte[end - start];
+            for (int k = 0; k < text.length; k++) {
+                text[k] = buffer.get(start + k);
+            }
+            try {
+                return Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses YYYY-MM-DD, YYYY/MM/DD or YYYYMMDD into an epoch day, or returns
+     * Integer.MIN_VALUE if the field is not a valid date.
+     */
+    static int parseEpochDay(MappedByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        int year;
+        int month;
+        int day;
+        if (length == 10) {
+            byte sep = buffer.get(start + 4);
+            if ((sep != '-' && sep != '/') || buffer.get(start + 7) != sep) {
+                return Integer.MIN_VALUE;
+            }
+            year = digits(buffer, start, 4);
+            month = digits(buffer, start + 5, 2);
+            day = digits(buffer, start + 8, 2);
+        } else if (length == 8) {
+            year = digits(buffer, start, 4);
+            month = digits(buffer, start + 4, 2);
+            day = digits(buffer, start + 6, 2);
+        } else {
+            return Integer.MIN_VALUE;
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1) {
+            return Integer.MIN_VALUE;
+        }
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        int monthLength = month == 2 && leap ? 29 : DAYS_IN_MONTH[month - 1];
+        if (day > monthLength) {
+            return Integer.MIN_VALUE;
+        }
+
+        // Days from civil date (Howard Hinnant's algorithm), matching LocalDate.toEpochDay
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(MappedByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int k = 0; k < count; k++) {
+            byte b = buffer.get(start + k);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Writes a series in the same JSON and CSV formats as {@link StockDataManager}, so the
+     * regular cache loading path picks up imported symbols.
+     */
+    public static void writeSeriesFiles(BarSeries series) throws IOException {
+        writeSeriesFiles(series, new File("data"));
+    }
+
+    public static void writeSeriesFiles(BarSeries series, File dataDirectory) throws IOException {
+        File jsonDirectory = new File(dataDirectory, "json");
+        File csvDirectory = new File(dataDirectory, "csv");
+        jsonDirectory.mkdirs();
+        csvDirectory.mkdirs();
+        String symbol = series.getSymbol();
+
+        try (JsonWriter writer = new JsonWriter(new FileWriter(new File(jsonDirectory, symbol + "_daily.json")))) {
+            writer.beginObject();
+            writer.name("Time Series (Daily)");
+            writer.beginObject();
+            for (int i = series.size() - 1; i >= 0; i--) {
+                writer.name(LocalDate.ofEpochDay(series.dateAt(i)).toString());
+                writer.beginObject();
+                writer.name("1. open").value(series.openAt(i));
+                writer.name("2. high").value(series.highAt(i));
+                writer.name("3. low").value(series.lowAt(i));
+                writer.name("4. close").value(series.closeAt(i));
+                writer.name("5. volume").value(series.volumeAt(i));
+                writer.endObject();
+            }
+            writer.endObject();
+            writer.endObject();
+        }
+
+        try (CSVPrinter printer = new CSVPrinter(new FileWriter(new File(csvDirectory, symbol + "_daily.csv")),
+                CSVFormat.DEFAULT.builder().setHeader("Date", "Open", "High", "Low", "Close", "Volume").build())) {
+            for (int i = series.size() - 1; i >= 0; i--) {
+                printer.printRecord(LocalDate.ofEpochDay(series.dateAt(i)),
+                    String.format("%.2f", series.openAt(i)), String.format("%.2f", series.highAt(i)),
+                    String.format("%.2f", series.lowAt(i)), String.format("%.2f", series.closeAt(i)),
+                    String.format("%.0f", series.volumeAt(i)));
+            }
+        }
+    }
+
+    /**
+     * Usage: BulkCsvImporter [--threads N] [--chunk-mb N] [--write-files] path...
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkBytes = DEFAULT_CHUNK_BYTES;
+        boolean writeFiles = false;
+        List<File> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--chunk-mb": chunkBytes = Integer.parseInt(args[++i]) * 1024 * 1024; break;
+                case "--write-files": writeFiles = true; break;
+                default: paths.add(new File(args[i])); break;
+            }
+        }
+        if (paths.isEmpty()) {
+            System.err.println("Usage: BulkCsvImporter [--threads N] [--chunk-mb N] [--write-files] path...");
+            System.exit(1);
+        }
+
+        BarStore store = new BarStore();
+        ImportStats stats = new BulkCsvImporter(threads, chunkBytes).importPaths(paths, store);
+        System.out.println(stats);
+
+        if (writeFiles) {
+            for (String symbol : store.symbols()) {
+                writeSeriesFiles(store.get(symbol));
+            }
+            System.out.println("Wrote data/json and data/csv files for " + store.size() + " symbols");
+        }
+    }
+}
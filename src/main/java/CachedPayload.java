@@ -0,0 +1,184 @@
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One version of a response body, compressed once and served to every client.
+ *
+ * The identity, gzip and deflate bodies are built when the payload is created. Each
+ * encoding has its own strong ETag derived from the content, and {@link #serve} answers
+ * conditional requests ({@code If-None-Match}, {@code If-Modified-Since}) with 304 and
+ * picks the encoding from {@code Accept-Encoding}, so polling clients cost neither
+ * serialization, compression nor bandwidth when nothing changed.
+ */
+public class CachedPayload {
+    private static final int MIN_COMPRESS_BYTES = 256;
+
+    public final String version;
+    public final long lastModified;
+    private final String contentType;
+    private final String etag;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final byte[] deflate;
+
+    private CachedPayload(String version, String contentType, byte[] body, long lastModified) {
+        this.version = version;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.identity = body;
+        this.etag = contentHash(body);
+
+        // Tiny bodies are not worth the compression headers
+        byte[] gzipped = body.length >= MIN_COMPRESS_BYTES ? compress(body, true) : null;
+        byte[] deflated = body.length >= MIN_COMPRESS_BYTES ? compress(body, false) : null;
+        this.gzip = gzipped != null && gzipped.length < body.length ? gzipped : null;
+        this.deflate = deflated != null && deflated.length < body.length ? deflated : null;
+    }
+
+    public static CachedPayload of(String version, String contentType, String body, long lastModified) {
+        return of(version, contentType, body.getBytes(StandardCharsets.UTF_8), lastModified);
+    }
+
+    public static CachedPayload of(String version, String contentType, byte[] body, long lastModified) {
+        return new CachedPayload(version, contentType, body, lastModified);
+    }
+
+    public String body() {
+        return new String(identity, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the payload, or a 304 if the client already has it. Returns the value the
+     * Spark route should return.
+     */
+    public Object serve(Request req, Response res) throws IOException {
+        String encoding = chooseEncoding(req.headers("Accept-Encoding"));
+        String tag = quotedTag(encoding);
+        HttpServletResponse raw = res.raw();
+        raw.setHeader("ETag", tag);
+        raw.setHeader("Last-Modified", httpDate(lastModified));
+        raw.setHeader("Cache-Control", "no-cache"); // Cache, but revalidate every time
+        raw.setHeader("Vary", "Accept-Encoding");
+
+        if (notModified(req.headers("If-None-Match"), req.headers("If-Modified-Since"))) {
+            res.status(304);
+            return "";
+        }
+
+        byte[] body = identity;
+        if ("gzip".equals(encoding)) {
+            body = gzip;
+        } else if ("deflate".equals(encoding)) {
+            body = deflate;
+        }
+        if (encoding != null) {
+            raw.setHeader("Content-Encoding", encoding);
+        }
+        res.status(200);
+        raw.setContentType(contentType);
+        raw.setContentLength(body.length);
+        OutputStream out = raw.getOutputStream();
+        out.write(body);
+        out.flush(); // Commits the response so Spark does not write a body of its own
+        return "";
+    }
+
+    private boolean notModified(String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            // Any representation of this version matches, whatever encoding it was sent in
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(quotedTag(null)) || tag.equals(quotedTag("gzip")) ||
+                    tag.equals(quotedTag("deflate"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return lastModified / 1000 <= since / 1000;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // Prefers gzip, then deflate, honouring q=0 exclusions
+    private String chooseEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzipAccepted = false;
+        boolean deflateAccepted = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.trim().split(";");
+            String name = fields[0].trim().toLowerCase();
+            boolean refused = fields.length > 1 && fields[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            if (name.equals("gzip") || name.equals("*")) {
+                gzipAccepted |= !refused;
+            }
+            if (name.equals("deflate") || name.equals("*")) {
+                deflateAccepted |= !refused;
+            }
+        }
+        if (gzipAccepted && gzip != null) {
+            return "gzip";
+        }
+        if (deflateAccepted && deflate != null) {
+            return "deflate";
+        }
+        return null;
+    }
+
+    private String quotedTag(String encoding) {
+        return "\"" + etag + (encoding != null ? "-" + encoding : "") + "\"";
+    }
+
+    private static String httpDate(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(millis).atZone(ZoneOffset.UTC));
+    }
+
+    private static String contentHash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 12; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] compress(byte[] body, boolean gzip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(body);
+        } catch (IOException e) {
+            return null; // Cannot happen with an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+}
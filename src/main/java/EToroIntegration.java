@@ -1,46 +1,64 @@
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.util.EntityUtils;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import java.util.Map;
 import java.util.HashMap;
 import java.io.IOException;
 import java.util.Properties;
 import java.io.FileInputStream;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.RequestBody;
-import okhttp3.MediaType;
-import java.util.concurrent.TimeUnit;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 
-public class EToroIntegration {
-    private static final String BASE_URL = "https://www.etoro.com/api/v1";
+/**
+ * Trades through eToro's virtual portfolio.
+ *
+ * Every authenticated call goes through a session of the {@link EToroSessionManager}: the
+ * {@link TradingGateway} methods use the server's own session, and orders journaled for a
+ * client's account use that client's session, so concurrent users never share a token.
+ */
+public class EToroIntegration implements TradingGateway {
+    private static final String DEFAULT_BASE_URL = "https://www.etoro.com/api/v1";
     private static final String LOGIN_ENDPOINT = "/login";
     private static final String PORTFOLIO_ENDPOINT = "/portfolio/virtual";
     private static final String TRADE_ENDPOINT = "/trade/virtual";
     private static final String MOCK_SESSION_TOKEN = "mock_session_token_for_virtual_trading";
-    
-    private String sessionToken;
-    private final HttpClient httpClient;
+
+    /**
+     * A session token and when it stops being accepted, in epoch millis; 0 when eToro didn't
+     * say. The mock token never expires.
+     */
+    public record Token(String value, long expiresAt) {
+        public boolean isMock() {
+            return MOCK_SESSION_TOKEN.equals(value);
+        }
+    }
+
+    /**
+     * eToro refused the token (401 or 403); logging in again may help.
+     */
+    public static class UnauthorizedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnauthorizedException(String message) {
+            super(message);
+        }
+    }
+
+    private final HttpTransport transport;
     private final Gson gson;
     private final Properties config;
-    private final OkHttpClient client;
+    private final String baseUrl;
+    private final PriceService prices;
+    private final EToroSessionManager sessions;
     
-    public EToroIntegration() throws IOException {
-        this.httpClient = HttpClients.createDefault();
-        this.gson = new GsonBuilder().create();
+    public EToroIntegration(PriceService prices, Properties sessionSettings) throws IOException {
+        this.prices = prices;
+        this.transport = HttpTransport.shared();
+        this.gson = Json.GSON;
         this.config = loadConfig();
-        this.client = new OkHttpClient.Builder()
-            .connectTimeout(30, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .followRedirects(true)
-            .build();
+        // etoro.base.url points the client at another server, such as the load-test stand-in
+        String url = System.getProperty("etoro.base.url", config.getProperty("etoro.base.url", DEFAULT_BASE_URL)).trim();
+        this.baseUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.sessions = new EToroSessionManager(this::requestToken, sessionSettings);
     }
     
     private Properties loadConfig() throws IOException {
@@ -53,236 +71,270 @@ public class EToroIntegration {
             return props;
         }
     }
+
+    public EToroSessionManager sessions() {
+        return sessions;
+    }
     
     public boolean login() {
         return login(config.getProperty("etoro.username"), config.getProperty("etoro.password"));
     }
     
+    /**
+     * Logs the server's own account in with these credentials.
+     */
+    @Override
     public boolean login(String username, String password) {
+        return sessions.loginServer(username, password);
+    }
+
+    /**
+     * Logs in and returns the token, or null when the credentials are refused. Cloudflare and
+     * network errors give the mock token so the application can continue with mock data.
+     */
+    public Token requestToken(String username, String password) {
         try {
             Map<String, String> credentials = new HashMap<>();
             credentials.put("username", username);
             credentials.put("password", password);
             
-            Request request = new Request.Builder()
-                .url(BASE_URL + LOGIN_ENDPOINT)
-                .post(RequestBody.create(
-                    MediaType.parse("application/json"),
-                    gson.toJson(credentials)))
-                .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
-                .addHeader("Accept", "application/json")
-                .addHeader("Accept-Language", "en-US,en;q=0.9")
-                .addHeader("Origin", "https://www.etoro.com")
-                .addHeader("Referer", "https://www.etoro.com/login")
+            HttpRequest request = transport.request(baseUrl + LOGIN_ENDPOINT)
+                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(credentials)))
+                .header("Content-Type", "application/json")
+                .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
+                .header("Accept", "application/json")
+                .header("Accept-Language", "en-US,en;q=0.9")
+                .header("Origin", "https://www.etoro.com")
+                .header("Referer", "https://www.etoro.com/login")
                 .build();
 
-            Response response = client.newCall(request).execute();
+            HttpResponse<String> response = transport.send(request, false);
             
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "";
+            if (!isSuccessful(response)) {
+                String errorBody = response.body();
                 if (errorBody.contains("Please enable JS") || errorBody.contains("captcha-delivery")) {
                     System.err.println("Warning: Cloudflare protection detected. Using mock data instead.");
-                    sessionToken = MOCK_SESSION_TOKEN; // Set mock session token
-                    return true; // Return true to allow the application to continue with mock data
+                    return mockToken();
                 }
-                System.err.println("Login failed with status code: " + response.code());
-                return false;
+                System.err.println("Login failed with status code: " + response.statusCode());
+                return null;
             }
 
-            String responseBody = response.body().string();
+            String responseBody = response.body();
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonResponse.has("token")) {
-                sessionToken = jsonResponse.get("token").getAsString();
-            } else {
+            if (jsonResponse == null || !jsonResponse.has("token")) {
                 // If no token in response, use mock token
-                sessionToken = MOCK_SESSION_TOKEN;
+                return mockToken();
             }
-            return true;
+            long expiresAt = jsonResponse.has("expiresIn")
+                ? System.currentTimeMillis() + jsonResponse.get("expiresIn").getAsLong() * 1000 : 0;
+            return new Token(jsonResponse.get("token").getAsString(), expiresAt);
         } catch (IOException e) {
             System.err.println("Warning: Network error during login. Using mock data instead: " + e.getMessage());
-            sessionToken = MOCK_SESSION_TOKEN; // Set mock session token
-            return true; // Return true to allow the application to continue with mock data
+            return mockToken();
         }
     }
+
+    private static Token mockToken() {
+        return new Token(MOCK_SESSION_TOKEN, Long.MAX_VALUE);
+    }
+
+    // The server's own session, or null while its credentials are refused
+    private EToroSessionManager.Session serverSession() {
+        return sessions.server(config.getProperty("etoro.username"), config.getProperty("etoro.password"));
+    }
     
+    @Override
     public double getPortfolioBalance() {
+        EToroSessionManager.Session session = serverSession();
+        if (session == null) {
+            return getMockPortfolioBalance();
+        }
         try {
-            if (sessionToken == null) {
-                if (!login()) {
-                    return getMockPortfolioBalance(); // Return mock balance if login fails
-                }
-            }
-            
-            // If using mock session token, return mock balance
-            if (sessionToken.equals(MOCK_SESSION_TOKEN)) {
-                return getMockPortfolioBalance();
-            }
-            
-            Request request = new Request.Builder()
-                .url(BASE_URL + PORTFOLIO_ENDPOINT)
-                .get()
-                .addHeader("Authorization", "Bearer " + sessionToken)
-                .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
-                .addHeader("Accept", "application/json")
-                .addHeader("Accept-Language", "en-US,en;q=0.9")
-                .addHeader("Origin", "https://www.etoro.com")
-                .addHeader("Referer", "https://www.etoro.com/portfolio")
-                .build();
-
-            Response response = client.newCall(request).execute();
-            
-            if (!response.isSuccessful()) {
-                String errorBody = response.body() != null ? response.body().string() : "";
-                if (errorBody.contains("Please enable JS") || errorBody.contains("captcha-delivery")) {
-                    System.err.println("Warning: Cloudflare protection detected. Using mock balance.");
-                    return getMockPortfolioBalance();
-                }
-                return getMockPortfolioBalance();
-            }
-
-            String responseBody = response.body().string();
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-            return jsonResponse.get("balance").getAsDouble();
-            
+            Double balance = sessions.call(session, this::balance);
+            return balance != null ? balance : getMockPortfolioBalance();
         } catch (Exception e) {
             System.err.println("Error getting portfolio balance: " + e.getMessage());
             return getMockPortfolioBalance(); // Return mock balance on any error
         }
     }
+
+    /**
+     * A client session's balance as eToro reports it. Never the mock balance: a client's
+     * trades are sized from it.
+     */
+    public double getPortfolioBalance(EToroSessionManager.Session session) throws IOException {
+        Double balance = sessions.call(session, this::balance);
+        if (balance == null) {
+            throw new IOException("eToro sent no balance");
+        }
+        return balance;
+    }
     
+    /**
+     * The balance as reported by eToro, or null when only the mock balance is available
+     * (no session, Cloudflare, network errors), so callers can tell the two apart.
+     */
+    @Override
+    public Double fetchBrokerBalance() {
+        EToroSessionManager.Session session = serverSession();
+        if (session == null) {
+            return null;
+        }
+        try {
+            return sessions.call(session, this::balance);
+        } catch (Exception e) {
+            System.err.println("Error getting broker balance: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // One portfolio call; null for the mock token or an answer without a balance
+    private Double balance(Token token) throws IOException {
+        if (token.isMock()) {
+            return null;
+        }
+        HttpRequest request = transport.request(baseUrl + PORTFOLIO_ENDPOINT)
+            .GET()
+            .header("Authorization", "Bearer " + token.value())
+            .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
+            .header("Accept", "application/json")
+            .header("Accept-Language", "en-US,en;q=0.9")
+            .header("Origin", "https://www.etoro.com")
+            .header("Referer", "https://www.etoro.com/portfolio")
+            .build();
+        HttpResponse<String> response = transport.send(request, true);
+        if (isUnauthorized(response)) {
+            throw new UnauthorizedException("eToro refused the session token");
+        }
+        if (!isSuccessful(response)) {
+            String errorBody = response.body();
+            if (errorBody.contains("Please enable JS") || errorBody.contains("captcha-delivery")) {
+                System.err.println("Warning: Cloudflare protection detected. Using mock balance.");
+            }
+            return null;
+        }
+        JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
+        return jsonResponse != null && jsonResponse.has("balance") ? jsonResponse.get("balance").getAsDouble() : null;
+    }
+
+    private static boolean isUnauthorized(HttpResponse<String> response) {
+        return response.statusCode() == 401 || response.statusCode() == 403;
+    }
+
+    private static boolean isSuccessful(HttpResponse<String> response) {
+        return response.statusCode() >= 200 && response.statusCode() < 300;
+    }
+
     private double getMockPortfolioBalance() {
         // Return a realistic mock balance for virtual trading (e.g. $100,000)
         return 100000.00;
     }
     
-    public boolean executeTrade(String symbol, int quantity, boolean isBuy) {
-        try {
-            if (sessionToken == null) {
-                if (!login()) {
-                    throw new IOException("Not logged in");
-                }
+    /**
+     * Sends one order to the broker and returns the fill price if the answer carries one. The
+     * client order ID travels with the order so the broker can drop a resend of an order it
+     * already has. Transport errors and 5xx/429 answers throw IOException (worth retrying);
+     * any other refusal throws RejectedOrderException.
+     */
+    @Override
+    public Double submitOrder(OrderOutbox.Order order) throws IOException, OrderOutbox.RejectedOrderException {
+        if (!order.isMarket()) {
+            throw new OrderOutbox.RejectedOrderException("eToro takes market orders only; " + order.type() +
+                                                         " orders need trading.gateway=paper");
+        }
+        EToroSessionManager.Session session;
+        if (order.account() == null) {
+            session = serverSession();
+            if (session == null) {
+                throw new IOException("Not logged in");
             }
-            
-            Map<String, Object> tradeRequest = new HashMap<>();
-            tradeRequest.put("symbol", symbol);
-            tradeRequest.put("quantity", quantity);
-            tradeRequest.put("action", isBuy ? "buy" : "sell");
-            tradeRequest.put("type", "market");
-            
-            HttpPost request = new HttpPost(BASE_URL + TRADE_ENDPOINT);
-            request.setHeader("Authorization", "Bearer " + sessionToken);
-            request.setHeader("Content-Type", "application/json");
-            request.setEntity(new StringEntity(gson.toJson(tradeRequest)));
-            
-            String response = EntityUtils.toString(httpClient.execute(request).getEntity());
-            
-            // First try parsing as JsonObject
-            try {
-                JsonObject jsonResponse = gson.fromJson(response, JsonObject.class);
-                if (jsonResponse.has("success") && jsonResponse.get("success").getAsBoolean()) {
-                    System.out.println("Successfully executed trade: " + 
-                        (isBuy ? "Bought " : "Sold ") + quantity + " shares of " + symbol);
-                    return true;
-                }
-                
-                if (jsonResponse.has("message")) {
-                    System.err.println("Trade failed: " + jsonResponse.get("message").getAsString());
-                } else {
-                    System.err.println("Trade failed: Unknown error");
-                }
-                return false;
-            } catch (Exception e) {
-                // If parsing as JsonObject fails, try handling as a primitive response
-                String errorMessage = gson.fromJson(response, String.class);
-                System.err.println("Trade failed: " + errorMessage);
-                return false;
+        } else {
+            session = sessions.forAccount(order.account());
+            if (session == null) {
+                throw new OrderOutbox.RejectedOrderException("No eToro session for " + order.account() + ", log in again");
             }
-            
-        } catch (Exception e) {
-            System.err.println("Error executing trade: " + e.getMessage());
-            return false;
         }
+        return sessions.call(session, token -> send(token, order));
     }
-    
-    public boolean executeAutomatedTrade(String symbol, double predictedChange, double confidence) {
+
+    private Double send(Token token, OrderOutbox.Order order) throws IOException, OrderOutbox.RejectedOrderException {
+        Map<String, Object> tradeRequest = new HashMap<>();
+        tradeRequest.put("symbol", order.symbol());
+        tradeRequest.put("quantity", order.quantity());
+        tradeRequest.put("action", order.buy() ? "buy" : "sell");
+        tradeRequest.put("type", "market");
+        tradeRequest.put("clientOrderId", order.clientOrderId());
+
+        HttpRequest request = transport.request(baseUrl + TRADE_ENDPOINT)
+            .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(tradeRequest)))
+            .header("Authorization", "Bearer " + token.value())
+            .header("Content-Type", "application/json")
+            .header("Idempotency-Key", order.clientOrderId())
+            .build();
+
+        // The outbox retries with backoff, so the transport doesn't retry on top of it
+        HttpResponse<String> httpResponse = transport.send(request, false);
+        int status = httpResponse.statusCode();
+        String response = httpResponse.body();
+        if (isUnauthorized(httpResponse)) {
+            throw new UnauthorizedException("eToro refused the session token");
+        }
+        if (status >= 500 || status == 429) {
+            throw new IOException("Broker answered " + status);
+        }
+
+        String message;
         try {
-            // Get current portfolio balance
-            double balance = getPortfolioBalance();
-            if (balance <= 0) {
-                System.err.println("Insufficient balance or error getting balance");
-                return false;
-            }
-            
-            // Enhanced position sizing calculation
-            double maxRiskPercent = 0.02; // Maximum 2% risk per trade
-            double volatility = Math.abs(predictedChange) * 0.5; // Use half of predicted change as volatility estimate
-            double stopLossPercent = Math.max(0.02, volatility * 0.5); // Minimum 2% stop loss
-            double takeProfitPercent = Math.max(stopLossPercent * 1.5, Math.abs(predictedChange)); // Minimum 1.5:1 reward:risk
-            
-            // Calculate maximum position size based on risk
-            double maxRiskAmount = balance * maxRiskPercent;
-            double positionSize = maxRiskAmount / stopLossPercent;
-            
-            // Adjust position size based on confidence
-            positionSize = positionSize * confidence;
-            
-            // Get current stock price
-            double currentPrice = getCurrentPrice(symbol);
-            if (currentPrice <= 0) {
-                System.err.println("Error getting current price for " + symbol);
-                return false;
-            }
-            
-            // Calculate quantity
-            int quantity = (int)(positionSize / currentPrice);
-            if (quantity <= 0) {
-                System.err.println("Position size too small for " + symbol);
-                return false;
+            JsonObject jsonResponse = gson.fromJson(response, JsonObject.class);
+            if (jsonResponse != null && jsonResponse.has("success") && jsonResponse.get("success").getAsBoolean()) {
+                System.out.println("Successfully executed trade: " +
+                    (order.buy() ? "Bought " : "Sold ") + order.quantity() + " shares of " + order.symbol() +
+                    " (" + order.clientOrderId() + ")");
+                for (String field : new String[] {"price", "executionPrice", "rate"}) {
+                    if (jsonResponse.has(field) && jsonResponse.get(field).isJsonPrimitive()) {
+                        return jsonResponse.get(field).getAsDouble();
+                    }
+                }
+                return null;
             }
-            
-            // Log trade details
-            System.out.println("Trade Details for " + symbol + ":");
-            System.out.println("Position Size: $" + String.format("%.2f", positionSize));
-            System.out.println("Quantity: " + quantity);
-            System.out.println("Stop Loss: " + String.format("%.1f", stopLossPercent * 100) + "%");
-            System.out.println("Take Profit: " + String.format("%.1f", takeProfitPercent * 100) + "%");
-            System.out.println("Risk/Reward Ratio: " + String.format("%.2f", takeProfitPercent / stopLossPercent));
-            
-            // Execute trade based on predicted change direction
-            return executeTrade(symbol, quantity, predictedChange > 0);
-            
+            message = jsonResponse != null && jsonResponse.has("message")
+                ? jsonResponse.get("message").getAsString() : "Unknown error";
         } catch (Exception e) {
-            System.err.println("Error in automated trading: " + e.getMessage());
-            return false;
+            // Not an object; the body may be a bare error string
+            message = response;
         }
+        throw new OrderOutbox.RejectedOrderException(message);
     }
     
-    private double getCurrentPrice(String symbol) {
-        // This would need to be implemented to get the current market price
-        // Could use your existing Alpha Vantage integration or another data source
-        return -1;
+    /**
+     * The price service's latest quote; -1 when there is none or it is stale.
+     */
+    @Override
+    public double getCurrentPrice(String symbol) {
+        return prices.currentPrice(symbol);
     }
 
+    @Override
     public Map<String, Object> getTradingSignals(String symbol) {
         try {
-            Request request = new Request.Builder()
-                .url(BASE_URL + "/trading/signals/" + symbol)
-                .get()
-                .addHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
-                .addHeader("Accept", "application/json")
-                .addHeader("Accept-Language", "en-US,en;q=0.9")
-                .addHeader("Origin", "https://www.etoro.com")
-                .addHeader("Referer", "https://www.etoro.com/markets")
+            HttpRequest request = transport.request(baseUrl + "/trading/signals/" + symbol)
+                .GET()
+                .header("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/122.0.0.0 Safari/537.36")
+                .header("Accept", "application/json")
+                .header("Accept-Language", "en-US,en;q=0.9")
+                .header("Origin", "https://www.etoro.com")
+                .header("Referer", "https://www.etoro.com/markets")
                 .build();
 
-            Response response = client.newCall(request).execute();
+            HttpResponse<String> response = transport.send(request, true);
             
             // If we can't get real data, return mock trading signals
-            if (!response.isSuccessful()) {
+            if (!isSuccessful(response)) {
                 return generateMockTradingSignals(symbol);
             }
 
-            String responseBody = response.body().string();
+            String responseBody = response.body();
             return gson.fromJson(responseBody, Map.class);
         } catch (Exception e) {
             System.err.println("Warning: Error getting trading signals. Using mock data: " + e.getMessage());
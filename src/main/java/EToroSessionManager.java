@@ -0,0 +1,325 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Authenticated eToro sessions, one per logged-in client plus one for the server's own
+ * account (the credentials in config.properties).
+ *
+ * Sessions live in a concurrent map keyed by a random session ID, which the client sends back
+ * as the {@code etoro_session} cookie or the {@code X-Session-Id} header. Each session owns
+ * its token: it is refreshed shortly before it expires, or when eToro answers 401, by logging
+ * in again with the session's credentials. Refreshes are single-flight per session, so a burst
+ * of calls on an expiring token logs in once, and sessions never wait on each other. Each
+ * session also has its own token bucket, so one busy client can't use up the others' share of
+ * eToro's rate limit. Idle sessions are dropped by a sweep once a minute.
+ *
+ * Orders name the account they trade for, not the session ID, so the ID (a bearer secret)
+ * never reaches the order journal; an order goes out on the account's most recent session.
+ *
+ * When eToro can't be reached, the login gives a mock token. Only the server's session falls
+ * back to it, so the application keeps running on mock data; a client can't open or refresh a
+ * session without eToro having checked its credentials.
+ */
+public class EToroSessionManager {
+    /**
+     * Logs in and returns a token, or null when the credentials are refused.
+     */
+    public interface Authenticator {
+        EToroIntegration.Token requestToken(String username, String password);
+    }
+
+    /**
+     * One authenticated call; throws {@link EToroIntegration.UnauthorizedException} when the
+     * token is refused. {@code E} is whatever else the call throws, such as an order rejection.
+     */
+    public interface TokenCall<T, E extends Exception> {
+        T call(EToroIntegration.Token token) throws IOException, E;
+    }
+
+    /**
+     * A logged-in client. The password is kept in memory only, to log in again when the token
+     * expires; eToro's login has no refresh token.
+     */
+    public static final class Session {
+        private final String id;
+        private final String account;
+        private final String username;
+        private final String password;
+        private final boolean server;
+        private final double ratePerMilli;
+        private final double burst;
+        private final Object bucketLock = new Object();
+        private volatile EToroIntegration.Token token;
+        private volatile long lastUsed;
+        private double tokens;
+        private long refilledAt;
+
+        Session(String id, String username, String password, boolean server, double ratePerSecond, double burst) {
+            this.id = id;
+            this.account = username.trim().toLowerCase();
+            this.username = username;
+            this.password = password;
+            this.server = server;
+            this.ratePerMilli = ratePerSecond / 1000.0;
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilledAt = System.currentTimeMillis();
+            this.lastUsed = refilledAt;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        /**
+         * The account orders are journaled under: the eToro username, lower-cased.
+         */
+        public String account() {
+            return account;
+        }
+
+        public long lastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Takes one request from the session's bucket; false when it is empty.
+         */
+        public boolean tryAcquire() {
+            synchronized (bucketLock) {
+                long now = System.currentTimeMillis();
+                tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerMilli);
+                refilledAt = now;
+                if (tokens < 1) {
+                    return false;
+                }
+                tokens--;
+                return true;
+            }
+        }
+    }
+
+    private final Authenticator authenticator;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Session> byAccount = new ConcurrentHashMap<>();
+    private volatile Session server;
+    private final long ttlMillis;
+    private final long refreshAheadMillis;
+    private final long idleMillis;
+    private final int maxSessions;
+    private final double ratePerSecond;
+    private final double burst;
+    private final ScheduledExecutorService sweeper;
+
+    private final AtomicLong logins = new AtomicLong();
+    private final AtomicLong loginFailures = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong unauthorizedRetries = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong rejectedFull = new AtomicLong();
+    private final AtomicLong unreachable = new AtomicLong();
+
+    public EToroSessionManager(Authenticator authenticator, Properties props) {
+        this.authenticator = authenticator;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(props.getProperty("etoro.session.ttl.minutes", "60")));
+        this.refreshAheadMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(props.getProperty("etoro.session.refresh.ahead.seconds", "60")));
+        this.idleMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(props.getProperty("etoro.session.idle.minutes", "120")));
+        this.maxSessions = Integer.parseInt(props.getProperty("etoro.session.max", "1000"));
+        this.ratePerSecond = Double.parseDouble(props.getProperty("etoro.session.rate.per.second", "5"));
+        this.burst = Double.parseDouble(props.getProperty("etoro.session.burst", "10"));
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("etoro-sessions", true));
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Logs a client in and returns its new session, or null when eToro refuses the
+     * credentials. Throws IllegalStateException when {@code etoro.session.max} sessions are open
+     * or eToro can't be reached.
+     */
+    public Session login(String username, String password) {
+        if (sessions.size() >= maxSessions) {
+            rejectedFull.incrementAndGet();
+            throw new IllegalStateException("Too many eToro sessions open, try again later");
+        }
+        Session session = open(UUID.randomUUID().toString(), username, password, false);
+        if (session != null) {
+            sessions.put(session.id, session);
+            byAccount.put(session.account, session);
+        }
+        return session;
+    }
+
+    /**
+     * The session with this ID, marked as used, or null if it is unknown or was dropped.
+     */
+    public Session get(String id) {
+        Session session = id != null ? sessions.get(id) : null;
+        if (session != null) {
+            session.lastUsed = System.currentTimeMillis();
+        }
+        return session;
+    }
+
+    /**
+     * The session orders for this account go out on, or null if none is open.
+     */
+    public Session forAccount(String account) {
+        return byAccount.get(account);
+    }
+
+    public void logout(String id) {
+        Session session = sessions.remove(id);
+        if (session != null) {
+            drop(session);
+        }
+    }
+
+    /**
+     * The server's own session, logged in on first use; null while the credentials are refused.
+     */
+    public Session server(String username, String password) {
+        Session current = server;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (server == null) {
+                server = open("server", username, password, true);
+            }
+            return server;
+        }
+    }
+
+    /**
+     * Replaces the server's session with one for these credentials; false if they are refused.
+     */
+    public synchronized boolean loginServer(String username, String password) {
+        Session session = open("server", username, password, true);
+        if (session != null) {
+            server = session;
+        }
+        return session != null;
+    }
+
+    /**
+     * Makes one call with the session's token, refreshing it first if it is about to expire.
+     * A 401 refreshes the token and retries once.
+     */
+    public <T, E extends Exception> T call(Session session, TokenCall<T, E> call) throws IOException, E {
+        EToroIntegration.Token token = session.token;
+        if (System.currentTimeMillis() >= token.expiresAt() - refreshAheadMillis) {
+            token = refresh(session, token);
+        }
+        try {
+            return call.call(token);
+        } catch (EToroIntegration.UnauthorizedException e) {
+            unauthorizedRetries.incrementAndGet();
+            return call.call(refresh(session, token));
+        }
+    }
+
+    /**
+     * Counts a request refused by {@link Session#tryAcquire}, for the metrics.
+     */
+    public void rateLimited() {
+        rateLimited.incrementAndGet();
+    }
+
+    // Logs in again unless another thread already replaced the stale token
+    private EToroIntegration.Token refresh(Session session, EToroIntegration.Token stale) throws IOException {
+        synchronized (session) {
+            EToroIntegration.Token current = session.token;
+            if (current != stale && System.currentTimeMillis() < current.expiresAt() - refreshAheadMillis) {
+                return current;
+            }
+            EToroIntegration.Token fresh = authenticate(session.username, session.password);
+            if (fresh != null && fresh.isMock() && !session.server) {
+                // Keep the session; the call can be retried once eToro answers again
+                unreachable.incrementAndGet();
+                throw new IOException("eToro unreachable");
+            }
+            if (fresh == null) {
+                // The password changed or the account was closed; the client has to log in again
+                if (sessions.remove(session.id, session)) {
+                    drop(session);
+                }
+                throw new EToroIntegration.UnauthorizedException("eToro no longer accepts the credentials for " + session.account);
+            }
+            refreshes.incrementAndGet();
+            session.token = fresh;
+            return fresh;
+        }
+    }
+
+    private Session open(String id, String username, String password, boolean server) {
+        EToroIntegration.Token token = authenticate(username, password);
+        if (token == null) {
+            loginFailures.incrementAndGet();
+            return null;
+        }
+        if (token.isMock() && !server) {
+            unreachable.incrementAndGet();
+            throw new IllegalStateException("eToro unreachable, try again later");
+        }
+        logins.incrementAndGet();
+        Session session = new Session(id, username, password, server, ratePerSecond, burst);
+        session.token = token;
+        return session;
+    }
+
+    // Tokens without an expiry of their own last etoro.session.ttl.minutes
+    private EToroIntegration.Token authenticate(String username, String password) {
+        EToroIntegration.Token token = authenticator.requestToken(username, password);
+        if (token != null && token.expiresAt() <= 0) {
+            token = new EToroIntegration.Token(token.value(), System.currentTimeMillis() + ttlMillis);
+        }
+        return token;
+    }
+
+    // Points the account at another of its sessions, if it has one
+    private void drop(Session session) {
+        if (byAccount.remove(session.account, session)) {
+            for (Session other : sessions.values()) {
+                if (other.account.equals(session.account)) {
+                    byAccount.putIfAbsent(other.account, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void sweep() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (Session session : sessions.values()) {
+            if (session.lastUsed < cutoff && sessions.remove(session.id, session)) {
+                drop(session);
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", sessions.size());
+        stats.put("accounts", byAccount.size());
+        stats.put("serverLoggedIn", server != null);
+        stats.put("logins", logins.get());
+        stats.put("loginFailures", loginFailures.get());
+        stats.put("refreshes", refreshes.get());
+        stats.put("unauthorizedRetries", unauthorizedRetries.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("expired", expired.get());
+        stats.put("rejectedFull", rejectedFull.get());
+        stats.put("unreachable", unreachable.get());
+        return stats;
+    }
+}
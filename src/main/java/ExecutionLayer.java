@@ -0,0 +1,381 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The server's shared execution model: one named, bounded, instrumented pool per kind of work.
+ * <ul>
+ *   <li>{@code io} runs blocking network calls (Alpha Vantage, eToro). On a JDK with virtual
+ *       threads each task gets its own virtual thread and a semaphore bounds how many run at
+ *       once; otherwise it is a fixed pool of platform threads.</li>
+ *   <li>{@code cpu} trains models, sized to the number of cores.</li>
+ *   <li>{@code fanout} runs per-symbol work that a single request or ranking pass fans out.</li>
+ * </ul>
+ * The bounded pools have bounded queues and run rejected work on the submitting thread, so a
+ * burst slows its producer down instead of growing threads or queues without limit.
+ */
+public class ExecutionLayer {
+    private static volatile ExecutionLayer shared;
+
+    private final Pool io;
+    private final Pool cpu;
+    private final Pool fanout;
+    private final boolean virtualThreads;
+
+    private ExecutionLayer(int ioConcurrency, int cpuThreads, int fanoutThreads, int queueCapacity, boolean preferVirtual) {
+        ThreadFactory virtualFactory = preferVirtual ? virtualThreadFactory("io-") : null;
+        this.virtualThreads = virtualFactory != null;
+        this.io = virtualThreads
+            ? new VirtualPool("io", virtualFactory, ioConcurrency)
+            : new BoundedPool("io", ioConcurrency, queueCapacity);
+        this.cpu = new BoundedPool("cpu", cpuThreads, queueCapacity);
+        this.fanout = new BoundedPool("fanout", fanoutThreads, queueCapacity);
+    }
+
+    /**
+     * Creates the shared layer from {@code execution.*} settings; later calls return the same layer.
+     */
+    public static synchronized ExecutionLayer configure(Properties props) {
+        if (shared == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            shared = new ExecutionLayer(
+                Integer.parseInt(props.getProperty("execution.io.concurrency", "32")),
+                Integer.parseInt(props.getProperty("execution.cpu.threads", String.valueOf(cores))),
+                Integer.parseInt(props.getProperty("execution.fanout.threads", String.valueOf(cores * 2))),
+                Integer.parseInt(props.getProperty("execution.queue.capacity", "1000")),
+                Boolean.parseBoolean(props.getProperty("execution.virtual.threads", "true")));
+            System.out.println("Execution layer: io on " + (shared.virtualThreads ? "virtual" : "platform") +
+                             " threads, cpu " + props.getProperty("execution.cpu.threads", String.valueOf(cores)) +
+                             " threads, fanout " + props.getProperty("execution.fanout.threads", String.valueOf(cores * 2)) + " threads");
+        }
+        return shared;
+    }
+
+    public static ExecutionLayer shared() {
+        return shared != null ? shared : configure(new Properties());
+    }
+
+    public ExecutorService io() {
+        return io;
+    }
+
+    public ExecutorService cpu() {
+        return cpu;
+    }
+
+    public ExecutorService fanout() {
+        return fanout;
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs a blocking call on the I/O pool and waits at most {@code timeoutMillis} for it, so a
+     * hung remote service ties up a cheap I/O task rather than a request thread indefinitely.
+     */
+    public <T> T callIo(Callable<T> call, long timeoutMillis) throws Exception {
+        Future<T> future = io.submit(call);
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new TimeoutException("I/O call timed out after " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Per-pool counters plus JVM thread counts, for the metrics endpoint.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("io", io.stats());
+        stats.put("cpu", cpu.stats());
+        stats.put("fanout", fanout.stats());
+        Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("liveThreads", ManagementFactory.getThreadMXBean().getThreadCount());
+        jvm.put("peakThreads", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        jvm.put("virtualThreads", virtualThreads);
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            jvm.put("processCpuMillis", os.getProcessCpuTime() / 1_000_000);
+        }
+        stats.put("jvm", jvm);
+        return stats;
+    }
+
+    public void shutdown() {
+        io.shutdown();
+        cpu.shutdown();
+        fanout.shutdown();
+    }
+
+    public static ThreadFactory namedThreads(String prefix, boolean daemon) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns a factory for named virtual threads, or null before Java 21. Looked up
+     * reflectively so the server still builds and runs on Java 17.
+     */
+    static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Executor with counters shared by both pool kinds
+    private abstract static class Pool extends AbstractExecutorService {
+        final String name;
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong callerRuns = new AtomicLong();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong totalQueueNanos = new AtomicLong();
+        final AtomicLong maxQueueNanos = new AtomicLong();
+
+        Pool(String name) {
+            this.name = name;
+        }
+
+        Runnable instrument(Runnable task) {
+            long queuedAt = System.nanoTime();
+            submitted.incrementAndGet();
+            return () -> {
+                long waited = System.nanoTime() - queuedAt;
+                totalQueueNanos.addAndGet(waited);
+                maxQueueNanos.accumulateAndGet(waited, Math::max);
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    failed.incrementAndGet();
+                    throw e;
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                }
+            };
+        }
+
+        // submit() wraps tasks in a FutureTask, which keeps the exception instead of throwing it;
+        // a task interrupted by cancel() (a callIo timeout) has not failed
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new FutureTask<>(callable) {
+                @Override
+                protected void setException(Throwable t) {
+                    if (!isCancelled()) {
+                        failed.incrementAndGet();
+                    }
+                    super.setException(t);
+                }
+            };
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return newTaskFor(Executors.callable(runnable, value));
+        }
+
+        abstract int queued();
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long done = completed.get();
+            stats.put("active", active.get());
+            stats.put("queued", queued());
+            stats.put("submitted", submitted.get());
+            stats.put("completed", done);
+            stats.put("failed", failed.get());
+            stats.put("callerRuns", callerRuns.get());
+            stats.put("avgQueueMillis", done > 0 ? totalQueueNanos.get() / done / 1_000_000.0 : 0.0);
+            stats.put("maxQueueMillis", maxQueueNanos.get() / 1_000_000.0);
+            return stats;
+        }
+    }
+
+    // Fixed platform threads with a bounded queue; overflow runs on the caller
+    private static class BoundedPool extends Pool {
+        private final ThreadPoolExecutor executor;
+
+        BoundedPool(String name, int threads, int queueCapacity) {
+            super(name);
+            int size = Math.max(1, threads);
+            this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), namedThreads(name, true),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException(name + " pool is shut down");
+                    }
+                    callerRuns.incrementAndGet();
+                    task.run();
+                });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(instrument(task));
+        }
+
+        @Override
+        int queued() {
+            return executor.getQueue().size();
+        }
+
+        @Override
+        Map<String, Object> stats() {
+            Map<String, Object> stats = super.stats();
+            stats.put("threads", executor.getPoolSize());
+            stats.put("maxThreads", executor.getMaximumPoolSize());
+            return stats;
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+
+    // One virtual thread per task; the semaphore bounds concurrent calls, not threads
+    private static class VirtualPool extends Pool {
+        private final ThreadFactory factory;
+        private final Semaphore permits;
+        private final int concurrency;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private volatile boolean shutdown;
+
+        VirtualPool(String name, ThreadFactory factory, int concurrency) {
+            super(name);
+            this.factory = factory;
+            this.concurrency = Math.max(1, concurrency);
+            this.permits = new Semaphore(this.concurrency, true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (shutdown) {
+                throw new RejectedExecutionException(name + " pool is shut down");
+            }
+            Runnable instrumented = instrument(task);
+            waiting.incrementAndGet();
+            factory.newThread(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    waiting.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                waiting.decrementAndGet();
+                try {
+                    instrumented.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        }
+
+        @Override
+        int queued() {
+            return waiting.get();
+        }
+
+        @Override
+        Map<String, Object> stats() {
+            Map<String, Object> stats = super.stats();
+            stats.put("maxConcurrency", concurrency);
+            return stats;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && active.get() == 0 && waiting.get() == 0;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The one HTTP client behind every outbound call (Alpha Vantage and eToro).
+ *
+ * It wraps a single JDK {@link HttpClient}, which keeps connections alive and pools them
+ * per host, and which uses HTTP/2 with servers that offer it. Each host additionally gets:
+ * <ul>
+ *   <li>a concurrency limit ({@code http.host.max.concurrency}), so one slow API cannot take
+ *       every I/O thread;</li>
+ *   <li>a circuit breaker: after {@code http.breaker.failures} consecutive failures (I/O
+ *       errors, 5xx, 429) calls fail fast for {@code http.breaker.open.ms}, then a single trial
+ *       call decides whether to close it again;</li>
+ *   <li>a retry budget: retryable calls are retried with backoff up to {@code http.retry.max}
+ *       times, but retries may not exceed {@code http.retry.budget.ratio} of recent requests, so
+ *       retries cannot multiply the load on a struggling server;</li>
+ *   <li>counters and timings for {@code GET /metrics/http}.</li>
+ * </ul>
+ */
+public class HttpTransport {
+    private static volatile HttpTransport shared;
+
+    /**
+     * Thrown without calling the host while its circuit breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String host) {
+            super("Circuit open for " + host);
+        }
+    }
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int hostConcurrency;
+    private final int breakerFailures;
+    private final long breakerOpenMillis;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final double retryBudgetRatio;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+    private HttpTransport(Properties props) {
+        this.requestTimeout = Duration.ofMillis(Long.parseLong(props.getProperty("http.request.timeout.ms", "30000")));
+        this.hostConcurrency = Math.max(1, Integer.parseInt(props.getProperty("http.host.max.concurrency", "8")));
+        this.breakerFailures = Math.max(1, Integer.parseInt(props.getProperty("http.breaker.failures", "5")));
+        this.breakerOpenMillis = Long.parseLong(props.getProperty("http.breaker.open.ms", "30000"));
+        this.maxRetries = Math.max(0, Integer.parseInt(props.getProperty("http.retry.max", "2")));
+        this.retryBackoffMillis = Long.parseLong(props.getProperty("http.retry.backoff.ms", "200"));
+        this.retryBudgetRatio = Double.parseDouble(props.getProperty("http.retry.budget.ratio", "0.2"));
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofMillis(Long.parseLong(props.getProperty("http.connect.timeout.ms", "10000"))))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Creates the shared transport from {@code http.*} settings; later calls return the same one.
+     */
+    public static synchronized HttpTransport configure(Properties props) {
+        if (shared == null) {
+            shared = new HttpTransport(props);
+        }
+        return shared;
+    }
+
+    public static HttpTransport shared() {
+        return shared != null ? shared : configure(new Properties());
+    }
+
+    /**
+     * A request builder for the URL with the default timeout applied.
+     */
+    public HttpRequest.Builder request(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+    }
+
+    /**
+     * Sends a request and returns the response whatever its status. With {@code retryable}
+     * set (GETs, or POSTs carrying an idempotency key) I/O errors, 5xx and 429 are retried
+     * within the host's budget; the last response or error is returned either way.
+     */
+    public HttpResponse<String> send(HttpRequest request, boolean retryable) throws IOException {
+        Host host = hosts.computeIfAbsent(hostKey(request.uri()), Host::new);
+        host.budget.deposit();
+        int attempt = 0;
+        while (true) {
+            HttpResponse<String> response = null;
+            IOException error = null;
+            try {
+                response = host.call(request);
+            } catch (CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                error = e;
+            }
+
+            boolean failed = error != null || response.statusCode() >= 500 || response.statusCode() == 429;
+            if (!failed || !retryable || attempt >= maxRetries || !host.budget.withdraw()) {
+                if (error != null) {
+                    throw error;
+                }
+                return response;
+            }
+            attempt++;
+            host.retries.incrementAndGet();
+            sleep(backoffMillis(attempt, response));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Host host : hosts.values()) {
+            stats.put(host.name, host.stats());
+        }
+        return stats;
+    }
+
+    // Exponential with jitter, or the server's Retry-After when it sends one
+    private long backoffMillis(int attempt, HttpResponse<String> response) {
+        if (response != null) {
+            String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+            if (retryAfter != null && retryAfter.matches("\\d+")) {
+                return Math.min(Long.parseLong(retryAfter) * 1000, requestTimeout.toMillis());
+            }
+        }
+        long base = retryBackoffMillis << Math.min(attempt - 1, 10);
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() >= 0 ? ":" + uri.getPort() : "");
+    }
+
+    /**
+     * Allows retries up to a fraction of recent requests: each request adds {@code ratio}
+     * tokens, each retry takes one, and the balance is capped so quiet periods don't bank an
+     * unlimited burst.
+     */
+    private static class RetryBudget {
+        private final double ratio;
+        private final double cap;
+        private double tokens;
+
+        RetryBudget(double ratio) {
+            this.ratio = ratio;
+            this.cap = Math.max(1, ratio * 100);
+            this.tokens = Math.min(cap, 1);
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(cap, tokens + ratio);
+        }
+
+        synchronized boolean withdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+
+    private class Host {
+        private final String name;
+        private final Semaphore permits = new Semaphore(hostConcurrency, true);
+        private final RetryBudget budget = new RetryBudget(retryBudgetRatio);
+
+        private int consecutiveFailures; // Breaker state, guarded by this
+        private long openUntil;
+        private boolean trialInFlight;
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong shortCircuited = new AtomicLong();
+        private final AtomicLong limited = new AtomicLong();
+        private final AtomicLong http2 = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final Map<String, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        HttpResponse<String> call(HttpRequest request) throws IOException {
+            boolean trial = admit();
+            boolean acquired = false;
+            try {
+                acquired = permits.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!acquired) {
+                limited.incrementAndGet();
+                release(trial);
+                throw new IOException("Too many concurrent requests to " + name);
+            }
+
+            requests.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                record(start);
+                statuses.computeIfAbsent(response.statusCode() / 100 + "xx", k -> new AtomicLong()).incrementAndGet();
+                if (response.version() == HttpClient.Version.HTTP_2) {
+                    http2.incrementAndGet();
+                }
+                outcome(trial, response.statusCode() < 500 && response.statusCode() != 429);
+                return response;
+            } catch (IOException e) {
+                record(start);
+                failures.incrementAndGet();
+                outcome(trial, false);
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release(trial);
+                throw new InterruptedIOException("Interrupted calling " + name);
+            } finally {
+                permits.release();
+            }
+        }
+
+        // Throws while open; returns true if this call is the half-open trial
+        private synchronized boolean admit() throws CircuitOpenException {
+            if (consecutiveFailures < breakerFailures) {
+                return false;
+            }
+            if (System.currentTimeMillis() < openUntil || trialInFlight) {
+                shortCircuited.incrementAndGet();
+                throw new CircuitOpenException(name);
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        private synchronized void outcome(boolean trial, boolean success) {
+            if (trial) {
+                trialInFlight = false;
+            }
+            if (success) {
+                consecutiveFailures = 0;
+            } else if (++consecutiveFailures >= breakerFailures) {
+                if (trial || consecutiveFailures == breakerFailures) {
+                    System.err.println("HTTP transport: opening circuit for " + name + " for " + breakerOpenMillis + " ms");
+                }
+                openUntil = System.currentTimeMillis() + breakerOpenMillis;
+            }
+        }
+
+        private synchronized void release(boolean trial) {
+            if (trial) {
+                trialInFlight = false;
+            }
+        }
+
+        private void record(long start) {
+            long elapsed = System.nanoTime() - start;
+            totalNanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long count = requests.get();
+            synchronized (this) {
+                stats.put("circuit", consecutiveFailures < breakerFailures ? "closed"
+                    : System.currentTimeMillis() < openUntil ? "open" : "half-open");
+            }
+            stats.put("inFlight", hostConcurrency - permits.availablePermits());
+            stats.put("requests", count);
+            stats.put("failures", failures.get());
+            stats.put("retries", retries.get());
+            stats.put("shortCircuited", shortCircuited.get());
+            stats.put("concurrencyLimited", limited.get());
+            stats.put("http2", http2.get());
+            stats.put("statuses", new LinkedHashMap<>(statuses));
+            stats.put("avgMillis", count > 0 ? totalNanos.get() / count / 1_000_000.0 : 0.0);
+            stats.put("maxMillis", maxNanos.get() / 1_000_000.0);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+import com.google.gson.Gson;
+
+/**
+ * The server's one JSON serializer.
+ *
+ * Gson is thread-safe once built and caches its type adapters, so every class shares this
+ * instance instead of building (and re-reflecting) a new one per call.
+ */
+public final class Json {
+    public static final Gson GSON = new Gson();
+
+    private Json() {
+    }
+
+    public static String toJson(Object value) {
+        return GSON.toJson(value);
+    }
+}
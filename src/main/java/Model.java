@@ -16,13 +16,16 @@ import weka.filters.unsupervised.instance.RemoveWithValues;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
 import java.text.DecimalFormat;
 import java.util.Random;
 
-public class Model {
+public class Model implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private Instances trainingData;
     private Classifier classifier;
     private ArrayList<Attribute> attributes;
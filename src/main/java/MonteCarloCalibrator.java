@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks stop-loss and take-profit levels by simulation instead of fixed rules.
+ *
+ * For a symbol it bootstraps {@code mc.paths} price paths of {@code mc.horizon.days} days by
+ * drawing daily log returns from the last {@code mc.history.days} of its bars. The returns are
+ * demeaned, and the model's predicted move is added to the first day only, so the simulation
+ * carries the prediction's edge and no historical drift. Every path is checked against every
+ * stop and target in {@code mc.stop.grid} and {@code mc.target.grid}. A pair's outcome is
+ * whichever barrier the path hits first. A target fills at its level. A stop fills at the close
+ * of the day that crosses it, so gaps through the stop cost what they would. When both are hit
+ * on the same day the stop is assumed, and when neither is hit the outcome is the horizon's
+ * return. Each outcome pays {@code mc.cost.bps}. The pair with the highest expected return
+ * is chosen.
+ *
+ * Paths are split across a fork-join pool, and each task takes its own {@link SplittableRandom}
+ * split from a seed derived from the symbol and bar date. The same inputs therefore always give
+ * the same levels, however the work is scheduled. Results are cached per symbol, bar date, side
+ * and predicted move.
+ */
+public class MonteCarloCalibrator {
+    /**
+     * One stop/target pair; percentages are of the entry price.
+     */
+    public record Level(double stopLossPercent, double takeProfitPercent, double stopProbability,
+                        double targetProbability, double expectedReturnPercent, double stdDevPercent) {
+    }
+
+    /**
+     * Body of {@code GET /calibration/:symbol}; {@code best} is the pair with the highest
+     * expected return.
+     */
+    public record Calibration(String symbol, int barDate, boolean longSide, double predictedChange, int paths,
+                              int horizonDays, int historyDays, double elapsedMillis, Level best, List<Level> grid) {
+    }
+
+    private final int paths;
+    private final int horizonDays;
+    private final int historyDays;
+    private final double costFraction;
+    private final double[] stops;
+    private final double[] targets;
+    private final int leafPaths;
+    private final int cacheEntries;
+    private final ForkJoinPool pool;
+    private final Map<String, Calibration> cache;
+
+    private final AtomicLong calibrations = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong pathsSimulated = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private volatile double lastPathsPerSecond;
+
+    public MonteCarloCalibrator(Properties props) {
+        this.paths = Math.max(1, Integer.parseInt(props.getProperty("mc.paths", "20000")));
+        this.horizonDays = Math.max(1, Integer.parseInt(props.getProperty("mc.horizon.days", "10")));
+        this.historyDays = Math.max(20, Integer.parseInt(props.getProperty("mc.history.days", "250")));
+        this.costFraction = Double.parseDouble(props.getProperty("mc.cost.bps", "10")) / 10_000;
+        this.stops = grid(props.getProperty("mc.stop.grid", "1,1.5,2,3,4,5,7.5"));
+        this.targets = grid(props.getProperty("mc.target.grid", "1.5,2,3,4,6,8,10,15"));
+        this.leafPaths = Math.max(256, Integer.parseInt(props.getProperty("mc.leaf.paths", "2048")));
+        this.cacheEntries = Math.max(1, Integer.parseInt(props.getProperty("mc.cache.entries", "2048")));
+        int parallelism = Integer.parseInt(props.getProperty("mc.parallelism",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("monte-carlo-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.cache = new LinkedHashMap<String, Calibration>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Calibration> eldest) {
+                return size() > cacheEntries;
+            }
+        };
+    }
+
+    /**
+     * Calibrates a long (positive predicted change) or short trade on the series' latest bar;
+     * null when there is too little history.
+     */
+    public Calibration calibrate(BarSeries series, double predictedChangePercent) {
+        if (series == null || series.size() < 21) {
+            return null;
+        }
+        boolean longSide = predictedChangePercent >= 0;
+        int barDate = series.dateAt(series.size() - 1);
+        String key = series.getSymbol() + "|" + barDate + "|" + (longSide ? "long" : "short") + "|" +
+                     Math.round(predictedChangePercent * 100);
+        synchronized (cache) {
+            Calibration cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        long start = System.nanoTime();
+        double[] returns = demeanedReturns(series);
+        double firstDayShift = Math.log1p(predictedChangePercent / 100);
+        Thresholds thresholds = new Thresholds(longSide);
+        Counts counts = pool.invoke(new PathTask(returns, firstDayShift, thresholds, 0, paths,
+                                                 new SplittableRandom(key.hashCode() * 0x9E3779B97F4A7C15L)));
+
+        List<Level> grid = new ArrayList<>(stops.length * targets.length);
+        Level best = null;
+        for (int s = 0; s < stops.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                int pair = s * targets.length + t;
+                double mean = counts.sum[pair] / paths;
+                double variance = Math.max(0, counts.sumSquares[pair] / paths - mean * mean);
+                Level level = new Level(stops[s] * 100, targets[t] * 100, (double) counts.stopHits[pair] / paths,
+                                        (double) counts.targetHits[pair] / paths, mean * 100, Math.sqrt(variance) * 100);
+                grid.add(level);
+                if (best == null || level.expectedReturnPercent() > best.expectedReturnPercent()) {
+                    best = level;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        Calibration calibration = new Calibration(series.getSymbol(), barDate, longSide, predictedChangePercent, paths,
+                                                  horizonDays, returns.length, elapsed / 1_000_000.0, best, grid);
+        calibrations.incrementAndGet();
+        pathsSimulated.addAndGet(paths);
+        totalNanos.addAndGet(elapsed);
+        lastPathsPerSecond = paths * 1e9 / Math.max(1, elapsed);
+        synchronized (cache) {
+            cache.put(key, calibration);
+        }
+        return calibration;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long count = calibrations.get();
+        stats.put("calibrations", count);
+        stats.put("cacheHits", cacheHits.get());
+        synchronized (cache) {
+            stats.put("cached", cache.size());
+        }
+        stats.put("pathsSimulated", pathsSimulated.get());
+        stats.put("avgMillis", count > 0 ? totalNanos.get() / count / 1_000_000.0 : 0.0);
+        stats.put("lastPathsPerSecond", Math.round(lastPathsPerSecond));
+        stats.put("parallelism", pool.getParallelism());
+        return stats;
+    }
+
+    private double[] demeanedReturns(BarSeries series) {
+        int from = Math.max(1, series.size() - historyDays);
+        double[] returns = new double[series.size() - from];
+        int n = 0;
+        double sum = 0;
+        for (int i = from; i < series.size(); i++) {
+            double previous = series.closeAt(i - 1);
+            double close = series.closeAt(i);
+            if (previous > 0 && close > 0) {
+                returns[n] = Math.log(close / previous);
+                sum += returns[n++];
+            }
+        }
+        double mean = n > 0 ? sum / n : 0;
+        for (int i = 0; i < n; i++) {
+            returns[i] -= mean;
+        }
+        return n == returns.length ? returns : Arrays.copyOf(returns, Math.max(1, n));
+    }
+
+    private static double[] grid(String spec) {
+        return Arrays.stream(spec.split(","))
+            .map(String::trim)
+            .filter(value -> !value.isEmpty())
+            .mapToDouble(value -> Double.parseDouble(value) / 100)
+            .filter(value -> value > 0 && value < 1)
+            .sorted()
+            .toArray();
+    }
+
+    // Barriers as log-price levels seen from the trade's side, nearest first
+    private final class Thresholds {
+        final boolean longSide;
+        final double[] stop = new double[stops.length];
+        final double[] target = new double[targets.length];
+
+        Thresholds(boolean longSide) {
+            this.longSide = longSide;
+            // x is the log price move in the trade's favour: stop when x falls to stop[k], target when it reaches target[k]
+            for (int k = 0; k < stops.length; k++) {
+                stop[k] = longSide ? Math.log1p(-stops[k]) : -Math.log1p(stops[k]);
+            }
+            for (int k = 0; k < targets.length; k++) {
+                target[k] = longSide ? Math.log1p(targets[k]) : -Math.log1p(-targets[k]);
+            }
+        }
+    }
+
+    // Per stop/target pair: how often each barrier came first, and the sum of outcomes
+    private static final class Counts {
+        final long[] stopHits;
+        final long[] targetHits;
+        final double[] sum;
+        final double[] sumSquares;
+
+        Counts(int pairs) {
+            stopHits = new long[pairs];
+            targetHits = new long[pairs];
+            sum = new double[pairs];
+            sumSquares = new double[pairs];
+        }
+
+        Counts add(Counts other) {
+            for (int p = 0; p < sum.length; p++) {
+                stopHits[p] += other.stopHits[p];
+                targetHits[p] += other.targetHits[p];
+                sum[p] += other.sum[p];
+                sumSquares[p] += other.sumSquares[p];
+            }
+            return this;
+        }
+    }
+
+    private final class PathTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] returns;
+        private final double firstDayShift;
+        private final Thresholds thresholds;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+
+        PathTask(double[] returns, double firstDayShift, Thresholds thresholds, int from, int to,
+                 SplittableRandom random) {
+            this.returns = returns;
+            this.firstDayShift = firstDayShift;
+            this.thresholds = thresholds;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Counts compute() {
+            if (to - from <= leafPaths) {
+                return simulate(to - from);
+            }
+            int mid = (from + to) >>> 1;
+            // Split before forking so each half's stream is fixed by the task tree, not the scheduling
+            PathTask left = new PathTask(returns, firstDayShift, thresholds, from, mid, random.split());
+            PathTask right = new PathTask(returns, firstDayShift, thresholds, mid, to, random.split());
+            left.fork();
+            Counts counts = right.compute();
+            return counts.add(left.join());
+        }
+
+        private Counts simulate(int count) {
+            double[] stopAt = thresholds.stop;
+            double[] targetAt = thresholds.target;
+            boolean longSide = thresholds.longSide;
+            int stopCount = stopAt.length;
+            int targetCount = targetAt.length;
+            Counts counts = new Counts(stopCount * targetCount);
+            int[] stopDay = new int[stopCount];
+            double[] stopFill = new double[stopCount];
+            int[] targetDay = new int[targetCount];
+            int n = returns.length;
+
+            for (int path = 0; path < count; path++) {
+                Arrays.fill(stopDay, horizonDays);
+                Arrays.fill(targetDay, horizonDays);
+                int nextStop = 0;
+                int nextTarget = 0;
+                double logPrice = 0;
+                for (int day = 0; day < horizonDays; day++) {
+                    double step = returns[random.nextInt(n)];
+                    logPrice += day == 0 ? step + firstDayShift : step;
+                    double favour = longSide ? logPrice : -logPrice;
+                    if (nextStop < stopCount && favour <= stopAt[nextStop]) {
+                        double fill = longSide ? Math.expm1(logPrice) : -Math.expm1(logPrice);
+                        while (nextStop < stopCount && favour <= stopAt[nextStop]) {
+                            stopFill[nextStop] = fill;
+                            stopDay[nextStop++] = day;
+                        }
+                    }
+                    while (nextTarget < targetCount && favour >= targetAt[nextTarget]) {
+                        targetDay[nextTarget++] = day;
+                    }
+                }
+                double atHorizon = longSide ? Math.expm1(logPrice) : -Math.expm1(logPrice);
+
+                for (int s = 0; s < stopCount; s++) {
+                    int pair = s * targetCount;
+                    for (int t = 0; t < targetCount; t++, pair++) {
+                        double outcome;
+                        if (stopDay[s] < horizonDays && stopDay[s] <= targetDay[t]) {
+                            outcome = stopFill[s];
+                            counts.stopHits[pair]++;
+                        } else if (targetDay[t] < horizonDays) {
+                            outcome = targets[t];
+                            counts.targetHits[pair]++;
+                        } else {
+                            outcome = atHorizon;
+                        }
+                        outcome -= costFraction;
+                        counts.sum[pair] += outcome;
+                        counts.sumSquares[pair] += outcome * outcome;
+                    }
+                }
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,597 @@
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Durable queue between the trade routes and the broker.
+ *
+ * An order is appended to a journal and forced to disk before {@link #submit} returns, so
+ * accepting an order costs one local write whatever the broker's latency. A single sender
+ * thread drains due orders in batches, sends each with its client order ID (which the broker
+ * uses to drop duplicates, so resending after a crash or a lost reply is safe) and journals
+ * the outcomes with one force per batch. Transport failures are retried with exponential
+ * backoff up to {@code outbox.max.attempts}; a broker rejection is final.
+ *
+ * An order is identified by its account and client order ID. An ID belongs to the first account
+ * that uses it: the same account resubmitting the same order gets the existing order's status,
+ * anything else is refused as a conflict.
+ *
+ * The journal is JSON lines, one event per line. On open it is replayed, orders without an
+ * outcome are queued again, and it is rewritten to just the live orders and recent history;
+ * it is compacted the same way whenever it grows past {@code outbox.compact.entries}.
+ */
+public class OrderOutbox {
+    public static final String PENDING = "pending";
+    public static final String ACKNOWLEDGED = "acknowledged";
+    public static final String REJECTED = "rejected";
+    public static final String FAILED = "failed";
+
+    public static final String MARKET = "market";
+    public static final String LIMIT = "limit";
+    public static final String STOP = "stop";
+
+    /**
+     * What the sender hands to the broker. {@code account} names the eToro session the order
+     * trades for; null is the server's own account. {@code type} is {@link #MARKET}, {@link #LIMIT}
+     * or {@link #STOP}, with {@code price} the limit or stop price; a null type is a market order.
+     */
+    public record Order(String clientOrderId, String symbol, int quantity, boolean buy, long createdAt, String account,
+                        String type, Double price) {
+        public Order(String clientOrderId, String symbol, int quantity, boolean buy, long createdAt) {
+            this(clientOrderId, symbol, quantity, buy, createdAt, null);
+        }
+
+        public Order(String clientOrderId, String symbol, int quantity, boolean buy, long createdAt, String account) {
+            this(clientOrderId, symbol, quantity, buy, createdAt, account, null, null);
+        }
+
+        public boolean isMarket() {
+            return type == null || MARKET.equals(type);
+        }
+    }
+
+    /**
+     * Current state of an order, as served by the status endpoint. A limit or stop order is
+     * acknowledged once the broker has accepted it; it fills later.
+     */
+    public record OrderStatus(String clientOrderId, String symbol, int quantity, String side, String state,
+                              int attempts, String error, long createdAt, Long completedAt, Double fillPrice,
+                              String account, String type, Double price) {
+    }
+
+    /**
+     * Sends one order and returns the fill price, or null if the broker doesn't report one.
+     * An IOException is retried, a rejection is not.
+     */
+    public interface Broker {
+        Double submit(Order order) throws IOException, RejectedOrderException;
+    }
+
+    /**
+     * Thrown by {@link #submit} for a client order ID already used by another account or for a
+     * different order.
+     */
+    public static class ConflictingOrderException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ConflictingOrderException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown by a {@link Broker} when the broker refuses an order outright.
+     */
+    public static class RejectedOrderException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public RejectedOrderException(String message) {
+            super(message);
+        }
+    }
+
+    // One journal line; order fields are only set on "submitted", the price on "acknowledged"
+    private record Entry(String type, String clientOrderId, String symbol, Integer quantity, Boolean buy,
+                         long at, String error, Double price, String account, String orderType, Double orderPrice) {
+        Entry(String type, String clientOrderId, String symbol, Integer quantity, Boolean buy,
+              long at, String error, Double price) {
+            this(type, clientOrderId, symbol, quantity, buy, at, error, price, null, null, null);
+        }
+
+        Entry(String type, Order order) {
+            this(type, order.clientOrderId(), order.symbol(), order.quantity(), order.buy(), order.createdAt(), null,
+                 null, order.account(), order.type(), order.price());
+        }
+    }
+
+    private final File file;
+    private final Broker broker;
+    private final int batchSize;
+    private final long retryInitialMillis;
+    private final long retryMaxMillis;
+    private final int maxAttempts;
+    private final int history;
+    private final int compactEntries;
+
+    private final Map<String, Tracked> orders = new ConcurrentHashMap<>();
+    private final Deque<String> completed = new ArrayDeque<>(); // Oldest first, guarded by itself
+    private final DelayQueue<Tracked> due = new DelayQueue<>();
+    private final Object journalLock = new Object();
+    private FileChannel journal;
+    private int journalEntries;
+    private volatile Consumer<OrderStatus> listener = status -> { };
+    private Thread sender;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    // The server's own orders: how many were accepted, and how many have no settled outcome yet
+    private final AtomicLong serverAccepted = new AtomicLong();
+    private final AtomicInteger serverUnsettled = new AtomicInteger();
+
+    public OrderOutbox(File file, Broker broker, Properties props) throws IOException {
+        this.file = file;
+        this.broker = broker;
+        this.batchSize = Math.max(1, Integer.parseInt(props.getProperty("outbox.batch.size", "20")));
+        this.retryInitialMillis = Long.parseLong(props.getProperty("outbox.retry.initial.ms", "1000"));
+        this.retryMaxMillis = Long.parseLong(props.getProperty("outbox.retry.max.ms", "60000"));
+        this.maxAttempts = Math.max(1, Integer.parseInt(props.getProperty("outbox.max.attempts", "10")));
+        this.history = Math.max(0, Integer.parseInt(props.getProperty("outbox.history", "1000")));
+        this.compactEntries = Math.max(100, Integer.parseInt(props.getProperty("outbox.compact.entries", "10000")));
+
+        replay();
+        synchronized (journalLock) {
+            compact();
+        }
+        int pending = due.size();
+        if (pending > 0) {
+            System.out.println("Order outbox: resending " + pending + " orders without an outcome");
+        }
+    }
+
+    /**
+     * Called on the sender thread whenever an order reaches an outcome or fails an attempt.
+     */
+    public void setListener(Consumer<OrderStatus> listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (sender != null) {
+            return;
+        }
+        sender = new Thread(this::run, "order-outbox");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Journals an order for the server's own account and queues it for sending. Resubmitting
+     * a known client order ID returns that order's status instead of placing a second order; a
+     * null ID is generated.
+     */
+    public OrderStatus submit(String clientOrderId, String symbol, int quantity, boolean buy)
+            throws IOException, ConflictingOrderException {
+        return submit(clientOrderId, symbol, quantity, buy, null);
+    }
+
+    /**
+     * Same, for the account of an eToro session; null is the server's own account.
+     */
+    public OrderStatus submit(String clientOrderId, String symbol, int quantity, boolean buy, String account)
+            throws IOException, ConflictingOrderException {
+        return submit(clientOrderId, symbol, quantity, buy, account, null, null);
+    }
+
+    /**
+     * Same, as a limit or stop order at {@code price}; a null type is a market order.
+     */
+    public OrderStatus submit(String clientOrderId, String symbol, int quantity, boolean buy, String account,
+                              String type, Double price) throws IOException, ConflictingOrderException {
+        String id = clientOrderId != null ? clientOrderId : UUID.randomUUID().toString();
+        Order order = new Order(id, symbol, quantity, buy, System.currentTimeMillis(), account, type, price);
+        if (clientOrderId != null) {
+            Tracked existing = orders.get(clientOrderId);
+            if (existing != null) {
+                return duplicate(existing, order);
+            }
+        }
+
+        Tracked tracked = new Tracked(order);
+        synchronized (journalLock) {
+            // Checked again under the lock so two racing submissions can't both be journaled
+            Tracked existing = orders.putIfAbsent(id, tracked);
+            if (existing != null) {
+                return duplicate(existing, order);
+            }
+            try {
+                append(new Entry("submitted", order));
+                journal.force(false);
+            } catch (IOException e) {
+                orders.remove(id);
+                throw e;
+            }
+        }
+        submitted.incrementAndGet();
+        if (account == null) {
+            serverAccepted.incrementAndGet();
+            serverUnsettled.incrementAndGet();
+        }
+        due.put(tracked);
+        return tracked.status();
+    }
+
+    /**
+     * A mark for reconciling the server's account: -1 while any of its orders is queued, being
+     * sent, or has an outcome whose listener hasn't finished; otherwise the number of its orders
+     * accepted so far, so a caller can tell whether another arrived since.
+     */
+    public long settledMark() {
+        long accepted = serverAccepted.get();
+        return serverUnsettled.get() == 0 && accepted == serverAccepted.get() ? accepted : -1;
+    }
+
+    /**
+     * Client order IDs of the server's own orders still tracked: the live ones and recent history.
+     */
+    public List<String> serverOrderIds() {
+        List<String> ids = new ArrayList<>();
+        for (Tracked tracked : orders.values()) {
+            if (tracked.order.account() == null) {
+                ids.add(tracked.order.clientOrderId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Every order still waiting for an outcome.
+     */
+    public List<OrderStatus> pending() {
+        List<OrderStatus> pending = new ArrayList<>();
+        for (Tracked tracked : orders.values()) {
+            if (PENDING.equals(tracked.state)) {
+                pending.add(tracked.status());
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * The order with this ID placed for this account (null for the server's own), or null.
+     */
+    public OrderStatus status(String account, String clientOrderId) {
+        Tracked tracked = clientOrderId != null ? orders.get(clientOrderId) : null;
+        return tracked != null && Objects.equals(tracked.order.account(), account) ? tracked.status() : null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", due.size());
+        stats.put("tracked", orders.size());
+        stats.put("submitted", submitted.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("conflicts", conflicts.get());
+        stats.put("acknowledged", acknowledged.get());
+        stats.put("rejected", rejected.get());
+        stats.put("failed", failed.get());
+        stats.put("retries", retries.get());
+        stats.put("batches", batches.get());
+        stats.put("serverUnsettled", serverUnsettled.get());
+        synchronized (journalLock) {
+            stats.put("journalEntries", journalEntries);
+        }
+        return stats;
+    }
+
+    // The same order sent again gets its status; a different order under the same ID is refused
+    private OrderStatus duplicate(Tracked existing, Order order) throws ConflictingOrderException {
+        Order earlier = existing.order;
+        if (!Objects.equals(earlier.account(), order.account())) {
+            conflicts.incrementAndGet();
+            throw new ConflictingOrderException("Client order ID " + order.clientOrderId() + " is already in use");
+        }
+        if (!earlier.symbol().equals(order.symbol()) || earlier.buy() != order.buy()
+                || earlier.quantity() != order.quantity() || earlier.isMarket() != order.isMarket()
+                || !earlier.isMarket() && (!Objects.equals(earlier.type(), order.type())
+                                           || !Objects.equals(earlier.price(), order.price()))) {
+            conflicts.incrementAndGet();
+            throw new ConflictingOrderException("Client order ID " + order.clientOrderId() +
+                                                " was used for a different order");
+        }
+        duplicates.incrementAndGet();
+        return existing.status();
+    }
+
+    private void run() {
+        List<Tracked> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(due.take());
+                due.drainTo(batch, batchSize - 1);
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Outcomes stay unjournaled; those orders are resent after a restart
+                System.err.println("Order outbox: error writing journal: " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Order outbox: error sending batch: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(List<Tracked> batch) throws IOException {
+        batches.incrementAndGet();
+        List<Entry> outcomes = new ArrayList<>(batch.size());
+        List<Tracked> retry = new ArrayList<>();
+        for (Tracked tracked : batch) {
+            Order order = tracked.order;
+            long now;
+            try {
+                Double price = broker.submit(order);
+                now = System.currentTimeMillis();
+                tracked.fillPrice = price;
+                tracked.complete(ACKNOWLEDGED, null, now);
+                acknowledged.incrementAndGet();
+                outcomes.add(new Entry(ACKNOWLEDGED, order.clientOrderId(), null, null, null, now, null, price));
+            } catch (RejectedOrderException e) {
+                now = System.currentTimeMillis();
+                tracked.complete(REJECTED, e.getMessage(), now);
+                rejected.incrementAndGet();
+                outcomes.add(new Entry(REJECTED, order.clientOrderId(), null, null, null, now, e.getMessage(), null));
+            } catch (IOException | RuntimeException e) {
+                now = System.currentTimeMillis();
+                String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                if (tracked.attempts + 1 >= maxAttempts) {
+                    tracked.complete(FAILED, error, now);
+                    failed.incrementAndGet();
+                    outcomes.add(new Entry(FAILED, order.clientOrderId(), null, null, null, now, error, null));
+                } else {
+                    tracked.retryAt(error, now + backoffMillis(tracked.attempts + 1));
+                    retries.incrementAndGet();
+                    outcomes.add(new Entry("attempt", order.clientOrderId(), null, null, null, now, error, null));
+                    retry.add(tracked);
+                }
+            }
+        }
+
+        try {
+            synchronized (journalLock) {
+                for (Entry outcome : outcomes) {
+                    append(outcome);
+                }
+                journal.force(false);
+                if (journalEntries > compactEntries) {
+                    compact();
+                }
+            }
+        } finally {
+            due.addAll(retry);
+            for (Tracked tracked : batch) {
+                boolean settled = !PENDING.equals(tracked.state);
+                if (settled) {
+                    remember(tracked.order.clientOrderId());
+                }
+                try {
+                    listener.accept(tracked.status());
+                } finally {
+                    // Only once the listener has recorded the fill does the order stop blocking reconciliation
+                    if (settled && tracked.order.account() == null) {
+                        serverUnsettled.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    // Doubles from the initial delay up to the cap
+    private long backoffMillis(int attempts) {
+        long delay = retryInitialMillis << Math.min(attempts - 1, 20);
+        return Math.min(delay, retryMaxMillis);
+    }
+
+    // Keeps the latest outcomes for the status endpoint and forgets older ones
+    private void remember(String clientOrderId) {
+        synchronized (completed) {
+            completed.addLast(clientOrderId);
+            while (completed.size() > history) {
+                orders.remove(completed.removeFirst());
+            }
+        }
+    }
+
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = Json.GSON.fromJson(line, Entry.class);
+                } catch (JsonParseException e) {
+                    // A line torn by a crash mid-write; nothing after it was acknowledged
+                    System.err.println("Order outbox: skipping unreadable journal line " + (lines + 1));
+                    continue;
+                }
+                lines++;
+                apply(entry);
+            }
+        }
+
+        for (Tracked tracked : orders.values()) {
+            if (PENDING.equals(tracked.state)) {
+                tracked.nextAttemptAt = 0;
+                if (tracked.order.account() == null) {
+                    serverUnsettled.incrementAndGet();
+                }
+                due.put(tracked);
+            }
+        }
+        List<Tracked> done = new ArrayList<>();
+        for (Tracked tracked : orders.values()) {
+            if (!PENDING.equals(tracked.state)) {
+                done.add(tracked);
+            }
+        }
+        done.sort((a, b) -> Long.compare(a.completedAt, b.completedAt));
+        for (Tracked tracked : done) {
+            remember(tracked.order.clientOrderId());
+        }
+        System.out.println("Order outbox: replayed " + lines + " journal entries, " + orders.size() + " orders");
+    }
+
+    private void apply(Entry entry) {
+        if (entry == null || entry.clientOrderId() == null) {
+            return;
+        }
+        if ("submitted".equals(entry.type())) {
+            orders.putIfAbsent(entry.clientOrderId(), new Tracked(new Order(entry.clientOrderId(), entry.symbol(),
+                entry.quantity() != null ? entry.quantity() : 0, Boolean.TRUE.equals(entry.buy()), entry.at(),
+                entry.account(), entry.orderType(), entry.orderPrice())));
+            return;
+        }
+        Tracked tracked = orders.get(entry.clientOrderId());
+        if (tracked == null) {
+            return;
+        }
+        if ("attempt".equals(entry.type())) {
+            tracked.attempts++;
+            tracked.error = entry.error();
+        } else {
+            tracked.fillPrice = entry.price();
+            tracked.complete(entry.type(), entry.error(), entry.at());
+        }
+    }
+
+    // Rewrites the journal to what replay needs and swaps it in atomically; caller holds journalLock
+    private void compact() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        File temp = new File(directory, file.getName() + ".tmp");
+
+        int entries = 0;
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Tracked tracked : orders.values()) {
+                Order order = tracked.order;
+                write(out, new Entry("submitted", order));
+                entries++;
+                if (PENDING.equals(tracked.state)) {
+                    for (int i = 0; i < tracked.attempts; i++) {
+                        write(out, new Entry("attempt", order.clientOrderId(), null, null, null, 0, tracked.error, null));
+                        entries++;
+                    }
+                } else {
+                    write(out, new Entry(tracked.state, order.clientOrderId(), null, null, null,
+                                         tracked.completedAt, tracked.error, tracked.fillPrice));
+                    entries++;
+                }
+            }
+            out.force(true);
+        }
+
+        if (journal != null) {
+            journal.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalEntries = entries;
+    }
+
+    // Caller holds journalLock
+    private void append(Entry entry) throws IOException {
+        write(journal, entry);
+        journalEntries++;
+    }
+
+    private static void write(FileChannel channel, Entry entry) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((Json.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+    }
+
+    // Mutable state of one order; written by the sender thread (or replay), read by anyone
+    private static class Tracked implements Delayed {
+        final Order order;
+        volatile String state = PENDING;
+        volatile int attempts;
+        volatile String error;
+        volatile long completedAt;
+        volatile long nextAttemptAt;
+        volatile Double fillPrice;
+
+        Tracked(Order order) {
+            this.order = order;
+        }
+
+        void complete(String outcome, String error, long at) {
+            this.attempts++;
+            this.error = error;
+            this.completedAt = at;
+            this.state = outcome;
+        }
+
+        void retryAt(String error, long at) {
+            this.attempts++;
+            this.error = error;
+            this.nextAttemptAt = at;
+        }
+
+        OrderStatus status() {
+            String current = state;
+            return new OrderStatus(order.clientOrderId(), order.symbol(), order.quantity(), order.buy() ? "buy" : "sell",
+                current, attempts, error, order.createdAt(), PENDING.equals(current) ? null : completedAt, fillPrice,
+                order.account(), order.type() != null ? order.type() : MARKET, order.price());
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextAttemptAt - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(nextAttemptAt, ((Tracked) other).nextAttemptAt);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Walk-forward backtest of one symbol through the {@link PaperBroker}.
+ *
+ * The model is trained once on the first part of the history. Every later bar is then
+ * replayed with {@link PaperBroker#replay}; before each bar the strategy sees only the bars
+ * already replayed and places orders that the bar fills:
+ * <ul>
+ *   <li>when flat and the predicted move is above the threshold, a limit buy at the last close,
+ *       sized as the server sizes automated trades and good for one bar;</li>
+ *   <li>once long, a stop sell at {@code --stop-loss} below the entry price;</li>
+ *   <li>when long and the predicted move is below minus the threshold, the stop is cancelled and
+ *       the position sold at market.</li>
+ * </ul>
+ * Fills and fees come from the broker's fill listener, so slippage and {@code paper.fee.*} apply
+ * as they do on the server. Broker settings are read from system properties
+ * ({@code -Dpaper.fee.bps=2}).
+ *
+ * {@code Model.predictNextDayPrice} adjusts its prediction while the market is closed, so
+ * compare runs made at the same time of day.
+ */
+public class PaperBacktest {
+    /**
+     * Predicts the next close from the history so far, newest bar first.
+     */
+    public interface Predictor {
+        double predictedClose(List<StockDataManager.StockEntry> history);
+    }
+
+    public record Result(String symbol, int bars, int orders, int fills, int roundTrips, double startEquity,
+                         double endEquity, double fees, double maxDrawdown, double buyAndHold) {
+        @Override
+        public String toString() {
+            return String.format("%s: %d bars, %d orders, %d fills, %d round trips, equity %.2f -> %.2f (%+.2f%%), " +
+                                 "fees %.2f, max drawdown %.2f%%, buy and hold %+.2f%%",
+                                 symbol, bars, orders, fills, roundTrips, startEquity, endEquity,
+                                 (endEquity / startEquity - 1) * 100, fees, maxDrawdown * 100, buyAndHold * 100);
+        }
+    }
+
+    private final BarSeries series;
+    private final Predictor predictor;
+    private final double threshold;
+    private final double stopLoss;
+    private final double confidence;
+
+    public PaperBacktest(BarSeries series, Predictor predictor, double threshold, double stopLoss, double confidence) {
+        this.series = series;
+        this.predictor = predictor;
+        this.threshold = threshold;
+        this.stopLoss = stopLoss;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Trades the bars from index {@code firstBar} on and reports the outcome.
+     */
+    public Result run(int firstBar, Properties brokerSettings) {
+        int first = Math.max(1, firstBar); // Every decision needs a close before it
+        String symbol = series.getSymbol();
+        List<StockDataManager.StockEntry> entries = series.toEntries(); // Newest first
+        int n = series.size();
+        PaperBroker broker = new PaperBroker(s -> null, brokerSettings);
+        double startEquity = broker.getPortfolioBalance();
+
+        int[] fills = new int[1];
+        int[] roundTrips = new int[1];
+        double[] fees = new double[1];
+        double[] entryPrice = new double[1];
+        broker.setFillListener(fill -> {
+            fills[0]++;
+            fees[0] += fill.fee();
+            if (fill.buy()) {
+                entryPrice[0] = fill.price();
+            } else {
+                roundTrips[0]++;
+            }
+        });
+
+        int[] orders = new int[1];
+        String[] stopId = new String[1];
+        String[] entryId = new String[1];
+        double[] peak = {startEquity};
+        double[] maxDrawdown = new double[1];
+        broker.replay(series, i -> {
+            if (i > 0) {
+                double equity = broker.getPortfolioBalance() + broker.position(symbol) * series.closeAt(i - 1);
+                peak[0] = Math.max(peak[0], equity);
+                maxDrawdown[0] = Math.max(maxDrawdown[0], 1 - equity / peak[0]);
+            }
+            if (i < first) {
+                return;
+            }
+            List<StockDataManager.StockEntry> history = entries.subList(n - i, n);
+            double lastClose = series.closeAt(i - 1);
+            double change = (predictor.predictedClose(history) - lastClose) / lastClose;
+            int held = broker.position(symbol);
+            String prefix = symbol + "-" + LocalDate.ofEpochDay(series.dateAt(i)) + "-";
+            try {
+                if (held == 0) {
+                    if (entryId[0] != null) {
+                        broker.cancel(symbol, entryId[0]); // Entries are good for one bar
+                        entryId[0] = null;
+                    }
+                    stopId[0] = null;
+                    if (change > threshold) {
+                        int quantity = broker.automatedTradeQuantity(symbol, change, confidence,
+                                                                     broker.getPortfolioBalance(), stopLoss);
+                        if (quantity > 0) {
+                            entryId[0] = prefix + "entry";
+                            broker.place(new PaperBroker.PaperOrder(entryId[0], symbol, quantity, true,
+                                                                    PaperBroker.Type.LIMIT, lastClose));
+                            orders[0]++;
+                        }
+                    }
+                } else if (held > 0) {
+                    if (change < -threshold) {
+                        if (stopId[0] != null) {
+                            broker.cancel(symbol, stopId[0]);
+                        }
+                        broker.place(new PaperBroker.PaperOrder(prefix + "exit", symbol, held, false,
+                                                                PaperBroker.Type.MARKET, 0));
+                        orders[0]++;
+                        stopId[0] = null;
+                    } else if (stopId[0] == null) {
+                        stopId[0] = prefix + "stop";
+                        broker.place(new PaperBroker.PaperOrder(stopId[0], symbol, held, false, PaperBroker.Type.STOP,
+                                                                entryPrice[0] * (1 - stopLoss)));
+                        orders[0]++;
+                    }
+                }
+            } catch (OrderOutbox.RejectedOrderException e) {
+                System.err.println("Backtest: " + prefix + " order rejected: " + e.getMessage());
+            }
+        });
+
+        double lastClose = series.closeAt(n - 1);
+        double endEquity = broker.getPortfolioBalance() + broker.position(symbol) * lastClose;
+        double buyAndHold = first < n ? lastClose / series.closeAt(Math.max(0, first - 1)) - 1 : 0;
+        return new Result(symbol, n - first, orders[0], fills[0], roundTrips[0], startEquity, endEquity, fees[0],
+                          maxDrawdown[0], buyAndHold);
+    }
+
+    /**
+     * Usage: PaperBacktest [--train-fraction F] [--threshold T] [--stop-loss S] [--confidence C]
+     *        SYMBOL_daily.json
+     */
+    public static void main(String[] args) throws IOException {
+        double trainFraction = 0.5;
+        double threshold = 0.005;
+        double stopLoss = 0.05;
+        double confidence = 0.8;
+        File file = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--train-fraction": trainFraction = Double.parseDouble(args[++i]); break;
+                case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "--stop-loss": stopLoss = Double.parseDouble(args[++i]); break;
+                case "--confidence": confidence = Double.parseDouble(args[++i]); break;
+                default: file = new File(args[i]); break;
+            }
+        }
+        if (file == null) {
+            System.err.println("Usage: PaperBacktest [--train-fraction F] [--threshold T] [--stop-loss S] " +
+                               "[--confidence C] SYMBOL_daily.json");
+            System.exit(1);
+        }
+
+        String symbol = file.getName().replaceFirst("_daily\\.json$", "").replaceFirst("\\.json$", "");
+        BarSeries series = readSeries(symbol, file);
+        int first = (int) Math.round(series.size() * trainFraction);
+        if (first < 1 || first >= series.size()) {
+            System.err.println("Too few bars in " + file + " for a training fraction of " + trainFraction);
+            System.exit(1);
+        }
+
+        List<StockDataManager.StockEntry> entries = series.toEntries();
+        Model model = new Model();
+        model.prepareData(entries.subList(series.size() - first, series.size()));
+        model.trainModel();
+
+        PaperBacktest backtest = new PaperBacktest(series, history -> model.predictNextDayPrice(history.get(0), history),
+                                                   threshold, stopLoss, confidence);
+        System.out.println(backtest.run(first, System.getProperties()));
+    }
+
+    // The bars of an Alpha Vantage daily file, without the predictions processData adds
+    private static BarSeries readSeries(String symbol, File file) throws IOException {
+        JsonObject root;
+        try (Reader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+            root = Json.GSON.fromJson(reader, JsonObject.class);
+        }
+        JsonObject daily = root != null ? root.getAsJsonObject("Time Series (Daily)") : null;
+        if (daily == null) {
+            throw new IOException("No daily series in " + file);
+        }
+        BarSeries.Builder builder = new BarSeries.Builder(symbol, daily.size());
+        for (Map.Entry<String, JsonElement> day : daily.entrySet()) {
+            JsonObject bar = day.getValue().getAsJsonObject();
+            builder.add((int) LocalDate.parse(day.getKey()).toEpochDay(), bar.get("1. open").getAsDouble(),
+                        bar.get("2. high").getAsDouble(), bar.get("3. low").getAsDouble(),
+                        bar.get("4. close").getAsDouble(), bar.get("5. volume").getAsDouble());
+        }
+        return builder.build(false);
+    }
+}
@@ -0,0 +1,371 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-process simulated broker for offline trading, load tests and backtests.
+ *
+ * Market orders fill at once at the latest price, moved against the order by a fixed
+ * slippage plus a size-dependent impact, and pay a fee of {@code paper.fee.bps} of the
+ * notional (at least {@code paper.fee.min}). Limit and stop orders rest in a per-symbol book
+ * until a bar passed to {@link #onBar} crosses them. They fill at the limit or stop, or at the
+ * bar's open when it gaps through. Stops fill as market orders and pay slippage too.
+ *
+ * Prices come from {@link #onBar} (the server feeds every refreshed series, {@link
+ * PaperBacktest} replays one with {@link #replay}), falling back to the supplied price source.
+ * Cash and positions are guarded by one lock and resting orders by a lock per symbol, so a
+ * market order costs a map lookup and a few arithmetic operations. Resting orders are kept in
+ * memory only and are gone after a restart.
+ *
+ * The server's account lives in the {@link PortfolioLedger}: on start the broker is {@link
+ * #restore restored} from it, and it reports no balance of its own for reconciliation.
+ *
+ * Every fill, with its fee, goes to the fill listener while the account is still locked, so
+ * a balance read never sees a fill the listener hasn't recorded.
+ */
+public class PaperBroker implements TradingGateway {
+    public enum Type { MARKET, LIMIT, STOP }
+
+    /**
+     * An order for the book; {@code price} is the limit or stop price and is ignored for market orders.
+     */
+    public record PaperOrder(String clientOrderId, String symbol, int quantity, boolean buy, Type type, double price) {
+    }
+
+    public record Fill(String clientOrderId, String symbol, int quantity, boolean buy, double price, double fee,
+                       long at) {
+    }
+
+    private final Function<String, Double> priceSource;
+    private final double slippageBps;
+    private final double impactBpsPerThousand;
+    private final double feeBps;
+    private final double minFee;
+    private final int maxRemembered;
+
+    private final Map<String, Double> lastPrices = new ConcurrentHashMap<>();
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+    private final Object accountLock = new Object();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<String, Fill> filled = new LinkedHashMap<String, Fill>(1024, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Fill> eldest) {
+            return size() > maxRemembered;
+        }
+    };
+    // Filled before the last restart; a resend of one is acknowledged without trading
+    private final Set<String> filledBefore = new HashSet<>();
+    private double cash;
+    private double fees;
+    private volatile Consumer<Fill> fillListener = fill -> { };
+
+    private final AtomicLong orders = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public PaperBroker(Function<String, Double> priceSource, Properties props) {
+        this.priceSource = priceSource;
+        this.cash = Double.parseDouble(props.getProperty("paper.initial.cash", "100000"));
+        this.slippageBps = Double.parseDouble(props.getProperty("paper.slippage.bps", "5"));
+        this.impactBpsPerThousand = Double.parseDouble(props.getProperty("paper.impact.bps.per.1000", "1"));
+        this.feeBps = Double.parseDouble(props.getProperty("paper.fee.bps", "0"));
+        this.minFee = Double.parseDouble(props.getProperty("paper.fee.min", "0"));
+        this.maxRemembered = Math.max(1, Integer.parseInt(props.getProperty("paper.remembered.orders", "100000")));
+    }
+
+    /**
+     * Called with every fill, including resting orders filled by a later bar, under the
+     * account lock; it must not call back into the broker.
+     */
+    public void setFillListener(Consumer<Fill> fillListener) {
+        this.fillListener = fillListener;
+    }
+
+    @Override
+    public boolean login(String username, String password) {
+        return true;
+    }
+
+    @Override
+    public double getPortfolioBalance() {
+        synchronized (accountLock) {
+            return cash;
+        }
+    }
+
+    /**
+     * Null: the simulated cash is not a truth to reconcile the ledger with; the ledger is.
+     */
+    @Override
+    public Double fetchBrokerBalance() {
+        return null;
+    }
+
+    /**
+     * Takes the ledger's cash, positions and filled client order IDs as the account, so a
+     * restarted server trades on from where it stopped instead of from {@code paper.initial.cash}.
+     */
+    public void restore(PortfolioLedger ledger) {
+        PortfolioLedger.State state = ledger.state();
+        synchronized (accountLock) {
+            cash = state.cash();
+            positions.clear();
+            for (PortfolioLedger.Position position : state.positions().values()) {
+                if (position.quantity() != 0) {
+                    positions.put(position.symbol(), position.quantity());
+                }
+            }
+            filledBefore.clear();
+            filledBefore.addAll(ledger.filledOrderIds());
+        }
+    }
+
+    @Override
+    public Double submitOrder(OrderOutbox.Order order) throws OrderOutbox.RejectedOrderException {
+        Type type = order.isMarket() ? Type.MARKET
+            : OrderOutbox.LIMIT.equals(order.type()) ? Type.LIMIT
+            : OrderOutbox.STOP.equals(order.type()) ? Type.STOP : null;
+        if (type == null) {
+            rejected.incrementAndGet();
+            throw new OrderOutbox.RejectedOrderException("Unknown order type " + order.type());
+        }
+        Fill fill = place(new PaperOrder(order.clientOrderId(), order.symbol(), order.quantity(), order.buy(), type,
+                                         order.price() != null ? order.price() : 0));
+        return fill != null ? fill.price() : null;
+    }
+
+    @Override
+    public double getCurrentPrice(String symbol) {
+        Double price = lastPrice(symbol);
+        return price != null ? price : -1;
+    }
+
+    @Override
+    public Map<String, Object> getTradingSignals(String symbol) {
+        Map<String, Object> signals = new LinkedHashMap<>();
+        signals.put("symbol", symbol);
+        signals.put("source", "paper");
+        signals.put("price", lastPrice(symbol));
+        return signals;
+    }
+
+    /**
+     * Places an order. Market orders return their fill; limit and stop orders return null and
+     * rest until a bar crosses them. A client order ID seen before returns the earlier fill, or
+     * null if it filled before the broker was restored.
+     */
+    public Fill place(PaperOrder order) throws OrderOutbox.RejectedOrderException {
+        orders.incrementAndGet();
+        if (order.clientOrderId() != null) {
+            synchronized (accountLock) {
+                if (filledBefore.contains(order.clientOrderId())) {
+                    duplicates.incrementAndGet();
+                    return null; // Its fill is in the ledger already
+                }
+            }
+        }
+        if (order.quantity() <= 0) {
+            rejected.incrementAndGet();
+            throw new OrderOutbox.RejectedOrderException("Quantity must be positive");
+        }
+        if (order.type() == Type.MARKET) {
+            Double price = lastPrice(order.symbol());
+            if (price == null || price <= 0) {
+                rejected.incrementAndGet();
+                throw new OrderOutbox.RejectedOrderException("No price for " + order.symbol());
+            }
+            return execute(order, slipped(price, order.quantity(), order.buy()));
+        }
+        if (order.price() <= 0) {
+            rejected.incrementAndGet();
+            throw new OrderOutbox.RejectedOrderException(order.type() + " orders need a positive price");
+        }
+        books.computeIfAbsent(order.symbol(), symbol -> new Book()).add(order);
+        return null;
+    }
+
+    /**
+     * Takes a resting order off the book; false if it already filled or was never placed.
+     */
+    public boolean cancel(String symbol, String clientOrderId) {
+        Book book = books.get(symbol);
+        return book != null && book.remove(clientOrderId);
+    }
+
+    /**
+     * Advances one symbol by a bar: the close becomes the latest price, and resting orders the
+     * bar's range crosses are filled.
+     */
+    public void onBar(String symbol, double open, double high, double low, double close) {
+        lastPrices.put(symbol, close);
+        Book book = books.get(symbol);
+        if (book == null) {
+            return;
+        }
+        for (PaperOrder order : book.triggered(high, low)) {
+            double price;
+            if (order.type() == Type.LIMIT) {
+                price = order.buy() ? Math.min(open, order.price()) : Math.max(open, order.price());
+            } else {
+                double trigger = order.buy() ? Math.max(open, order.price()) : Math.min(open, order.price());
+                price = slipped(trigger, order.quantity(), order.buy());
+            }
+            try {
+                execute(order, price);
+            } catch (OrderOutbox.RejectedOrderException e) {
+                // Not enough cash when it triggered; the order is dropped and counted as rejected
+                System.err.println("Paper broker: dropped " + order.type() + " order " + order.clientOrderId() +
+                                   ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Feeds a series' latest bar, as the server does whenever a symbol refreshes.
+     */
+    public void onBar(BarSeries series) {
+        if (series != null && series.size() > 0) {
+            int last = series.size() - 1;
+            onBar(series.getSymbol(), series.openAt(last), series.highAt(last), series.lowAt(last), series.closeAt(last));
+        }
+    }
+
+    /**
+     * Replays every bar of a series in order, calling {@code beforeBar} with each index first
+     * so a strategy can place orders that the bar then fills.
+     */
+    public void replay(BarSeries series, Consumer<Integer> beforeBar) {
+        for (int i = 0; i < series.size(); i++) {
+            beforeBar.accept(i);
+            onBar(series.getSymbol(), series.openAt(i), series.highAt(i), series.lowAt(i), series.closeAt(i));
+        }
+    }
+
+    public int position(String symbol) {
+        synchronized (accountLock) {
+            return positions.getOrDefault(symbol, 0);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (accountLock) {
+            stats.put("cash", cash);
+            stats.put("fees", fees);
+            stats.put("positions", positions.size());
+        }
+        int resting = 0;
+        for (Book book : books.values()) {
+            resting += book.size();
+        }
+        stats.put("orders", orders.get());
+        stats.put("fills", fills.get());
+        stats.put("rejected", rejected.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("resting", resting);
+        return stats;
+    }
+
+    private Double lastPrice(String symbol) {
+        Double price = lastPrices.get(symbol);
+        return price != null ? price : priceSource.apply(symbol);
+    }
+
+    // Moves the price against the order: fixed slippage plus impact growing with size
+    private double slipped(double price, int quantity, boolean buy) {
+        double bps = slippageBps + impactBpsPerThousand * quantity / 1000.0;
+        return price * (buy ? 1 + bps / 10_000 : 1 - bps / 10_000);
+    }
+
+    private Fill execute(PaperOrder order, double price) throws OrderOutbox.RejectedOrderException {
+        Fill fill;
+        synchronized (accountLock) {
+            if (order.clientOrderId() != null) {
+                Fill earlier = filled.get(order.clientOrderId());
+                if (earlier != null) {
+                    duplicates.incrementAndGet();
+                    return earlier;
+                }
+            }
+            double notional = price * order.quantity();
+            double fee = Math.max(minFee, notional * feeBps / 10_000);
+            if (order.buy() && notional + fee > cash) {
+                rejected.incrementAndGet();
+                throw new OrderOutbox.RejectedOrderException("Insufficient cash for " + order.quantity() + " " +
+                                                             order.symbol());
+            }
+            cash += order.buy() ? -notional - fee : notional - fee;
+            fees += fee;
+            positions.merge(order.symbol(), order.buy() ? order.quantity() : -order.quantity(), Integer::sum);
+            positions.remove(order.symbol(), 0);
+            fill = new Fill(order.clientOrderId(), order.symbol(), order.quantity(), order.buy(), price, fee,
+                            System.currentTimeMillis());
+            if (order.clientOrderId() != null) {
+                filled.put(order.clientOrderId(), fill);
+            }
+            fills.incrementAndGet();
+            fillListener.accept(fill);
+        }
+        return fill;
+    }
+
+    // Resting orders for one symbol, each side sorted so the first to trigger is at the head
+    private static class Book {
+        private final PriorityQueue<PaperOrder> buyLimits =
+            new PriorityQueue<>(Comparator.comparingDouble(PaperOrder::price).reversed());
+        private final PriorityQueue<PaperOrder> sellLimits =
+            new PriorityQueue<>(Comparator.comparingDouble(PaperOrder::price));
+        private final PriorityQueue<PaperOrder> buyStops =
+            new PriorityQueue<>(Comparator.comparingDouble(PaperOrder::price));
+        private final PriorityQueue<PaperOrder> sellStops =
+            new PriorityQueue<>(Comparator.comparingDouble(PaperOrder::price).reversed());
+
+        synchronized void add(PaperOrder order) {
+            if (order.type() == Type.LIMIT) {
+                (order.buy() ? buyLimits : sellLimits).add(order);
+            } else {
+                (order.buy() ? buyStops : sellStops).add(order);
+            }
+        }
+
+        synchronized List<PaperOrder> triggered(double high, double low) {
+            List<PaperOrder> triggered = new ArrayList<>();
+            while (!buyLimits.isEmpty() && low <= buyLimits.peek().price()) {
+                triggered.add(buyLimits.poll());
+            }
+            while (!sellLimits.isEmpty() && high >= sellLimits.peek().price()) {
+                triggered.add(sellLimits.poll());
+            }
+            while (!buyStops.isEmpty() && high >= buyStops.peek().price()) {
+                triggered.add(buyStops.poll());
+            }
+            while (!sellStops.isEmpty() && low <= sellStops.peek().price()) {
+                triggered.add(sellStops.poll());
+            }
+            return triggered;
+        }
+
+        synchronized boolean remove(String clientOrderId) {
+            return buyLimits.removeIf(order -> clientOrderId.equals(order.clientOrderId()))
+                | sellLimits.removeIf(order -> clientOrderId.equals(order.clientOrderId()))
+                | buyStops.removeIf(order -> clientOrderId.equals(order.clientOrderId()))
+                | sellStops.removeIf(order -> clientOrderId.equals(order.clientOrderId()));
+        }
+
+        synchronized int size() {
+            return buyLimits.size() + sellLimits.size() + buyStops.size() + sellStops.size();
+        }
+    }
+}
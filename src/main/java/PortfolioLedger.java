@@ -0,0 +1,252 @@
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Local record of cash, positions, average cost and realised P&L, rebuilt from an event
+ * journal.
+ *
+ * Fills and broker reconciliations are appended to the journal, forced to disk and applied
+ * to a new immutable {@link State}, which is published through a volatile field. Readers
+ * such as trade sizing and the portfolio endpoint just read that field, with no lock and no
+ * call to the broker. On open the journal is replayed from the start; it grows by one line
+ * per fill.
+ *
+ * A fill is recorded once per client order ID, so replaying the order outbox's events
+ * twice cannot double-count. {@link #reconcile} replaces local cash with the broker's
+ * figure and records the drift between them.
+ */
+public class PortfolioLedger {
+    /**
+     * A holding; a negative quantity is a short position.
+     */
+    public record Position(String symbol, int quantity, double averageCost, double realizedPnl) {
+    }
+
+    /**
+     * One consistent view of the ledger.
+     */
+    public record State(double cash, Map<String, Position> positions, double realizedPnl, long fills,
+                        Long reconciledAt, Double lastDrift) {
+    }
+
+    /**
+     * Body of {@code GET /portfolio}: the state plus market value at the latest prices.
+     */
+    public record Valuation(double cash, double marketValue, double equity, double realizedPnl,
+                            double unrealizedPnl, long fills, Long reconciledAt, Double lastDrift,
+                            List<PositionValue> positions) {
+    }
+
+    public record PositionValue(String symbol, int quantity, double averageCost, Double price,
+                                double marketValue, double unrealizedPnl, double realizedPnl) {
+    }
+
+    // One journal line; "fill" uses the order fields and fee, "reconcile" the cash and drift
+    private record Event(String type, String clientOrderId, String symbol, Integer quantity, Boolean buy,
+                         Double price, Double cash, Double drift, long at, Double fee) {
+    }
+
+    private final File file;
+    private final Set<String> filledOrders = new HashSet<>();
+    private volatile State state;
+    private FileChannel journal;
+
+    public PortfolioLedger(File file, double initialCash) throws IOException {
+        this.file = file;
+        this.state = new State(initialCash, Map.of(), 0, 0, null, null);
+        int events = replay();
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        journal = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+        // Start on a fresh line if the last write was torn
+        long size = journal.size();
+        ByteBuffer last = ByteBuffer.allocate(1);
+        if (size > 0 && journal.read(last, size - 1) == 1 && last.get(0) != '\n') {
+            journal.write(ByteBuffer.wrap(new byte[] {'\n'}), size);
+        }
+        journal.position(journal.size());
+        State current = state;
+        System.out.println("Portfolio ledger: replayed " + events + " events, cash " +
+                           String.format("%.2f", current.cash()) + ", " + current.positions().size() + " positions");
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public double cash() {
+        return state.cash();
+    }
+
+    /**
+     * Client order IDs of every fill recorded so far.
+     */
+    public synchronized List<String> filledOrderIds() {
+        return new ArrayList<>(filledOrders);
+    }
+
+    /**
+     * Records a fill. Returns false if this client order ID was already recorded.
+     */
+    public boolean recordFill(String clientOrderId, String symbol, int quantity, boolean buy,
+                              double price) throws IOException {
+        return recordFill(clientOrderId, symbol, quantity, buy, price, 0);
+    }
+
+    /**
+     * Same, for a fill that paid a fee; the fee comes out of cash.
+     */
+    public synchronized boolean recordFill(String clientOrderId, String symbol, int quantity, boolean buy,
+                                           double price, double fee) throws IOException {
+        if (clientOrderId != null && filledOrders.contains(clientOrderId)) {
+            return false;
+        }
+        Event event = new Event("fill", clientOrderId, symbol, quantity, buy, price, null, null,
+                                System.currentTimeMillis(), fee != 0 ? fee : null);
+        write(event);
+        apply(event);
+        return true;
+    }
+
+    /**
+     * Takes the broker's cash figure as the truth and records how far the ledger had drifted.
+     */
+    public synchronized double reconcile(double brokerCash) throws IOException {
+        return reconcile(brokerCash, () -> true);
+    }
+
+    /**
+     * Same, but only if {@code stillValid} holds; it is checked while fills are locked out, so
+     * no fill can land between the check and the reconciliation. Returns null when skipped.
+     */
+    public synchronized Double reconcile(double brokerCash, BooleanSupplier stillValid) throws IOException {
+        if (!stillValid.getAsBoolean()) {
+            return null;
+        }
+        double drift = brokerCash - state.cash();
+        Event event = new Event("reconcile", null, null, null, null, null, brokerCash, drift,
+                                System.currentTimeMillis(), null);
+        write(event);
+        apply(event);
+        return drift;
+    }
+
+    /**
+     * Values the positions at the given prices; positions without a price are valued at cost.
+     */
+    public Valuation valuation(Function<String, Double> prices) {
+        State current = state;
+        double marketValue = 0;
+        double unrealized = 0;
+        List<PositionValue> values = new ArrayList<>(current.positions().size());
+        for (Position position : current.positions().values()) {
+            Double price = prices.apply(position.symbol());
+            double mark = price != null ? price : position.averageCost();
+            double value = position.quantity() * mark;
+            double pnl = position.quantity() * (mark - position.averageCost());
+            marketValue += value;
+            unrealized += pnl;
+            values.add(new PositionValue(position.symbol(), position.quantity(), position.averageCost(), price,
+                                         value, pnl, position.realizedPnl()));
+        }
+        return new Valuation(current.cash(), marketValue, current.cash() + marketValue, current.realizedPnl(),
+                             unrealized, current.fills(), current.reconciledAt(), current.lastDrift(), values);
+    }
+
+    // Caller holds the monitor (or is the constructor)
+    private void apply(Event event) {
+        State current = state;
+        if ("reconcile".equals(event.type())) {
+            state = new State(event.cash(), current.positions(), current.realizedPnl(), current.fills(),
+                              event.at(), event.drift());
+            return;
+        }
+        if (!"fill".equals(event.type()) || event.quantity() == null || event.price() == null) {
+            return;
+        }
+        if (event.clientOrderId() != null && !filledOrders.add(event.clientOrderId())) {
+            return;
+        }
+
+        int signed = Boolean.TRUE.equals(event.buy()) ? event.quantity() : -event.quantity();
+        double price = event.price();
+        Position held = current.positions().get(event.symbol());
+        int quantity = held != null ? held.quantity() : 0;
+        double averageCost = held != null ? held.averageCost() : 0;
+        double positionRealized = held != null ? held.realizedPnl() : 0;
+        double realized = 0;
+
+        if (quantity == 0 || Integer.signum(quantity) == Integer.signum(signed)) {
+            // Opening or adding: blend the cost
+            averageCost = (Math.abs(quantity) * averageCost + Math.abs(signed) * price) / (Math.abs(quantity) + Math.abs(signed));
+            quantity += signed;
+        } else {
+            // Reducing, closing or flipping: the closed part realises P&L at the old cost
+            int closed = Math.min(Math.abs(quantity), Math.abs(signed));
+            realized = closed * (price - averageCost) * Integer.signum(quantity);
+            quantity += signed;
+            if (quantity == 0) {
+                averageCost = 0;
+            } else if (Integer.signum(quantity) == Integer.signum(signed)) {
+                averageCost = price; // Flipped; the remainder opened at this fill
+            }
+        }
+
+        Map<String, Position> positions = new TreeMap<>(current.positions());
+        if (quantity == 0 && positionRealized + realized == 0) {
+            positions.remove(event.symbol());
+        } else {
+            positions.put(event.symbol(), new Position(event.symbol(), quantity, averageCost, positionRealized + realized));
+        }
+        double fee = event.fee() != null ? event.fee() : 0;
+        state = new State(current.cash() - signed * price - fee, Map.copyOf(positions), current.realizedPnl() + realized,
+                          current.fills() + 1, current.reconciledAt(), current.lastDrift());
+    }
+
+    private int replay() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        int events = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    apply(Json.GSON.fromJson(line, Event.class));
+                    events++;
+                } catch (JsonParseException e) {
+                    // A line torn by a crash mid-write
+                    System.err.println("Portfolio ledger: skipping unreadable journal line " + (events + 1));
+                }
+            }
+        }
+        return events;
+    }
+
+    private void write(Event event) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((Json.toJson(event) + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) {
+            journal.write(line);
+        }
+        journal.force(false);
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * One symbol's prediction as served by /predict and ranked by /top-predictions.
+ *
+ * Immutable, so a single instance can sit in the prediction cache, the published
+ * ranking and the warm state snapshot at the same time. Field names are the JSON keys
+ * the dashboard reads.
+ */
+public record PredictionResult(
+    boolean success,
+    String symbol,
+    String date,
+    double lastClose,
+    double todayOpen,
+    double currentPrice,
+    double predictedHigh,
+    double predictedLow,
+    double predictedClose,
+    double volume,
+    Double nextDayPredictedOpen,
+    TradingSignals tradingSignals,
+    boolean stale,
+    String refreshedAt) {
+
+    /**
+     * Size of the predicted move in percent, the key the ranking sorts on.
+     */
+    public double rankKey() {
+        return tradingSignals != null ? Math.abs(tradingSignals.predictedChange()) : 0.0;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams top predictions one symbol at a time instead of as a single response.
+ *
+ * Symbols with a cached prediction are sent first, straight from the cache; the rest are
+ * predicted on the given executor and sent in completion order, so the first row reaches
+ * the client as soon as the fastest symbol is done. A final {@code ranking} event carries
+ * the ranked order of everything sent and lists symbols that missed the deadline.
+ *
+ * Events are written as NDJSON (one JSON object per line) or as Server-Sent Events; both
+ * carry the same objects, each with a {@code type} of {@code prediction}, {@code error} or
+ * {@code ranking}.
+ */
+public class PredictionStream {
+    /**
+     * Writes one event and flushes it to the client.
+     */
+    public interface Sink {
+        void send(String type, Object event) throws IOException;
+    }
+
+    private final SymbolUniverse universe;
+    private final Map<String, PredictionResult> cachedPredictions;
+    private final RankingService.Predictor predictor;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+
+    public PredictionStream(SymbolUniverse universe, Map<String, PredictionResult> cachedPredictions,
+                            RankingService.Predictor predictor, ExecutorService executor, long timeoutMillis) {
+        this.universe = universe;
+        this.cachedPredictions = cachedPredictions;
+        this.predictor = predictor;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static Sink ndjson(OutputStream out) {
+        return (type, event) -> {
+            out.write((Json.toJson(event) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        };
+    }
+
+    public static Sink serverSentEvents(OutputStream out) {
+        return (type, event) -> {
+            out.write(("event: " + type + "\ndata: " + Json.toJson(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        };
+    }
+
+    /**
+     * Streams every symbol in the universe; with {@code refresh} set, cached predictions are
+     * recomputed instead of replayed. Stops early if the client goes away.
+     */
+    public void stream(Sink sink, boolean refresh) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<PredictionResult> sent = new ArrayList<>();
+        CompletionService<PredictionResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<PredictionResult>, String> pending = new HashMap<>();
+
+        try {
+            for (String symbol : universe.symbols()) {
+                PredictionResult cached = refresh ? null : cachedPredictions.get(symbol);
+                if (cached != null) {
+                    sendPrediction(sink, symbol, cached, true);
+                    sent.add(cached);
+                } else {
+                    pending.put(completion.submit(() -> predictor.predict(symbol)), symbol);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                Future<PredictionResult> done = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (done == null) {
+                    break;
+                }
+                String symbol = pending.remove(done);
+                try {
+                    PredictionResult prediction = done.get();
+                    if (prediction != null) {
+                        sendPrediction(sink, symbol, prediction, false);
+                        sent.add(prediction);
+                    } else {
+                        sendError(sink, symbol, "No prediction available yet");
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    sendError(sink, symbol, cause.getMessage());
+                }
+            }
+
+            sent.sort(RankingService.BY_RANK);
+            List<String> order = new ArrayList<>(sent.size());
+            for (PredictionResult prediction : sent) {
+                order.add(prediction.symbol());
+            }
+            sink.send("ranking", new RankingEvent("ranking", order, universe.size(), new ArrayList<>(pending.values())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Nothing left to wait for once the deadline passes or the client disconnects
+            for (Future<PredictionResult> future : pending.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void sendPrediction(Sink sink, String symbol, PredictionResult prediction, boolean cached) throws IOException {
+        sink.send("prediction", new PredictionEvent("prediction", symbol, cached, prediction));
+    }
+
+    private static void sendError(Sink sink, String symbol, String error) throws IOException {
+        sink.send("error", new ErrorEvent("error", symbol, error));
+    }
+
+    private record PredictionEvent(String type, String symbol, boolean cached, PredictionResult prediction) {
+    }
+
+    private record ErrorEvent(String type, String symbol, String error) {
+    }
+
+    private record RankingEvent(String type, List<String> order, int total, List<String> timedOut) {
+    }
+}
@@ -0,0 +1,210 @@
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest known price per symbol, for trade sizing, paper fills and portfolio valuation.
+ *
+ * Each symbol holds an immutable {@link Quote} in an {@link AtomicReference}. Readers do one
+ * map lookup and one volatile read, with no lock and no I/O, so sizing a trade never waits on
+ * the network. Quotes come from the bar pipeline (the close of every series written to the
+ * {@link BarStore}) and, when {@code prices.poll.seconds} is set, from a poller that asks
+ * Alpha Vantage's GLOBAL_QUOTE for the symbols being traded. An update only replaces a quote
+ * that is not newer than itself, so a late bar refresh cannot overwrite a fresher poll.
+ *
+ * A quote older than {@code prices.stale.hours} counts as stale: {@link #currentPrice}
+ * refuses it, and {@code GET /prices/:symbol} reports it.
+ */
+public class PriceService {
+    public static final String BARS = "bars";
+    public static final String POLL = "poll";
+
+    /**
+     * One price and when it applied; {@code asOf} is the end of the bar's day for closes,
+     * capped at when it arrived.
+     */
+    public record Quote(String symbol, double price, long asOf, long receivedAt, String source) {
+    }
+
+    /**
+     * Body of {@code GET /prices/:symbol}.
+     */
+    public record QuoteView(String symbol, double price, long asOf, long ageMillis, boolean stale, String source) {
+    }
+
+    /**
+     * Fetches a live price for the poller; null when none is available.
+     */
+    public interface QuoteSource {
+        Double latest(String symbol) throws Exception;
+    }
+
+    private final Map<String, AtomicReference<Quote>> quotes = new ConcurrentHashMap<>();
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private final long staleMillis;
+    private final long pollSeconds;
+    private final long pollDelayMillis;
+    private ScheduledExecutorService poller;
+
+    private final AtomicLong barUpdates = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong pollFailures = new AtomicLong();
+    private final AtomicLong ignored = new AtomicLong();
+
+    public PriceService(Properties props) {
+        this.staleMillis = TimeUnit.HOURS.toMillis(Long.parseLong(props.getProperty("prices.stale.hours", "96")));
+        this.pollSeconds = Long.parseLong(props.getProperty("prices.poll.seconds", "0"));
+        this.pollDelayMillis = Long.parseLong(props.getProperty("prices.poll.delay.ms", "12000"));
+        String symbols = props.getProperty("prices.poll.symbols", "");
+        for (String symbol : symbols.split(",")) {
+            if (!symbol.isBlank()) {
+                watched.add(symbol.trim().toUpperCase());
+            }
+        }
+    }
+
+    /**
+     * The latest quote, stale or not, or null if none is known.
+     */
+    public Quote quote(String symbol) {
+        AtomicReference<Quote> ref = quotes.get(symbol);
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * The latest price, stale or not, or null if none is known.
+     */
+    public Double price(String symbol) {
+        Quote quote = quote(symbol);
+        return quote != null ? quote.price() : null;
+    }
+
+    /**
+     * The price to trade at: -1 when none is known or it is stale. The symbol joins the
+     * poller's list.
+     */
+    public double currentPrice(String symbol) {
+        if (pollSeconds > 0 && !watched.contains(symbol)) {
+            watched.add(symbol);
+        }
+        Quote quote = quote(symbol);
+        return quote != null && !isStale(quote) ? quote.price() : -1;
+    }
+
+    public boolean isStale(Quote quote) {
+        return System.currentTimeMillis() - quote.asOf() > staleMillis;
+    }
+
+    public QuoteView view(String symbol) {
+        Quote quote = quote(symbol);
+        if (quote == null) {
+            return null;
+        }
+        return new QuoteView(symbol, quote.price(), quote.asOf(), System.currentTimeMillis() - quote.asOf(),
+                             isStale(quote), quote.source());
+    }
+
+    /**
+     * Takes the last close of a series; wired to {@link BarStore#setUpdateListener}.
+     */
+    public void onSeries(BarSeries series) {
+        if (series == null || series.size() == 0) {
+            return;
+        }
+        int last = series.size() - 1;
+        long now = System.currentTimeMillis();
+        long endOfDay = LocalDate.ofEpochDay(series.dateAt(last) + 1L).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() - 1;
+        if (update(new Quote(series.getSymbol(), series.closeAt(last), Math.min(endOfDay, now), now, BARS))) {
+            barUpdates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Installs the quote unless a newer one is already there; returns whether it did.
+     */
+    public boolean update(Quote quote) {
+        if (!(quote.price() > 0)) {
+            ignored.incrementAndGet();
+            return false;
+        }
+        AtomicReference<Quote> ref = quotes.computeIfAbsent(quote.symbol(), symbol -> new AtomicReference<>());
+        while (true) {
+            Quote current = ref.get();
+            if (current != null && current.asOf() > quote.asOf()) {
+                ignored.incrementAndGet();
+                return false;
+            }
+            if (ref.compareAndSet(current, quote)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Starts polling the watched symbols if {@code prices.poll.seconds} is set. Calls are
+     * spaced {@code prices.poll.delay.ms} apart to stay inside the API's rate limit.
+     */
+    public synchronized void startPolling(QuoteSource source) {
+        if (pollSeconds <= 0 || poller != null) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("price-poller", true));
+        poller.scheduleWithFixedDelay(() -> pollOnce(source), 0, pollSeconds, TimeUnit.SECONDS);
+        System.out.println("Price service: polling quotes every " + pollSeconds + " s");
+    }
+
+    private void pollOnce(QuoteSource source) {
+        boolean first = true;
+        for (String symbol : watched) {
+            if (!first && pollDelayMillis > 0) {
+                try {
+                    Thread.sleep(pollDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            first = false;
+            try {
+                Double price = source.latest(symbol);
+                polls.incrementAndGet();
+                if (price != null) {
+                    long now = System.currentTimeMillis();
+                    update(new Quote(symbol, price, now, now, POLL));
+                }
+            } catch (Exception e) {
+                pollFailures.incrementAndGet();
+                System.err.println("Price service: error polling " + symbol + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int stale = 0;
+        long now = System.currentTimeMillis();
+        for (AtomicReference<Quote> ref : quotes.values()) {
+            Quote quote = ref.get();
+            if (quote != null && now - quote.asOf() > staleMillis) {
+                stale++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("symbols", quotes.size());
+        stats.put("stale", stale);
+        stats.put("watched", watched.size());
+        stats.put("barUpdates", barUpdates.get());
+        stats.put("polls", polls.get());
+        stats.put("pollFailures", pollFailures.get());
+        stats.put("ignored", ignored.get());
+        return stats;
+    }
+}
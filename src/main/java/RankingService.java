@@ -0,0 +1,206 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Maintains the top-predictions ranking in the background.
+ *
+ * Symbols are marked dirty when their bars or model change; dirty symbols are re-predicted
+ * after a short debounce, the universe is re-ranked and the result is published as an
+ * immutable, versioned {@link Snapshot} that already holds its JSON, precompressed. Readers only read a
+ * volatile field, so serving the ranking costs the same whatever the universe size. A
+ * periodic full recompute picks up predictions that depend on the time of day.
+ */
+public class RankingService {
+    /**
+     * Largest predicted move first; compares the primitive key without boxing.
+     */
+    static final Comparator<PredictionResult> BY_RANK = Comparator.comparingDouble(PredictionResult::rankKey).reversed();
+
+    /**
+     * Computes the prediction for one symbol, or returns null if it cannot be served yet.
+     */
+    public interface Predictor {
+        PredictionResult predict(String symbol) throws Exception;
+    }
+
+    /**
+     * One published ranking; never modified after it is created.
+     */
+    public static class Snapshot {
+        public final long version;
+        public final long computedAt;
+        public final boolean partial;
+        public final List<PredictionResult> predictions;
+        public final String json;
+        public final CachedPayload payload;
+
+        Snapshot(long version, long computedAt, boolean partial, int total, List<PredictionResult> predictions) {
+            this.version = version;
+            this.computedAt = computedAt;
+            this.partial = partial;
+            this.predictions = Collections.unmodifiableList(predictions);
+
+            this.json = Json.toJson(new Response(true, version, Instant.ofEpochMilli(computedAt).toString(), predictions,
+                partial ? Boolean.TRUE : null, partial ? predictions.size() : null, partial ? total : null));
+            this.payload = CachedPayload.of("ranking-" + version, "application/json", json, computedAt);
+        }
+    }
+
+    // Body of /top-predictions; the partial-load fields are left out (null) once fully loaded
+    private record Response(boolean success, long version, String computedAt, List<PredictionResult> predictions,
+                            Boolean partial, Integer loaded, Integer total) {
+    }
+
+    private final SymbolUniverse universe;
+    private final SymbolLoadTracker tracker;
+    private final Map<String, PredictionResult> predictions;
+    private final Predictor predictor;
+    private final long debounceMillis;
+    private final long refreshMinutes;
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean recomputeScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+    private volatile Snapshot current;
+    private volatile Consumer<Snapshot> publishListener = snapshot -> { };
+    private long version;   // Guarded by this
+
+    public RankingService(SymbolUniverse universe, SymbolLoadTracker tracker,
+                          Map<String, PredictionResult> predictions, Predictor predictor,
+                          long debounceMillis, long refreshMinutes) {
+        this.universe = universe;
+        this.tracker = tracker;
+        this.predictions = predictions;
+        this.predictor = predictor;
+        this.debounceMillis = debounceMillis;
+        this.refreshMinutes = refreshMinutes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("ranking", true));
+        this.workers = ExecutionLayer.shared().fanout();
+        this.current = new Snapshot(0, System.currentTimeMillis(), true, universe.size(), new ArrayList<>());
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Called with every newly published snapshot, on the thread that published it.
+     */
+    public void setPublishListener(Consumer<Snapshot> publishListener) {
+        this.publishListener = publishListener;
+    }
+
+    /**
+     * Publishes a ranking restored from a warm state snapshot until the first recompute.
+     */
+    public void seed(List<PredictionResult> ranking) {
+        if (ranking != null && !ranking.isEmpty() && current.version == 0) {
+            synchronized (this) {
+                current = new Snapshot(++version, System.currentTimeMillis(), true, universe.size(), new ArrayList<>(ranking));
+            }
+            publishListener.accept(current);
+        }
+    }
+
+    /**
+     * Ranks everything now and then every {@code refreshMinutes}.
+     */
+    public void start() {
+        markAllDirty();
+        if (refreshMinutes > 0) {
+            scheduler.scheduleAtFixedRate(this::markAllDirty, refreshMinutes, refreshMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    public void markDirty(String symbol) {
+        if (!universe.contains(symbol)) {
+            return;
+        }
+        dirty.add(symbol);
+        scheduleRecompute();
+    }
+
+    public void markAllDirty() {
+        Collections.addAll(dirty, universe.symbols());
+        scheduleRecompute();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void scheduleRecompute() {
+        // Bursts of changes (e.g. a prefetch pass) collapse into one recompute
+        if (recomputeScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::recompute, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void recompute() {
+        recomputeScheduled.set(false);
+        long startTime = System.currentTimeMillis();
+        try {
+            List<String> symbols = new ArrayList<>(dirty);
+            dirty.removeAll(symbols);
+
+            List<Future<?>> futures = new ArrayList<>(symbols.size());
+            AtomicInteger errors = new AtomicInteger();
+            for (String symbol : symbols) {
+                futures.add(workers.submit(() -> {
+                    try {
+                        PredictionResult prediction = predictor.predict(symbol);
+                        if (prediction != null) {
+                            predictions.put(symbol, prediction);
+                        }
+                    } catch (Exception e) {
+                        // Keep ranking the symbol's previous prediction
+                        errors.incrementAndGet();
+                        System.err.println("Error ranking " + symbol + ": " + e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            List<PredictionResult> ranked = new ArrayList<>();
+            for (String symbol : universe.symbols()) {
+                PredictionResult prediction = predictions.get(symbol);
+                if (prediction != null) {
+                    ranked.add(prediction);
+                }
+            }
+            ranked.sort(BY_RANK);
+
+            boolean partial = !tracker.isReady();
+            synchronized (this) {
+                current = new Snapshot(++version, System.currentTimeMillis(), partial, universe.size(), ranked);
+            }
+            publishListener.accept(current);
+            if (symbols.size() > 0) {
+                System.out.println("Published ranking v" + current.version + " (" + ranked.size() + " symbols, " +
+                                 symbols.size() + " recomputed, " + errors.get() + " errors) in " +
+                                 (System.currentTimeMillis() - startTime) + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Error recomputing ranking: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,435 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Rolling covariance of daily returns across the universe, with parametric portfolio VaR.
+ *
+ * The last {@code risk.window.days} trading days are kept as rows of log returns, one column
+ * per symbol, next to running sums of each column and of every product of two columns. A bar
+ * update changes only the returns it touches: each changed return updates its column's sums
+ * with one pass over the other columns (O(symbols)), and a new trading day drops the oldest
+ * row (O(symbols squared) at worst), so no update re-reads the window. The sums drift with
+ * rounding, so they are rebuilt from the rows every {@code risk.rebuild.days} new days.
+ *
+ * VaR is {@code risk.var.z} standard deviations of the portfolio's dollar P&L over
+ * {@code risk.var.days} days. {@link #maxTradeQuantity} answers the sizing question "how many
+ * shares keep VaR within {@code risk.max.var.percent} of equity" from the covariances of the
+ * held symbols alone. That takes microseconds under a read lock. {@link #report} splits each
+ * position's marginal and component VaR across the CPU pool when the book is large.
+ */
+public class RiskEngine {
+    /**
+     * One position's share of portfolio risk; the component VaRs add up to the total.
+     */
+    public record Contribution(String symbol, int quantity, double value, double dailyVolatility,
+                               double marginalVar, double componentVar, double percentOfVar) {
+    }
+
+    /**
+     * Body of {@code GET /risk}.
+     */
+    public record Report(double equity, double grossExposure, double netExposure, double var, double varPercent,
+                         double undiversifiedVar, int observations, List<Contribution> positions) {
+    }
+
+    private final int window;
+    private final double z;
+    private final double horizonScale;
+    private final double maxVarPercent;
+    private final double defaultVolatility;
+    private final int rebuildDays;
+    private final int parallelMinPositions;
+
+    private final StampedLock lock = new StampedLock();
+    // Guarded by lock
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final Map<Integer, Integer> rowOfDate = new HashMap<>();
+    private int symbols;
+    private double[][] rows;
+    private final int[] rowDates;
+    private int newest = -1;
+    private int filled;
+    private int daysSinceRebuild;
+    private double[] sums;
+    private double[][] products;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong returnsChanged = new AtomicLong();
+    private final AtomicLong daysAdded = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong totalUpdateNanos = new AtomicLong();
+    private final AtomicLong maxUpdateNanos = new AtomicLong();
+
+    public RiskEngine(Properties props) {
+        this.window = Math.max(3, Integer.parseInt(props.getProperty("risk.window.days", "60")));
+        this.z = Double.parseDouble(props.getProperty("risk.var.z", "2.326"));
+        this.horizonScale = Math.sqrt(Double.parseDouble(props.getProperty("risk.var.days", "1")));
+        this.maxVarPercent = Double.parseDouble(props.getProperty("risk.max.var.percent", "2"));
+        this.defaultVolatility = Double.parseDouble(props.getProperty("risk.default.volatility", "0.03"));
+        this.rebuildDays = Math.max(1, Integer.parseInt(props.getProperty("risk.rebuild.days", "250")));
+        this.parallelMinPositions = Integer.parseInt(props.getProperty("risk.parallel.min.positions", "64"));
+        int capacity = 64;
+        this.rows = new double[window][capacity];
+        this.rowDates = new int[window];
+        this.sums = new double[capacity];
+        this.products = new double[capacity][capacity];
+    }
+
+    /**
+     * Takes the returns of a refreshed series that fall in the window; wired to the bar store.
+     */
+    public void onSeries(BarSeries series) {
+        if (series == null || series.size() < 2) {
+            return;
+        }
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            int column = column(series.getSymbol());
+            for (int t = Math.max(1, series.size() - window); t < series.size(); t++) {
+                double previous = series.closeAt(t - 1);
+                double close = series.closeAt(t);
+                if (!(previous > 0) || !(close > 0)) {
+                    continue;
+                }
+                int row = rowFor(series.dateAt(t));
+                if (row >= 0) {
+                    setReturn(row, column, Math.log(close / previous));
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        long elapsed = System.nanoTime() - start;
+        updates.incrementAndGet();
+        totalUpdateNanos.addAndGet(elapsed);
+        maxUpdateNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Daily return covariance of two symbols over the window, or NaN if either is unknown or
+     * there are fewer than two days.
+     */
+    public double covariance(String a, String b) {
+        long stamp = lock.readLock();
+        try {
+            Integer i = columns.get(a);
+            Integer j = columns.get(b);
+            return i == null || j == null || filled < 2 ? Double.NaN : covarianceAt(i, j);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The most shares of {@code symbol} that can be bought (or sold) at {@code price} while
+     * keeping portfolio VaR within {@code risk.max.var.percent} of equity. When VaR is already
+     * over the limit, only trades that reduce it are allowed. Integer.MAX_VALUE when no limit
+     * is set.
+     */
+    public int maxTradeQuantity(String symbol, boolean buy, double price, Map<String, PortfolioLedger.Position> positions,
+                                Function<String, Double> prices, double equity) {
+        if (maxVarPercent <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        if (!(price > 0) || !(equity > 0)) {
+            return 0;
+        }
+        List<String> held = new ArrayList<>(positions.keySet());
+        held.remove(symbol);
+        held.add(symbol); // The traded symbol is last, with its current holding as its weight
+        double[] weights = weights(held, positions, prices);
+        double[][] cov = covariances(held);
+
+        int last = held.size() - 1;
+        double variance = 0;
+        double towardSymbol = 0;
+        for (int i = 0; i < held.size(); i++) {
+            double row = 0;
+            for (int j = 0; j < held.size(); j++) {
+                row += cov[i][j] * weights[j];
+            }
+            variance += weights[i] * row;
+            if (i == last) {
+                towardSymbol = row;
+            }
+        }
+
+        // Portfolio variance after trading q shares: a q^2 + b q + c
+        double limit = maxVarPercent / 100 * equity / (z * horizonScale);
+        double a = cov[last][last] * price * price;
+        double b = 2 * (buy ? price : -price) * towardSymbol;
+        double c = variance;
+        if (a <= 0) {
+            return Integer.MAX_VALUE;
+        }
+        double bound;
+        if (c >= limit * limit) {
+            bound = Math.max(0, -b / a); // Only as far as the trade keeps lowering risk
+        } else {
+            bound = (-b + Math.sqrt(b * b - 4 * a * (c - limit * limit))) / (2 * a);
+        }
+        return bound >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.floor(bound);
+    }
+
+    /**
+     * VaR of the positions at the given prices, split into each position's contribution.
+     */
+    public Report report(Map<String, PortfolioLedger.Position> positions, Function<String, Double> prices, double cash) {
+        List<String> held = new ArrayList<>(positions.keySet());
+        double[] weights = weights(held, positions, prices);
+        double[][] cov = covariances(held);
+        int observations;
+        long stamp = lock.readLock();
+        try {
+            observations = filled;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        // Sigma times w, one entry per position; the only O(positions squared) step
+        double[] towardPortfolio = new double[held.size()];
+        if (held.size() >= parallelMinPositions) {
+            ExecutorService cpu = ExecutionLayer.shared().cpu();
+            int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), held.size() / 16));
+            List<Future<?>> futures = new ArrayList<>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int from = chunk * held.size() / chunks;
+                int to = (chunk + 1) * held.size() / chunks;
+                futures.add(cpu.submit(() -> multiply(cov, weights, towardPortfolio, from, to)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Risk report failed", e);
+                }
+            }
+        } else {
+            multiply(cov, weights, towardPortfolio, 0, held.size());
+        }
+
+        double variance = 0;
+        double gross = 0;
+        double net = 0;
+        double undiversified = 0;
+        for (int i = 0; i < held.size(); i++) {
+            variance += weights[i] * towardPortfolio[i];
+            gross += Math.abs(weights[i]);
+            net += weights[i];
+            undiversified += Math.abs(weights[i]) * Math.sqrt(cov[i][i]);
+        }
+        double sigma = Math.sqrt(Math.max(0, variance));
+        double scale = z * horizonScale;
+        double var = sigma * scale;
+        double equity = cash + net;
+
+        List<Contribution> contributions = new ArrayList<>(held.size());
+        for (int i = 0; i < held.size(); i++) {
+            double marginal = sigma > 0 ? scale * towardPortfolio[i] / sigma : 0;
+            double component = weights[i] * marginal;
+            contributions.add(new Contribution(held.get(i), positions.get(held.get(i)).quantity(), weights[i],
+                                               Math.sqrt(cov[i][i]), marginal, component,
+                                               var > 0 ? component / var * 100 : 0));
+        }
+        contributions.sort((x, y) -> Double.compare(y.componentVar(), x.componentVar()));
+        return new Report(equity, gross, net, var, equity > 0 ? var / equity * 100 : 0, undiversified * scale,
+                          observations, contributions);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long stamp = lock.readLock();
+        try {
+            stats.put("symbols", symbols);
+            stats.put("days", filled);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        long count = updates.get();
+        stats.put("updates", count);
+        stats.put("returnsChanged", returnsChanged.get());
+        stats.put("daysAdded", daysAdded.get());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("avgUpdateMicros", count > 0 ? totalUpdateNanos.get() / count / 1000.0 : 0.0);
+        stats.put("maxUpdateMicros", maxUpdateNanos.get() / 1000.0);
+        return stats;
+    }
+
+    private static void multiply(double[][] cov, double[] weights, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double sum = 0;
+            double[] row = cov[i];
+            for (int j = 0; j < weights.length; j++) {
+                sum += row[j] * weights[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    // Dollar value of each holding; the traded symbol may be absent from the positions
+    private static double[] weights(List<String> held, Map<String, PortfolioLedger.Position> positions,
+                                    Function<String, Double> prices) {
+        double[] weights = new double[held.size()];
+        for (int i = 0; i < weights.length; i++) {
+            PortfolioLedger.Position position = positions.get(held.get(i));
+            if (position != null) {
+                Double price = prices.apply(position.symbol());
+                weights[i] = position.quantity() * (price != null ? price : position.averageCost());
+            }
+        }
+        return weights;
+    }
+
+    // Covariances of the listed symbols; unknown symbols get the default volatility and no correlation
+    private double[][] covariances(List<String> held) {
+        int n = held.size();
+        double[][] cov = new double[n][n];
+        double fallback = defaultVolatility * defaultVolatility;
+        long stamp = lock.readLock();
+        try {
+            int[] index = new int[n];
+            for (int i = 0; i < n; i++) {
+                Integer column = filled >= 2 ? columns.get(held.get(i)) : null;
+                index[i] = column != null ? column : -1;
+            }
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    double value;
+                    if (index[i] >= 0 && index[j] >= 0) {
+                        value = covarianceAt(index[i], index[j]);
+                    } else {
+                        value = i == j ? fallback : 0;
+                    }
+                    cov[i][j] = value;
+                    cov[j][i] = value;
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return cov;
+    }
+
+    // Caller holds the lock
+    private double covarianceAt(int i, int j) {
+        return (products[i][j] - sums[i] * sums[j] / filled) / (filled - 1);
+    }
+
+    private int column(String symbol) {
+        Integer column = columns.get(symbol);
+        if (column != null) {
+            return column;
+        }
+        if (symbols == sums.length) {
+            int capacity = sums.length * 2;
+            for (int r = 0; r < window; r++) {
+                rows[r] = Arrays.copyOf(rows[r], capacity);
+            }
+            sums = Arrays.copyOf(sums, capacity);
+            double[][] grown = new double[capacity][];
+            for (int i = 0; i < capacity; i++) {
+                grown[i] = i < products.length ? Arrays.copyOf(products[i], capacity) : new double[capacity];
+            }
+            products = grown;
+        }
+        columns.put(symbol, symbols);
+        return symbols++;
+    }
+
+    // The row for a trading day, opening a new day (and dropping the oldest) for a later date
+    private int rowFor(int date) {
+        Integer row = rowOfDate.get(date);
+        if (row != null) {
+            return row;
+        }
+        if (newest >= 0 && date < rowDates[newest]) {
+            return -1; // Older than the window, or a day the window skipped
+        }
+        int next = (newest + 1) % window;
+        if (filled == window) {
+            removeRow(next);
+            rowOfDate.remove(rowDates[next]);
+        } else {
+            filled++;
+        }
+        rowDates[next] = date;
+        rowOfDate.put(date, next);
+        newest = next;
+        daysAdded.incrementAndGet();
+        if (++daysSinceRebuild >= rebuildDays) {
+            rebuild();
+        }
+        return next;
+    }
+
+    private void setReturn(int row, int column, double value) {
+        double[] returns = rows[row];
+        double old = returns[column];
+        if (old == value) {
+            return;
+        }
+        double delta = value - old;
+        sums[column] += delta;
+        double[] own = products[column];
+        for (int k = 0; k < symbols; k++) {
+            if (k != column && returns[k] != 0) {
+                double change = delta * returns[k];
+                own[k] += change;
+                products[k][column] += change;
+            }
+        }
+        own[column] += value * value - old * old;
+        returns[column] = value;
+        returnsChanged.incrementAndGet();
+    }
+
+    private void removeRow(int row) {
+        double[] returns = rows[row];
+        for (int i = 0; i < symbols; i++) {
+            double ri = returns[i];
+            if (ri == 0) {
+                continue;
+            }
+            sums[i] -= ri;
+            double[] own = products[i];
+            for (int k = 0; k < symbols; k++) {
+                own[k] -= ri * returns[k];
+            }
+        }
+        Arrays.fill(returns, 0);
+    }
+
+    // Recomputes the sums exactly from the rows, discarding accumulated rounding error
+    private void rebuild() {
+        Arrays.fill(sums, 0);
+        for (double[] product : products) {
+            Arrays.fill(product, 0);
+        }
+        for (int r = 0; r < window; r++) {
+            double[] returns = rows[r];
+            for (int i = 0; i < symbols; i++) {
+                double ri = returns[i];
+                if (ri == 0) {
+                    continue;
+                }
+                sums[i] += ri;
+                for (int k = 0; k < symbols; k++) {
+                    products[i][k] += ri * returns[k];
+                }
+            }
+        }
+        daysSinceRebuild = 0;
+        rebuilds.incrementAndGet();
+    }
+}
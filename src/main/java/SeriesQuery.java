@@ -0,0 +1,255 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A date-range slice of one {@link BarSeries}, optionally downsampled to a target number
+ * of points, for charting clients.
+ *
+ * The range is found with two binary searches over the series' epoch-day column, and only
+ * the selected bars of the requested fields are copied out, so the cost depends on the
+ * number of points returned rather than on the length of the history.
+ *
+ * Two downsampling methods pick which bars to keep, both judged on the close:
+ * {@code lttb} (Largest-Triangle-Three-Buckets) keeps the shape of the line, and
+ * {@code minmax} keeps the lowest and highest close of each bucket so no spike is lost.
+ * Bars are never averaged, so every returned point is a real bar.
+ */
+public class SeriesQuery {
+    public static final Set<String> FIELDS = Set.of("open", "high", "low", "close", "volume");
+
+    /**
+     * Body of {@code GET /series/:symbol}; unselected fields are null and left out of the JSON.
+     */
+    public record Response(boolean success, String symbol, String from, String to, int total, int points,
+                           String method, boolean mockData, String[] dates, double[] open, double[] high,
+                           double[] low, double[] close, double[] volume) {
+    }
+
+    private final Integer from;
+    private final Integer to;
+    private final Set<String> fields;
+    private final int points;
+    private final String method;
+
+    private SeriesQuery(Integer from, Integer to, Set<String> fields, int points, String method) {
+        this.from = from;
+        this.to = to;
+        this.fields = fields;
+        this.points = points;
+        this.method = method;
+    }
+
+    /**
+     * Parses the query parameters; null parameters take their defaults.
+     *
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    public static SeriesQuery parse(String from, String to, String fields, String points, String method,
+                                    int defaultPoints) {
+        Integer fromDay = parseDate("from", from);
+        Integer toDay = parseDate("to", to);
+        if (fromDay != null && toDay != null && fromDay > toDay) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : (fields == null || fields.isBlank() ? "close" : fields).split(",")) {
+            String name = field.trim().toLowerCase();
+            if (!FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field '" + name + "', expected one of " + FIELDS);
+            }
+            selected.add(name);
+        }
+
+        int target;
+        try {
+            target = points == null ? defaultPoints : Integer.parseInt(points.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("points must be a number");
+        }
+        if (target < 0 || target == 1 || target == 2) {
+            // Both methods keep at least the first and last bar of the range
+            throw new IllegalArgumentException("points must be 0 (every bar) or at least 3");
+        }
+
+        String mode = method == null ? "lttb" : method.trim().toLowerCase();
+        if (!mode.equals("lttb") && !mode.equals("minmax")) {
+            throw new IllegalArgumentException("method must be lttb or minmax");
+        }
+        return new SeriesQuery(fromDay, toDay, selected, target, mode);
+    }
+
+    /**
+     * Canonical form of the query, used to version cached responses.
+     */
+    public String key() {
+        return from + ":" + to + ":" + String.join(",", fields) + ":" + points + ":" + method;
+    }
+
+    public Response run(BarSeries series) {
+        int lo = from != null ? series.lowerBound(from) : 0;
+        int hi = to != null ? series.lowerBound(to + 1) : series.size();
+        hi = Math.max(lo, hi);
+        int total = hi - lo;
+
+        int[] selected;
+        String applied = method;
+        if (points == 0 || total <= points) {
+            selected = range(lo, hi);
+            applied = "none";
+        } else if (method.equals("minmax")) {
+            selected = minMax(series, lo, hi, points);
+        } else {
+            selected = lttb(series, lo, hi, points);
+        }
+
+        String[] dates = new String[selected.length];
+        for (int k = 0; k < selected.length; k++) {
+            dates[k] = LocalDate.ofEpochDay(series.dateAt(selected[k])).toString();
+        }
+        return new Response(true, series.getSymbol(),
+            total > 0 ? dates[0] : null, total > 0 ? dates[dates.length - 1] : null,
+            total, selected.length, applied, series.isMockData(), dates,
+            column(series, selected, "open"), column(series, selected, "high"), column(series, selected, "low"),
+            column(series, selected, "close"), column(series, selected, "volume"));
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets over the closes in [lo, hi): keeps the first and last
+     * bar, and from each bucket in between the bar forming the largest triangle with the
+     * previously kept bar and the average of the next bucket.
+     */
+    static int[] lttb(BarSeries series, int lo, int hi, int threshold) {
+        int n = hi - lo;
+        if (threshold >= n) {
+            return range(lo, hi);
+        }
+        if (threshold < 3) {
+            return threshold == 2 ? new int[] {lo, hi - 1} : range(hi - threshold, hi);
+        }
+
+        int[] sampled = new int[threshold];
+        int count = 0;
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = lo;
+        sampled[count++] = a;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket
+            int avgStart = lo + (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min(lo + (int) Math.floor((i + 2) * every) + 1, hi);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += series.dateAt(j);
+                avgY += series.closeAt(j);
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            // Point in this bucket with the largest triangle
+            int rangeStart = lo + (int) Math.floor(i * every) + 1;
+            int rangeEnd = lo + (int) Math.floor((i + 1) * every) + 1;
+            double ax = series.dateAt(a);
+            double ay = series.closeAt(a);
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (series.closeAt(j) - ay) - (ax - series.dateAt(j)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled[count++] = next;
+            a = next;
+        }
+
+        sampled[count++] = hi - 1;
+        return sampled;
+    }
+
+    /**
+     * Splits [lo, hi) into {@code threshold / 2} buckets and keeps the bars with the lowest
+     * and highest close of each, in date order.
+     */
+    static int[] minMax(BarSeries series, int lo, int hi, int threshold) {
+        int n = hi - lo;
+        int buckets = threshold / 2;
+        if (n <= threshold) {
+            return range(lo, hi);
+        }
+        if (buckets == 0) {
+            return range(hi - threshold, hi);
+        }
+
+        int[] sampled = new int[buckets * 2];
+        int count = 0;
+        for (int b = 0; b < buckets; b++) {
+            int start = lo + (int) ((long) b * n / buckets);
+            int end = lo + (int) ((long) (b + 1) * n / buckets);
+            int min = start;
+            int max = start;
+            for (int j = start + 1; j < end; j++) {
+                double c = series.closeAt(j);
+                if (c < series.closeAt(min)) {
+                    min = j;
+                }
+                if (c > series.closeAt(max)) {
+                    max = j;
+                }
+            }
+            sampled[count++] = Math.min(min, max);
+            if (min != max) {
+                sampled[count++] = Math.max(min, max);
+            }
+        }
+        return Arrays.copyOf(sampled, count);
+    }
+
+    private double[] column(BarSeries series, int[] selected, String field) {
+        if (!fields.contains(field)) {
+            return null;
+        }
+        double[] values = new double[selected.length];
+        for (int k = 0; k < selected.length; k++) {
+            int i = selected[k];
+            switch (field) {
+                case "open": values[k] = round(series.openAt(i)); break;
+                case "high": values[k] = round(series.highAt(i)); break;
+                case "low": values[k] = round(series.lowAt(i)); break;
+                case "close": values[k] = round(series.closeAt(i)); break;
+                default: values[k] = series.volumeAt(i); break;
+            }
+        }
+        return values;
+    }
+
+    // Four decimals is finer than any quote and keeps the JSON short
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    private static int[] range(int lo, int hi) {
+        int[] indices = new int[hi - lo];
+        for (int k = 0; k < indices.length; k++) {
+            indices[k] = lo + k;
+        }
+        return indices;
+    }
+
+    private static Integer parseDate(String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return (int) LocalDate.parse(value.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be a date like 2020-01-31");
+        }
+    }
+}
@@ -14,7 +14,6 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.time.*;
 import org.jfree.data.xy.XYDataset;
 import weka.*;
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 
 import javax.swing.*;
@@ -23,10 +22,7 @@ import java.text.SimpleDateFormat;
 import java.text.ParseException;
 import javax.sql.DataSource;
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
-import java.net.URL;
+import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -43,12 +39,15 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class StockDataManager {
     private static final String CONFIG_FILE = "config.properties";
     private static final String API_KEY_FILE = "AlphaVantageAPI.txt";
+    private static final String DEFAULT_API_BASE_URL = "https://www.alphavantage.co";
+    private static Properties apiSettings;
     private File csvFile;
     private File jsonFile;
     private String apiKey;
     private static final long CACHE_DURATION_HOURS = 24; // Cache duration in hours
     private String symbol;
     private boolean usingMockData;  // New field to track mock data usage
+    private boolean calledApi;      // Whether the last fetch went to the API rather than the cache
     
     public StockDataManager() throws IOException {
         loadApiKey();
@@ -100,6 +99,10 @@ public class StockDataManager {
         return this.usingMockData;
     }
 
+    public boolean didCallApi() {
+        return this.calledApi;
+    }
+
     // Inner class to represent a stock entry
     public static class StockEntry {
         public String date;
@@ -210,6 +213,7 @@ public class StockDataManager {
 
     public List<StockEntry> fetchAndSaveStockData(String symbol) throws IOException {
         setSymbol(symbol); // Ensure paths are set correctly
+        this.calledApi = false;
         
         // First check if we have valid cached data
         if (isDataCacheValid()) {
@@ -235,7 +239,7 @@ public class StockDataManager {
             String response = fetchDataFromAPI(symbol);
             
             // Parse the response to check for error messages
-            JsonObject root = new Gson().fromJson(response, JsonObject.class);
+            JsonObject root = Json.GSON.fromJson(response, JsonObject.class);
             
             // Check for API error messages
             if (root.has("Error Message")) {
@@ -254,10 +258,11 @@ public class StockDataManager {
                 }
                 
                 // If no cached data, wait and retry
-                System.out.println("No cached data available, waiting 60 seconds before retry...");
-                Thread.sleep(60000);
+                long waitMillis = Long.parseLong(apiSetting("alphavantage.rate.limit.wait.ms", "60000"));
+                System.out.println("No cached data available, waiting " + waitMillis / 1000 + " seconds before retry...");
+                Thread.sleep(waitMillis);
                 response = fetchDataFromAPI(symbol);
-                root = new Gson().fromJson(response, JsonObject.class);
+                root = Json.GSON.fromJson(response, JsonObject.class);
             }
             
             // Check if we have valid time series data
@@ -294,28 +299,62 @@ public class StockDataManager {
     }
     
     private String fetchDataFromAPI(String symbol) throws IOException {
-        String urlStr = String.format("https://www.alphavantage.co/query?function=TIME_SERIES_DAILY&symbol=%s&apikey=%s&outputsize=full",
-                symbol, apiKey);
-        
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);  // 10 second timeout for connection
-        conn.setReadTimeout(10000);     // 10 second timeout for reading
+        String urlStr = String.format("%s/query?function=TIME_SERIES_DAILY&symbol=%s&apikey=%s&outputsize=full",
+                apiBaseUrl(), symbol, apiKey);
+        this.calledApi = true;
         
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            StringBuilder response = new StringBuilder();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+        // Pooled keep-alive connections, per-host limits and a circuit breaker, shared with eToro
+        HttpTransport transport = HttpTransport.shared();
+        HttpResponse<String> response = transport.send(transport.request(urlStr).GET().build(), true);
+        if (response.statusCode() >= 400) {
+            throw new IOException("Alpha Vantage answered " + response.statusCode() + " for " + symbol);
+        }
+        return response.body();
+    }
+
+    /**
+     * Latest traded price from Alpha Vantage's GLOBAL_QUOTE endpoint, or null when the answer
+     * carries none (unknown symbol, rate limit note).
+     */
+    public Double fetchLatestQuote(String symbol) throws IOException {
+        String urlStr = String.format("%s/query?function=GLOBAL_QUOTE&symbol=%s&apikey=%s",
+                apiBaseUrl(), symbol, apiKey);
+        HttpTransport transport = HttpTransport.shared();
+        HttpResponse<String> response = transport.send(transport.request(urlStr).GET().build(), true);
+        if (response.statusCode() >= 400) {
+            throw new IOException("Alpha Vantage answered " + response.statusCode() + " for " + symbol);
+        }
+        JsonObject root = Json.GSON.fromJson(response.body(), JsonObject.class);
+        JsonObject quote = root != null && root.has("Global Quote") && root.get("Global Quote").isJsonObject()
+            ? root.getAsJsonObject("Global Quote") : null;
+        if (quote == null || !quote.has("05. price")) {
+            return null;
+        }
+        return quote.get("05. price").getAsDouble();
+    }
+
+    /**
+     * Alpha Vantage base URL; {@code alphavantage.base.url} points the client at another
+     * server, such as the load-test stand-in.
+     */
+    static String apiBaseUrl() {
+        String url = apiSetting("alphavantage.base.url", DEFAULT_API_BASE_URL).trim();
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    // -D system properties first, then config.properties (read once), then the default
+    private static synchronized String apiSetting(String key, String defaultValue) {
+        if (apiSettings == null) {
+            apiSettings = new Properties();
+            try (InputStream input = new FileInputStream(CONFIG_FILE)) {
+                apiSettings.load(input);
+            } catch (IOException e) {
+                // No config file: defaults apply
             }
-            
-            return response.toString();
         }
+        return System.getProperty(key, apiSettings.getProperty(key, defaultValue));
     }
-    
+
     private void saveToFile(String data, String symbol) throws IOException {
         // Create directories if they don't exist
         new File("data/json").mkdirs();
@@ -348,7 +387,7 @@ public class StockDataManager {
         
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String content = reader.lines().collect(java.util.stream.Collectors.joining("\n"));
-            JsonObject root = new Gson().fromJson(content, JsonObject.class);
+            JsonObject root = Json.GSON.fromJson(content, JsonObject.class);
             
             if (root.has("Time Series (Daily)")) {
                 JsonObject timeSeries = root.getAsJsonObject("Time Series (Daily)");
@@ -448,7 +487,7 @@ public class StockDataManager {
         return entries;
     }
 
-    private static String determineSentiment(double change) {
+    static String determineSentiment(double change) {
         if (change > 2.0) return "Very Bullish";
         if (change > 0.5) return "Bullish";
         if (change < -2.0) return "Very Bearish";
@@ -498,102 +537,10 @@ public class StockDataManager {
         List<StockEntry> mockData = new ArrayList<>();
         Random random = new Random();
         
-        // Use different base prices for different symbols
-        double basePrice;
-        switch(symbol.toUpperCase()) {
-            case "AAPL":
-                basePrice = 170.0;
-                break;
-            case "MSFT":
-                basePrice = 380.0;
-                break;
-            case "GOOGL":
-                basePrice = 140.0;
-                break;
-            case "AMZN":
-                basePrice = 170.0;
-                break;
-            case "NVDA":
-                basePrice = 720.0;
-                break;
-            case "META":
-                basePrice = 480.0;
-                break;
-            case "BRK-B":
-                basePrice = 360.0;
-                break;
-            case "LLY":
-                basePrice = 740.0;
-                break;
-            case "AVGO":
-                basePrice = 1200.0;
-                break;
-            case "JPM":
-                basePrice = 170.0;
-                break;
-            case "V":
-                basePrice = 270.0;
-                break;
-            case "XOM":
-                basePrice = 105.0;
-                break;
-            case "ORCL":
-                basePrice = 110.0;
-                break;
-            case "MA":
-                basePrice = 470.0;
-                break;
-            case "HD":
-                basePrice = 370.0;
-                break;
-            case "CVX":
-                basePrice = 150.0;
-                break;
-            case "MRK":
-                basePrice = 125.0;
-                break;
-            case "ABBV":
-                basePrice = 170.0;
-                break;
-            case "KO":
-                basePrice = 60.0;
-                break;
-            case "PEP":
-                basePrice = 170.0;
-                break;
-            case "BAC":
-                basePrice = 33.0;
-                break;
-            case "COST":
-                basePrice = 730.0;
-                break;
-            case "MCD":
-                basePrice = 290.0;
-                break;
-            case "TMO":
-                basePrice = 550.0;
-                break;
-            case "CSCO":
-                basePrice = 49.0;
-                break;
-            case "CRM":
-                basePrice = 280.0;
-                break;
-            case "ACN":
-                basePrice = 370.0;
-                break;
-            case "ADBE":
-                basePrice = 550.0;
-                break;
-            case "AMD":
-                basePrice = 170.0;
-                break;
-            case "NFLX":
-                basePrice = 580.0;
-                break;
-            default:
-                basePrice = 100.0 + random.nextDouble() * 900.0; // Random base price between 100 and 1000
-                break;
+        // Use the base price from the symbol universe if it defines one
+        double basePrice = SymbolUniverse.current().basePriceFor(symbol);
+        if (Double.isNaN(basePrice)) {
+            basePrice = 100.0 + random.nextDouble() * 900.0; // Random base price between 100 and 1000
         }
         
         // Generate 100 days of mock data first without predictions
@@ -717,7 +664,7 @@ public class StockDataManager {
         
         // Save to JSON file
         try (FileWriter writer = new FileWriter(jsonFile)) {
-            new Gson().toJson(json, writer);
+            Json.GSON.toJson(json, writer);
         }
         
         // Save as CSV
@@ -0,0 +1,166 @@
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks how far each symbol in the universe has loaded and how fresh its data is.
+ *
+ * A symbol is servable once it is {@link State#CACHED} (data restored from a snapshot or
+ * read from disk, not yet checked against the API in this run) or {@link State#FRESH}
+ * (revalidated in this run). Servable symbols go stale again once their tier's refresh
+ * interval has passed, and requests for stale symbols trigger a background revalidation.
+ */
+public class SymbolLoadTracker {
+    public enum State {
+        PENDING,   // Nothing loaded yet
+        LOADING,   // Being fetched or trained, nothing to serve yet
+        CACHED,    // Servable from the snapshot or disk, awaiting revalidation
+        FRESH,     // Revalidated in this run
+        FAILED     // Last load failed and there is nothing to serve
+    }
+
+    public enum Source {
+        NONE, SNAPSHOT, DISK, IMPORT, FETCH
+    }
+
+    /**
+     * Immutable load state of one symbol.
+     */
+    public static class Status {
+        public final State state;
+        public final Source source;
+        public final long refreshedAt;   // When the data was last revalidated, 0 if never
+        public final String error;
+
+        Status(State state, Source source, long refreshedAt, String error) {
+            this.state = state;
+            this.source = source;
+            this.refreshedAt = refreshedAt;
+            this.error = error;
+        }
+
+        public boolean isServable() {
+            return state == State.CACHED || state == State.FRESH;
+        }
+    }
+
+    private static final Status PENDING = new Status(State.PENDING, Source.NONE, 0, null);
+
+    private final SymbolUniverse universe;
+    private final Map<String, Status> statuses = new ConcurrentHashMap<>();
+    private volatile boolean initialLoadComplete;
+
+    public SymbolLoadTracker(SymbolUniverse universe) {
+        this.universe = universe;
+    }
+
+    public Status get(String symbol) {
+        return statuses.getOrDefault(symbol, PENDING);
+    }
+
+    /**
+     * Records data that can be served but has not been revalidated in this run.
+     */
+    public void cached(String symbol, Source source) {
+        statuses.put(symbol, new Status(State.CACHED, source, 0, null));
+    }
+
+    public void loading(String symbol) {
+        statuses.compute(symbol, (s, current) ->
+            current == null || !current.isServable() ? new Status(State.LOADING, Source.NONE, 0, null) : current);
+    }
+
+    public void fresh(String symbol, Source source) {
+        statuses.put(symbol, new Status(State.FRESH, source, System.currentTimeMillis(), null));
+    }
+
+    /**
+     * Records a failed load; symbols that already have data keep serving it.
+     */
+    public void failed(String symbol, String error) {
+        statuses.compute(symbol, (s, current) -> current != null && current.isServable()
+            ? new Status(current.state, current.source, current.refreshedAt, error)
+            : new Status(State.FAILED, Source.NONE, 0, error));
+    }
+
+    /**
+     * A symbol is stale until it has been revalidated within its tier's refresh interval.
+     */
+    public boolean isStale(String symbol) {
+        Status status = get(symbol);
+        if (status.state != State.FRESH) {
+            return true;
+        }
+        long maxAgeMillis = universe.refreshMinutes(universe.tierOf(symbol)) * 60000;
+        return maxAgeMillis > 0 && System.currentTimeMillis() - status.refreshedAt > maxAgeMillis;
+    }
+
+    public void markInitialLoadComplete() {
+        initialLoadComplete = true;
+    }
+
+    public boolean isInitialLoadComplete() {
+        return initialLoadComplete;
+    }
+
+    /**
+     * Ready once the initial load pass has finished or every symbol is servable.
+     */
+    public boolean isReady() {
+        return initialLoadComplete || countServable() == universe.size();
+    }
+
+    public int countServable() {
+        int servable = 0;
+        for (String symbol : universe.symbols()) {
+            if (get(symbol).isServable()) {
+                servable++;
+            }
+        }
+        return servable;
+    }
+
+    /**
+     * Summary for the readiness endpoint: counts per state and the status of every symbol.
+     */
+    public Map<String, Object> report() {
+        Map<State, Integer> counts = new EnumMap<>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0);
+        }
+        Map<String, Object> symbols = new LinkedHashMap<>();
+        int stale = 0;
+        for (String symbol : universe.symbols()) {
+            Status status = get(symbol);
+            boolean isStale = isStale(symbol);
+            counts.merge(status.state, 1, Integer::sum);
+            if (isStale) {
+                stale++;
+            }
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("state", status.state.name());
+            entry.put("source", status.source.name());
+            entry.put("stale", isStale);
+            if (status.refreshedAt > 0) {
+                entry.put("refreshedAt", Instant.ofEpochMilli(status.refreshedAt).toString());
+            }
+            if (status.error != null) {
+                entry.put("error", status.error);
+            }
+            symbols.put(symbol, entry);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("ready", isReady());
+        report.put("initialLoadComplete", initialLoadComplete);
+        report.put("total", universe.size());
+        report.put("servable", counts.get(State.CACHED) + counts.get(State.FRESH));
+        report.put("stale", stale);
+        report.put("states", counts);
+        report.put("symbols", symbols);
+        return report;
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The set of symbols the server tracks, loaded from a universe file.
+ *
+ * Each non-comment line of the file is {@code SYMBOL[,TIER[,BASE_PRICE]]}. The tier
+ * controls how often the symbol is refreshed in the background and the order in which
+ * it is loaded at startup; the optional base price seeds mock data for that symbol.
+ */
+public class SymbolUniverse {
+    public static final String DEFAULT_FILE = "data/universe.csv";
+
+    // Used when no universe file can be found
+    private static final String[] DEFAULT_SYMBOLS = {
+        "AAPL", "MSFT", "GOOGL", "AMZN", "NVDA", "META", "BRK-B", "LLY", "AVGO", "JPM",
+        "V", "XOM", "ORCL", "MA", "HD", "CVX", "MRK", "ABBV", "KO", "PEP", "BAC", "COST",
+        "MCD", "TMO", "CSCO", "CRM", "ACN", "ADBE", "AMD", "NFLX"
+    };
+
+    private static volatile SymbolUniverse current = fromSymbols(DEFAULT_SYMBOLS);
+
+    public enum Tier {
+        HIGH(60),        // Refreshed hourly
+        NORMAL(6 * 60),  // Refreshed every 6 hours
+        LOW(24 * 60);    // Refreshed daily
+
+        private final long defaultRefreshMinutes;
+
+        Tier(long defaultRefreshMinutes) {
+            this.defaultRefreshMinutes = defaultRefreshMinutes;
+        }
+
+        public long getDefaultRefreshMinutes() {
+            return defaultRefreshMinutes;
+        }
+    }
+
+    private final Map<String, Tier> tiers;
+    private final Map<String, Double> basePrices;
+    private final Map<Tier, Long> refreshMinutes = new EnumMap<>(Tier.class);
+    private final String[] symbols;
+
+    private SymbolUniverse(Map<String, Tier> tiers, Map<String, Double> basePrices) {
+        this.tiers = Collections.unmodifiableMap(tiers);
+        this.basePrices = Collections.unmodifiableMap(basePrices);
+
+        // Keep symbols ordered by tier so higher priority symbols are loaded first
+        List<String> ordered = new ArrayList<>(tiers.size());
+        for (Tier tier : Tier.values()) {
+            tiers.forEach((symbol, t) -> {
+                if (t == tier) {
+                    ordered.add(symbol);
+                }
+            });
+        }
+        this.symbols = ordered.toArray(new String[0]);
+
+        for (Tier tier : Tier.values()) {
+            refreshMinutes.put(tier, tier.getDefaultRefreshMinutes());
+        }
+    }
+
+    /**
+     * Loads the universe named by {@code universe.file} in the given properties (or the
+     * default file), applies any {@code universe.refresh.<tier>.minutes} overrides and
+     * makes it the current universe. Falls back to the built-in symbol list if the file
+     * does not exist.
+     */
+    public static SymbolUniverse load(Properties props) throws IOException {
+        File file = new File(props.getProperty("universe.file", DEFAULT_FILE));
+        SymbolUniverse universe;
+        if (file.exists()) {
+            universe = fromFile(file);
+            System.out.println("Loaded " + universe.size() + " symbols from " + file.getPath());
+        } else {
+            System.out.println("Universe file " + file.getPath() + " not found, using the default " +
+                             DEFAULT_SYMBOLS.length + " symbols");
+            universe = fromSymbols(DEFAULT_SYMBOLS);
+        }
+
+        for (Tier tier : Tier.values()) {
+            String value = props.getProperty("universe.refresh." + tier.name().toLowerCase() + ".minutes");
+            if (value != null && !value.trim().isEmpty()) {
+                universe.refreshMinutes.put(tier, Long.parseLong(value.trim()));
+            }
+        }
+        current = universe;
+        return universe;
+    }
+
+    public static SymbolUniverse fromFile(File file) throws IOException {
+        Map<String, Tier> tiers = new LinkedHashMap<>();
+        Map<String, Double> basePrices = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split(",");
+                String symbol = parts[0].trim().toUpperCase();
+                if (symbol.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    Tier tier = parts.length > 1 && !parts[1].trim().isEmpty()
+                        ? Tier.valueOf(parts[1].trim().toUpperCase())
+                        : Tier.NORMAL;
+                    tiers.put(symbol, tier);
+                    if (parts.length > 2 && !parts[2].trim().isEmpty()) {
+                        basePrices.put(symbol, Double.parseDouble(parts[2].trim()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid universe entry at " + file.getPath() + ":" + lineNumber + ": " + line);
+                }
+            }
+        }
+
+        return new SymbolUniverse(tiers, basePrices);
+    }
+
+    public static SymbolUniverse fromSymbols(String... symbols) {
+        Map<String, Tier> tiers = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            tiers.put(symbol, Tier.NORMAL);
+        }
+        return new SymbolUniverse(tiers, new HashMap<>());
+    }
+
+    public static SymbolUniverse current() {
+        return current;
+    }
+
+    /**
+     * Symbols ordered from the highest to the lowest priority tier.
+     */
+    public String[] symbols() {
+        return symbols.clone();
+    }
+
+    public int size() {
+        return symbols.length;
+    }
+
+    public boolean contains(String symbol) {
+        return tiers.containsKey(symbol);
+    }
+
+    public Tier tierOf(String symbol) {
+        return tiers.getOrDefault(symbol, Tier.NORMAL);
+    }
+
+    public long refreshMinutes(Tier tier) {
+        return refreshMinutes.get(tier);
+    }
+
+    public Map<Tier, List<String>> symbolsByTier() {
+        Map<Tier, List<String>> byTier = new EnumMap<>(Tier.class);
+        for (String symbol : symbols) {
+            byTier.computeIfAbsent(tiers.get(symbol), t -> new ArrayList<>()).add(symbol);
+        }
+        return byTier;
+    }
+
+    /**
+     * Base price used when generating mock data, or NaN if the universe does not define one.
+     */
+    public double basePriceFor(String symbol) {
+        Double price = basePrices.get(symbol.toUpperCase());
+        return price != null ? price : Double.NaN;
+    }
+}
@@ -0,0 +1,348 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates realistic, reproducible daily bars for many symbols.
+ *
+ * Prices follow geometric Brownian motion with Poisson jumps. A market-wide two-state
+ * volatility regime (calm/stressed) and a common market factor are generated once per
+ * day; each symbol loads on the market factor with its own correlation, so cross-symbol
+ * correlation rises in stressed regimes the way real markets do.
+ *
+ * Output is a pure function of the seed and settings: every symbol gets its own
+ * {@link SplittableRandom} split from the root in symbol order before any work is
+ * handed out, and symbols are grouped into fixed-size blocks, so the thread count only
+ * changes how fast the data is produced, never what it contains.
+ */
+public class SyntheticMarketGenerator {
+    private static final double TRADING_DAYS_PER_YEAR = 252.0;
+
+    private final Settings settings;
+
+    public static class Settings {
+        public long seed = 42;
+        public int symbols = 100;
+        public int days = 252 * 10;
+        public LocalDate startDate = LocalDate.of(2000, 1, 3);
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int symbolsPerBlock = 500;
+
+        public double annualDrift = 0.07;
+        public double calmVolatility = 0.18;
+        public double stressedVolatility = 0.45;
+        public double calmToStressed = 0.01;     // Daily probability of entering the stressed regime
+        public double stressedToCalm = 0.05;     // Daily probability of leaving it
+        public double minCorrelation = 0.2;      // Range of each symbol's loading on the market factor
+        public double maxCorrelation = 0.7;
+        public double jumpsPerYear = 3.0;
+        public double jumpMean = -0.01;
+        public double jumpStdDev = 0.06;
+    }
+
+    /**
+     * Receives the generated symbols of one block, in symbol order, from a single thread.
+     */
+    public interface BlockSink extends Closeable {
+        void accept(BarSeries series) throws IOException;
+    }
+
+    /**
+     * Opens the sink for a block; called from the worker that generates the block.
+     */
+    public interface SinkFactory {
+        BlockSink open(int block) throws IOException;
+    }
+
+    public SyntheticMarketGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static String symbolName(int index) {
+        return String.format("SYN%05d", index);
+    }
+
+    /**
+     * Generates every symbol and returns the number of bars produced.
+     */
+    public long generate(SinkFactory sinks) throws IOException {
+        SplittableRandom root = new SplittableRandom(settings.seed);
+        MarketPath market = new MarketPath(root.split());
+
+        // Split per-symbol generators up front so the sequence does not depend on scheduling
+        SplittableRandom[] symbolRandoms = new SplittableRandom[settings.symbols];
+        for (int i = 0; i < settings.symbols; i++) {
+            symbolRandoms[i] = root.split();
+        }
+
+        int blocks = (settings.symbols + settings.symbolsPerBlock - 1) / settings.symbolsPerBlock;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, settings.threads));
+        AtomicLong bars = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int block = 0; block < blocks; block++) {
+                int blockIndex = block;
+                futures.add(executor.submit(() -> {
+                    int first = blockIndex * settings.symbolsPerBlock;
+                    int last = Math.min(settings.symbols, first + settings.symbolsPerBlock);
+                    try (BlockSink sink = sinks.open(blockIndex)) {
+                        for (int i = first; i < last; i++) {
+                            BarSeries series = generateSymbol(symbolName(i), symbolRandoms[i], market);
+                            sink.accept(series);
+                            bars.addAndGet(series.size());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Generation failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return bars.get();
+    }
+
+    /**
+     * Generates straight into a bar store.
+     */
+    public long generateInto(BarStore store) throws IOException {
+        return generate(block -> new BlockSink() {
+            @Override
+            public void accept(BarSeries series) {
+                store.merge(series);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    // Market-wide trading calendar, volatility regime and factor shocks, shared by all symbols
+    private class MarketPath {
+        final int[] dates;
+        final boolean[] stressed;
+        final double[] factor;
+
+        MarketPath(SplittableRandom random) {
+            int n = settings.days;
+            dates = new int[n];
+            stressed = new boolean[n];
+            factor = new double[n];
+
+            LocalDate date = settings.startDate;
+            boolean inStress = false;
+            Gaussian gaussian = new Gaussian(random);
+            for (int t = 0; t < n; t++) {
+                while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                    date = date.plusDays(1);
+                }
+                dates[t] = (int) date.toEpochDay();
+                date = date.plusDays(1);
+
+                double u = random.nextDouble();
+                inStress = inStress ? u >= settings.stressedToCalm : u < settings.calmToStressed;
+                stressed[t] = inStress;
+                factor[t] = gaussian.next();
+            }
+        }
+    }
+
+    private BarSeries generateSymbol(String symbol, SplittableRandom random, MarketPath market) {
+        Gaussian gaussian = new Gaussian(random);
+        int n = settings.days;
+        double dt = 1.0 / TRADING_DAYS_PER_YEAR;
+        double sqrtDt = Math.sqrt(dt);
+        double jumpProbability = settings.jumpsPerYear * dt;
+
+        // Per-symbol characteristics
+        double correlation = settings.minCorrelation + random.nextDouble() * (settings.maxCorrelation - settings.minCorrelation);
+        double idiosyncraticWeight = Math.sqrt(1 - correlation * correlation);
+        double volatilityScale = 0.6 + random.nextDouble() * 0.9;
+        double price = Math.exp(Math.log(10) + random.nextDouble() * Math.log(100)); // 10 to 1000, log-uniform
+        double baseVolume = Math.exp(Math.log(1e5) + random.nextDouble() * Math.log(1e3));
+
+        int[] dates = new int[n];
+        double[] open = new double[n];
+        double[] high = new double[n];
+        double[] low = new double[n];
+        double[] close = new double[n];
+        double[] volume = new double[n];
+
+        for (int t = 0; t < n; t++) {
+            double sigma = volatilityScale * (market.stressed[t] ? settings.stressedVolatility : settings.calmVolatility);
+            double shock = correlation * market.factor[t] + idiosyncraticWeight * gaussian.next();
+            double logReturn = (settings.annualDrift - 0.5 * sigma * sigma) * dt + sigma * sqrtDt * shock;
+            if (random.nextDouble() < jumpProbability) {
+                logReturn += settings.jumpMean + settings.jumpStdDev * gaussian.next();
+            }
+
+            // Part of the move happens overnight as a gap, the rest intraday
+            double gap = 0.3 * logReturn + 0.1 * sigma * sqrtDt * gaussian.next();
+            double o = price * Math.exp(gap);
+            double c = price * Math.exp(logReturn);
+            double range = sigma * sqrtDt * 0.5;
+            double h = Math.max(o, c) * Math.exp(Math.abs(gaussian.next()) * range);
+            double l = Math.min(o, c) * Math.exp(-Math.abs(gaussian.next()) * range);
+            // Volume rises with the size of the move
+            double v = Math.floor(baseVolume * Math.exp(0.3 * gaussian.next()) * (1 + 20 * Math.abs(logReturn)));
+
+            dates[t] = market.dates[t];
+            open[t] = o;
+            high[t] = h;
+            low[t] = l;
+            close[t] = c;
+            volume[t] = v;
+            price = c;
+        }
+
+        return new BarSeries(symbol, dates, open, high, low, close, volume, true);
+    }
+
+    // Marsaglia polar method, spelled out rather than SplittableRandom.nextGaussian, whose algorithm
+    // the JDK does not specify; a seed has to give the same market on every JDK
+    private static class Gaussian {
+        private final SplittableRandom random;
+        private double spare;
+        private boolean hasSpare;
+
+        Gaussian(SplittableRandom random) {
+            this.random = random;
+        }
+
+        double next() {
+            if (hasSpare) {
+                hasSpare = false;
+                return spare;
+            }
+            double u;
+            double v;
+            double s;
+            do {
+                u = random.nextDouble() * 2 - 1;
+                v = random.nextDouble() * 2 - 1;
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            double scale = Math.sqrt(-2 * Math.log(s) / s);
+            spare = v * scale;
+            hasSpare = true;
+            return u * scale;
+        }
+    }
+
+    /**
+     * Writes each block as one vendor-style dump file ({@code Symbol,Date,Open,High,Low,Close,Volume})
+     * that {@link BulkCsvImporter} can read back.
+     */
+    public static SinkFactory dumpFiles(File directory) {
+        directory.mkdirs();
+        return block -> {
+            Writer writer = new BufferedWriter(new FileWriter(new File(directory, String.format("synthetic-%05d.csv", block))), 1 << 16);
+            writer.write("Symbol,Date,Open,High,Low,Close,Volume\n");
+            return new BlockSink() {
+                private final StringBuilder line = new StringBuilder(96);
+
+                @Override
+                public void accept(BarSeries series) throws IOException {
+                    for (int i = 0; i < series.size(); i++) {
+                        line.setLength(0);
+                        line.append(series.getSymbol()).append(',')
+                            .append(LocalDate.ofEpochDay(series.dateAt(i))).append(',')
+                            .append(round4(series.openAt(i))).append(',')
+                            .append(round4(series.highAt(i))).append(',')
+                            .append(round4(series.lowAt(i))).append(',')
+                            .append(round4(series.closeAt(i))).append(',')
+                            .append((long) series.volumeAt(i)).append('\n');
+                        writer.append(line);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
+        };
+    }
+
+    /**
+     * Writes every symbol as data/json and data/csv files under the given data directory.
+     */
+    public static SinkFactory seriesFiles(File dataDirectory) {
+        return block -> new BlockSink() {
+            @Override
+            public void accept(BarSeries series) throws IOException {
+                BulkCsvImporter.writeSeriesFiles(series, dataDirectory);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static double round4(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    /**
+     * Usage: SyntheticMarketGenerator [--seed N] [--symbols N] [--days N] [--threads N]
+     *        [--start YYYY-MM-DD] [--format dump|files|store] [--out DIR]
+     */
+    public static void main(String[] args) throws IOException {
+        Settings settings = new Settings();
+        String format = "dump";
+        File out = new File("data/synthetic");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed": settings.seed = Long.parseLong(args[++i]); break;
+                case "--symbols": settings.symbols = Integer.parseInt(args[++i]); break;
+                case "--days": settings.days = Integer.parseInt(args[++i]); break;
+                case "--threads": settings.threads = Integer.parseInt(args[++i]); break;
+                case "--start": settings.startDate = LocalDate.parse(args[++i]); break;
+                case "--format": format = args[++i]; break;
+                case "--out": out = new File(args[++i]); break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        SyntheticMarketGenerator generator = new SyntheticMarketGenerator(settings);
+        long startTime = System.nanoTime();
+        long bars;
+        switch (format) {
+            case "dump": bars = generator.generate(dumpFiles(out)); break;
+            case "files": bars = generator.generate(seriesFiles(out)); break;
+            case "store": bars = generator.generateInto(new BarStore()); break;
+            default:
+                System.err.println("Unknown format: " + format);
+                System.exit(1);
+                return;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.println(String.format("Generated %d bars for %d symbols in %.2f s (%.0f bars/s) using seed %d",
+            bars, settings.symbols, seconds, bars / seconds, settings.seed));
+    }
+}
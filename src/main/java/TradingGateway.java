@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A broker the server can trade through: eToro's virtual portfolio ({@link EToroIntegration})
+ * or the in-process {@link PaperBroker}, chosen with {@code trading.gateway}.
+ *
+ * Position sizing is shared by every implementation and lives here.
+ */
+public interface TradingGateway {
+    boolean login(String username, String password);
+
+    /**
+     * The balance to show the user; may be a placeholder when the broker can't be reached.
+     */
+    double getPortfolioBalance();
+
+    /**
+     * The balance as the broker reports it, or null when there is no real figure to
+     * reconcile against.
+     */
+    Double fetchBrokerBalance();
+
+    /**
+     * Sends one order and returns the fill price, or null if the broker doesn't report one (as
+     * for a limit or stop order that rests). IOException means the order may be retried; a
+     * rejection is final.
+     */
+    Double submitOrder(OrderOutbox.Order order) throws IOException, OrderOutbox.RejectedOrderException;
+
+    /**
+     * Latest price for sizing, or a value of zero or less when none is known.
+     */
+    double getCurrentPrice(String symbol);
+
+    Map<String, Object> getTradingSignals(String symbol);
+
+    default boolean executeTrade(String symbol, int quantity, boolean isBuy) {
+        try {
+            submitOrder(new OrderOutbox.Order(UUID.randomUUID().toString(), symbol, quantity, isBuy,
+                                              System.currentTimeMillis()));
+            return true;
+        } catch (OrderOutbox.RejectedOrderException e) {
+            System.err.println("Trade failed: " + e.getMessage());
+            return false;
+        } catch (Exception e) {
+            System.err.println("Error executing trade: " + e.getMessage());
+            return false;
+        }
+    }
+
+    default boolean executeAutomatedTrade(String symbol, double predictedChange, double confidence) {
+        int quantity = automatedTradeQuantity(symbol, predictedChange, confidence);
+        // Execute trade based on predicted change direction
+        return quantity > 0 && executeTrade(symbol, quantity, predictedChange > 0);
+    }
+
+    /**
+     * Sizes an automated trade from the broker balance, the predicted change and the
+     * confidence; returns 0 when no trade should be placed.
+     */
+    default int automatedTradeQuantity(String symbol, double predictedChange, double confidence) {
+        return automatedTradeQuantity(symbol, predictedChange, confidence, getPortfolioBalance());
+    }
+
+    /**
+     * Same, from a balance the caller already has, such as the local ledger's cash.
+     */
+    default int automatedTradeQuantity(String symbol, double predictedChange, double confidence, double balance) {
+        return automatedTradeQuantity(symbol, predictedChange, confidence, balance, null);
+    }
+
+    /**
+     * Same, risking the 2% against a calibrated stop-loss (a fraction of the price) instead of
+     * one guessed from the predicted change; null keeps the guess.
+     */
+    default int automatedTradeQuantity(String symbol, double predictedChange, double confidence, double balance,
+                                       Double calibratedStopLoss) {
+        try {
+            if (balance <= 0) {
+                System.err.println("Insufficient balance or error getting balance");
+                return 0;
+            }
+            
+            // Enhanced position sizing calculation
+            double maxRiskPercent = 0.02; // Maximum 2% risk per trade
+            double volatility = Math.abs(predictedChange) * 0.5; // Use half of predicted change as volatility estimate
+            double stopLossPercent = calibratedStopLoss != null && calibratedStopLoss > 0
+                ? calibratedStopLoss : Math.max(0.02, volatility * 0.5); // Minimum 2% stop loss
+            double takeProfitPercent = Math.max(stopLossPercent * 1.5, Math.abs(predictedChange)); // Minimum 1.5:1 reward:risk
+            
+            // Calculate maximum position size based on risk
+            double maxRiskAmount = balance * maxRiskPercent;
+            double positionSize = maxRiskAmount / stopLossPercent;
+            
+            // Adjust position size based on confidence
+            positionSize = positionSize * confidence;
+            
+            // Get current stock price
+            double currentPrice = getCurrentPrice(symbol);
+            if (currentPrice <= 0) {
+                System.err.println("Error getting current price for " + symbol);
+                return 0;
+            }
+            
+            // Calculate quantity
+            int quantity = (int)(positionSize / currentPrice);
+            if (quantity <= 0) {
+                System.err.println("Position size too small for " + symbol);
+                return 0;
+            }
+            
+            // Log trade details
+            System.out.println("Trade Details for " + symbol + ":");
+            System.out.println("Position Size: $" + String.format("%.2f", positionSize));
+            System.out.println("Quantity: " + quantity);
+            System.out.println("Stop Loss: " + String.format("%.1f", stopLossPercent * 100) + "%");
+            System.out.println("Take Profit: " + String.format("%.1f", takeProfitPercent * 100) + "%");
+            System.out.println("Risk/Reward Ratio: " + String.format("%.2f", takeProfitPercent / stopLossPercent));
+            return quantity;
+            
+        } catch (Exception e) {
+            System.err.println("Error in automated trading: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Trades the whole universe on the server's own predictions.
+ *
+ * Every published ranking is handed to {@link #onRanking}. Symbols whose prediction changed
+ * are queued on their own lane, and lanes run in parallel on the fan-out pool. A lane
+ * evaluates one prediction at a time, in arrival order, and keeps only the newest one waiting,
+ * so a symbol never has two decisions in flight and never trades on a superseded prediction.
+ *
+ * A prediction becomes an order when its recommendation is a buy or sell, its confidence is at
+ * least {@code autotrade.min.confidence} and the price is fresh. It is sized like
+ * {@code /etoro-auto-trade}, then clipped by the risk limits: per-symbol position and gross
+ * exposure as a percentage of equity, the portfolio VaR limit of the {@link RiskEngine}, no
+ * shorting unless allowed, a per-symbol cooldown and an order rate limit. The limits count the
+ * ledger plus a book of the server's orders that are queued but not yet filled: sizing and
+ * reserving in that book is one step under a lock, and the outbox listener releases an order
+ * once its fill is in the ledger, so lanes deciding in parallel can't each spend the same cash.
+ *
+ * Orders go to the order outbox with a client order ID built from the symbol, bar date and
+ * side. The outbox forgets old IDs, so the scheduler also keeps the latest bar date traded for
+ * each symbol and side, and never trades that bar or an earlier one again. The server rebuilds
+ * those dates on start from the IDs in the ledger's fills and the outbox's journal, through
+ * {@link #rememberTraded}.
+ */
+public class TradingScheduler {
+    /**
+     * Where orders go; the server passes the order outbox.
+     */
+    public interface OrderSink {
+        OrderOutbox.OrderStatus submit(String clientOrderId, String symbol, int quantity, boolean buy)
+            throws IOException, OrderOutbox.ConflictingOrderException;
+    }
+
+    // One prediction waiting on a lane, with the ranking pass it came from
+    private record Signal(PredictionResult prediction, long queuedAt, Pass pass) {
+    }
+
+    // A queued order's claim: signed shares, and the cash a buy will spend
+    private record Reservation(String symbol, int quantity, double cash) {
+    }
+
+    private final TradingGateway gateway;
+    private final PortfolioLedger ledger;
+    private final PriceService prices;
+    private final RiskEngine risk;
+    private final OrderSink orders;
+    private final Executor executor;
+    private final double minConfidence;
+    private final double maxPositionPercent;
+    private final double maxGrossPercent;
+    private final boolean allowShort;
+    private final long cooldownMillis;
+    private final int maxOrdersPerMinute;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong minute = new AtomicLong();
+    private final AtomicInteger ordersThisMinute = new AtomicInteger();
+
+    private final Object bookLock = new Object();
+    private final Map<String, Reservation> reservations = new HashMap<>(); // By client order ID, guarded by bookLock
+    private final Map<String, Integer> pendingQuantity = new HashMap<>(); // Signed, per symbol, guarded by bookLock
+    private double pendingCash; // Guarded by bookLock
+    // Latest bar date ordered per symbol and side, as "AAPL-buy" -> "2026-10-16"
+    private final Map<String, String> tradedBars = new ConcurrentHashMap<>();
+
+    private final AtomicLong signals = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong ordersPlaced = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, AtomicLong> skipped = new ConcurrentHashMap<>();
+    private final AtomicLong totalDecisionNanos = new AtomicLong();
+    private final AtomicLong maxDecisionNanos = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private volatile long lastPassMillis;
+    private volatile int lastPassSymbols;
+
+    public TradingScheduler(TradingGateway gateway, PortfolioLedger ledger, PriceService prices, RiskEngine risk,
+                            OrderSink orders, Executor executor, Properties props) {
+        this.gateway = gateway;
+        this.ledger = ledger;
+        this.prices = prices;
+        this.risk = risk;
+        this.orders = orders;
+        this.executor = executor;
+        this.minConfidence = Double.parseDouble(props.getProperty("autotrade.min.confidence", "0.8"));
+        this.maxPositionPercent = Double.parseDouble(props.getProperty("autotrade.max.position.percent", "10"));
+        this.maxGrossPercent = Double.parseDouble(props.getProperty("autotrade.max.gross.percent", "100"));
+        this.allowShort = Boolean.parseBoolean(props.getProperty("autotrade.allow.short", "false"));
+        this.cooldownMillis = Long.parseLong(props.getProperty("autotrade.cooldown.seconds", "300")) * 1000;
+        this.maxOrdersPerMinute = Integer.parseInt(props.getProperty("autotrade.max.orders.per.minute", "60"));
+    }
+
+    /**
+     * Queues every prediction in the ranking that differs from the last one seen for its symbol.
+     */
+    public void onRanking(List<PredictionResult> predictions) {
+        long now = System.nanoTime();
+        List<PredictionResult> changed = new ArrayList<>();
+        for (PredictionResult prediction : predictions) {
+            Lane lane = lanes.computeIfAbsent(prediction.symbol(), Lane::new);
+            if (lane.lastSeen == prediction) {
+                unchanged.incrementAndGet(); // Same instance as last time, nothing new to decide
+            } else {
+                lane.lastSeen = prediction;
+                changed.add(prediction);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        Pass pass = new Pass(changed.size(), now);
+        for (PredictionResult prediction : changed) {
+            signals.incrementAndGet();
+            lanes.get(prediction.symbol()).offer(new Signal(prediction, now, pass));
+        }
+    }
+
+    /**
+     * Marks the bars that earlier automated orders traded, from their client order IDs; other
+     * IDs are ignored.
+     */
+    public void rememberTraded(Collection<String> clientOrderIds) {
+        for (String id : clientOrderIds) {
+            // auto-SYMBOL-yyyy-MM-dd-side; the symbol may itself contain dashes
+            int side = id != null && id.startsWith("auto-") ? id.lastIndexOf('-') : -1;
+            if (side < "auto-".length() + 12) {
+                continue;
+            }
+            String date = id.substring(side - 10, side);
+            try {
+                LocalDate.parse(date);
+            } catch (DateTimeParseException e) {
+                continue;
+            }
+            String symbol = id.substring("auto-".length(), side - 11);
+            tradedBars.merge(symbol + id.substring(side), date, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+        }
+    }
+
+    /**
+     * Counts a server order queued elsewhere (by hand, or replayed after a restart) against the
+     * limits until it settles.
+     */
+    public void track(OrderOutbox.OrderStatus status) {
+        if (status.account() != null || !OrderOutbox.PENDING.equals(status.state())) {
+            return;
+        }
+        Double price = prices.price(status.symbol());
+        boolean buy = "buy".equals(status.side());
+        synchronized (bookLock) {
+            if (!reservations.containsKey(status.clientOrderId())) {
+                reserve(status.clientOrderId(), status.symbol(), buy ? status.quantity() : -status.quantity(),
+                        buy && price != null ? status.quantity() * price : 0);
+            }
+        }
+    }
+
+    /**
+     * Releases an order's reservation once it has an outcome. The server calls this from the
+     * outbox listener after the fill is in the ledger, so the order is never counted by neither.
+     */
+    public void settled(OrderOutbox.OrderStatus status) {
+        if (!OrderOutbox.PENDING.equals(status.state())) {
+            release(status.clientOrderId());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long done = evaluated.get();
+        stats.put("symbols", lanes.size());
+        stats.put("signals", signals.get());
+        stats.put("unchanged", unchanged.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("evaluated", done);
+        stats.put("orders", ordersPlaced.get());
+        stats.put("errors", errors.get());
+        Map<String, Long> skips = new LinkedHashMap<>();
+        skipped.forEach((reason, count) -> skips.put(reason, count.get()));
+        stats.put("skipped", skips);
+        stats.put("avgDecisionMillis", done > 0 ? totalDecisionNanos.get() / done / 1_000_000.0 : 0.0);
+        stats.put("maxDecisionMillis", maxDecisionNanos.get() / 1_000_000.0);
+        stats.put("passes", passes.get());
+        stats.put("lastPassSymbols", lastPassSymbols);
+        stats.put("lastPassMillis", lastPassMillis);
+        synchronized (bookLock) {
+            stats.put("pendingOrders", reservations.size());
+            stats.put("pendingCash", pendingCash);
+        }
+        return stats;
+    }
+
+    // Runs on the symbol's lane only, so the lane's fields need no lock
+    private void evaluate(Lane lane, Signal signal) {
+        PredictionResult prediction = signal.prediction();
+        String reason = decide(lane, prediction);
+        if (reason != null) {
+            skipped.computeIfAbsent(reason, k -> new AtomicLong()).incrementAndGet();
+        }
+        long elapsed = System.nanoTime() - signal.queuedAt();
+        evaluated.incrementAndGet();
+        totalDecisionNanos.addAndGet(elapsed);
+        maxDecisionNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    // Places the order the prediction calls for; returns why it didn't, or null if it did
+    private String decide(Lane lane, PredictionResult prediction) {
+        TradingSignals tradingSignals = prediction.tradingSignals();
+        if (!prediction.success() || tradingSignals == null || prediction.stale() || prediction.date() == null) {
+            return "noSignal";
+        }
+        String recommendation = String.valueOf(tradingSignals.recommendation());
+        boolean buy = recommendation.endsWith("Buy");
+        if (!buy && !recommendation.endsWith("Sell")) {
+            return "hold";
+        }
+        if (tradingSignals.confidence() < minConfidence) {
+            return "lowConfidence";
+        }
+        long now = System.currentTimeMillis();
+        if (now - lane.lastOrderAt < cooldownMillis) {
+            return "cooldown";
+        }
+        String symbol = prediction.symbol();
+        double price = prices.currentPrice(symbol);
+        if (price <= 0) {
+            return "noPrice";
+        }
+
+        String side = symbol + "-" + (buy ? "buy" : "sell");
+        String lastTraded = tradedBars.get(side);
+        if (lastTraded != null && lastTraded.compareTo(prediction.date()) >= 0) {
+            return "alreadyTraded";
+        }
+        String clientOrderId = "auto-" + symbol + "-" + prediction.date() + "-" + (buy ? "buy" : "sell");
+        int quantity;
+        synchronized (bookLock) {
+            if (reservations.containsKey(clientOrderId)) {
+                return "pending";
+            }
+            // One read of the ledger, plus what is queued but not yet filled
+            PortfolioLedger.State state = ledger.state();
+            Map<String, PortfolioLedger.Position> positions = withPending(state.positions());
+            PortfolioLedger.Position position = positions.get(symbol);
+            int held = position != null ? position.quantity() : 0;
+            double equity = state.cash() + grossExposure(state.positions());
+            if (equity <= 0) {
+                return "noEquity";
+            }
+            double gross = grossExposure(positions);
+
+            // The prediction's stop-loss is the calibrated one when the calibrator is on
+            quantity = gateway.automatedTradeQuantity(symbol, tradingSignals.predictedChange(), tradingSignals.confidence(),
+                                                      state.cash() - pendingCash, tradingSignals.stopLossPercent() / 100);
+            if (!buy && !allowShort) {
+                quantity = Math.min(quantity, Math.max(0, held));
+                if (quantity <= 0) {
+                    return "noPosition";
+                }
+            }
+            // Clip so the position and the book stay inside their limits
+            int after = held + (buy ? quantity : -quantity);
+            double positionRoom = equity * maxPositionPercent / 100 - Math.abs(held) * price;
+            if (Math.abs(after) > Math.abs(held)) {
+                quantity = Math.min(quantity, (int) Math.floor(Math.max(0, positionRoom) / price));
+                double grossRoom = equity * maxGrossPercent / 100 - gross;
+                quantity = Math.min(quantity, (int) Math.floor(Math.max(0, grossRoom) / price));
+            }
+            if (quantity <= 0) {
+                return "riskLimit";
+            }
+            // Correlation with what is already held: keep portfolio VaR inside its limit
+            quantity = Math.min(quantity, risk.maxTradeQuantity(symbol, buy, price, positions, prices::price, equity));
+            if (quantity <= 0) {
+                return "varLimit";
+            }
+            if (!takeOrderSlot()) {
+                return "rateLimit";
+            }
+            reserve(clientOrderId, symbol, buy ? quantity : -quantity, buy ? quantity * price : 0);
+        }
+
+        try {
+            OrderOutbox.OrderStatus status = orders.submit(clientOrderId, symbol, quantity, buy);
+            settled(status); // An order the outbox already had may have settled before the reservation
+            tradedBars.put(side, prediction.date());
+            lane.lastOrderAt = now;
+            ordersPlaced.incrementAndGet();
+            return null;
+        } catch (IOException | OrderOutbox.ConflictingOrderException | RuntimeException e) {
+            release(clientOrderId);
+            errors.incrementAndGet();
+            System.err.println("Automated trading: could not queue " + clientOrderId + ": " + e.getMessage());
+            return "error";
+        }
+    }
+
+    // Market value of the positions, each at its latest price or else its cost
+    private double grossExposure(Map<String, PortfolioLedger.Position> positions) {
+        double gross = 0;
+        for (PortfolioLedger.Position p : positions.values()) {
+            Double mark = prices.price(p.symbol());
+            gross += Math.abs(p.quantity()) * (mark != null ? mark : p.averageCost());
+        }
+        return gross;
+    }
+
+    // The ledger's positions as they will be once every queued order fills; caller holds bookLock
+    private Map<String, PortfolioLedger.Position> withPending(Map<String, PortfolioLedger.Position> positions) {
+        if (pendingQuantity.isEmpty()) {
+            return positions;
+        }
+        Map<String, PortfolioLedger.Position> combined = new HashMap<>(positions);
+        pendingQuantity.forEach((symbol, pending) -> {
+            PortfolioLedger.Position held = combined.get(symbol);
+            int quantity = (held != null ? held.quantity() : 0) + pending;
+            if (quantity == 0) {
+                combined.remove(symbol);
+            } else {
+                Double mark = prices.price(symbol);
+                double cost = held != null ? held.averageCost() : mark != null ? mark : 0;
+                combined.put(symbol, new PortfolioLedger.Position(symbol, quantity, cost,
+                                                                  held != null ? held.realizedPnl() : 0));
+            }
+        });
+        return combined;
+    }
+
+    // Caller holds bookLock
+    private void reserve(String clientOrderId, String symbol, int quantity, double cash) {
+        reservations.put(clientOrderId, new Reservation(symbol, quantity, cash));
+        pendingQuantity.merge(symbol, quantity, Integer::sum);
+        pendingQuantity.remove(symbol, 0);
+        pendingCash += cash;
+    }
+
+    /**
+     * Drops an order's reservation, whatever its state; a no-op if it has none.
+     */
+    public void release(String clientOrderId) {
+        synchronized (bookLock) {
+            Reservation reservation = reservations.remove(clientOrderId);
+            if (reservation != null) {
+                pendingQuantity.merge(reservation.symbol(), -reservation.quantity(), Integer::sum);
+                pendingQuantity.remove(reservation.symbol(), 0);
+                pendingCash -= reservation.cash();
+                if (reservations.isEmpty()) {
+                    pendingCash = 0; // No rounding left behind
+                }
+            }
+        }
+    }
+
+    // Fixed one-minute window across all symbols
+    private boolean takeOrderSlot() {
+        if (maxOrdersPerMinute <= 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis() / 60_000;
+        long current = minute.get();
+        if (now != current && minute.compareAndSet(current, now)) {
+            ordersThisMinute.set(0);
+        }
+        return ordersThisMinute.incrementAndGet() <= maxOrdersPerMinute;
+    }
+
+    /**
+     * Serial executor for one symbol. Holds at most one waiting signal; a newer one replaces it.
+     */
+    private class Lane {
+        private final String symbol;
+        private final AtomicReference<Signal> waiting = new AtomicReference<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Touched by onRanking, which the ranking thread calls one snapshot at a time
+        private volatile PredictionResult lastSeen;
+        private long lastOrderAt; // Lane thread only
+
+        Lane(String symbol) {
+            this.symbol = symbol;
+        }
+
+        void offer(Signal signal) {
+            Signal replaced = waiting.getAndSet(signal);
+            if (replaced != null) {
+                coalesced.incrementAndGet();
+                replaced.pass().done();
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Signal signal;
+                while ((signal = waiting.getAndSet(null)) != null) {
+                    try {
+                        evaluate(this, signal);
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                        System.err.println("Automated trading: error evaluating " + symbol + ": " + e.getMessage());
+                    } finally {
+                        signal.pass().done();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // A signal offered after the last poll but before the flag cleared
+                if (waiting.get() != null) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    // Times one ranking from publication until every symbol it changed has been decided
+    private class Pass {
+        private final AtomicInteger remaining;
+        private final int symbols;
+        private final long startedAt;
+
+        Pass(int symbols, long startedAt) {
+            this.remaining = new AtomicInteger(symbols);
+            this.symbols = symbols;
+            this.startedAt = startedAt;
+        }
+
+        void done() {
+            if (remaining.decrementAndGet() == 0) {
+                lastPassMillis = (System.nanoTime() - startedAt) / 1_000_000;
+                lastPassSymbols = symbols;
+                passes.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Trading signals derived from one prediction. Field names are the JSON keys the
+ * dashboard reads; the next-day fields are null while the market is open.
+ */
+public record TradingSignals(
+    Double nextDayPredictedOpen,
+    Double nextDayPredictedChange,
+    String dataSource,
+    double stopLossPercent,
+    double takeProfitPercent,
+    double riskRewardRatio,
+    double predictedChange,
+    double openToCloseChange,
+    double currentToPredictedChange,
+    double confidence,
+    String sentiment,
+    String recommendation) {
+}
@@ -0,0 +1,280 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Loads stock data and trains models for every symbol in a {@link SymbolUniverse}.
+ *
+ * Symbols are spread over a fixed number of shards, each with its own work queue and a
+ * single worker thread, so the number of concurrent Alpha Vantage calls is bounded by the
+ * shard count no matter how large the universe is. Workers only pause between symbols
+ * when they actually called the API, so symbols served from the on-disk cache load at
+ * full speed. Model training runs on the shared {@link ExecutionLayer} CPU pool.
+ *
+ * Every load is reported to a {@link SymbolLoadTracker}; background refreshes of a symbol
+ * that is already queued are dropped, so on-demand revalidation cannot flood the shards.
+ */
+public class UniversePrefetcher {
+    private static final long RATE_LIMIT_BACKOFF_MILLIS = 30000;
+
+    private final SymbolUniverse universe;
+    private final String apiKey;
+    private final Map<String, List<StockDataManager.StockEntry>> dataCache;
+    private final Map<String, Model> modelCache;
+    private final BarStore barStore;
+    private final SymbolLoadTracker tracker;
+    private final long apiDelayMillis;
+    private final long symbolBudgetMillis;
+
+    private final List<BlockingQueue<PrefetchTask>> shards = new ArrayList<>();
+    private final ExecutorService shardWorkers;
+    private final ExecutorService trainingExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger trained = new AtomicInteger();
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private volatile Consumer<String> updateListener = symbol -> { };
+
+    // Work item for a shard queue; the latch is null for background refreshes
+    private static class PrefetchTask {
+        final String symbol;
+        final CountDownLatch done;
+
+        PrefetchTask(String symbol, CountDownLatch done) {
+            this.symbol = symbol;
+            this.done = done;
+        }
+    }
+
+    public UniversePrefetcher(SymbolUniverse universe, String apiKey,
+                              Map<String, List<StockDataManager.StockEntry>> dataCache,
+                              Map<String, Model> modelCache, BarStore barStore,
+                              SymbolLoadTracker tracker, int shardCount, long apiDelayMillis, long symbolBudgetMillis) {
+        this.universe = universe;
+        this.apiKey = apiKey;
+        this.dataCache = dataCache;
+        this.modelCache = modelCache;
+        this.barStore = barStore;
+        this.tracker = tracker;
+        this.apiDelayMillis = apiDelayMillis;
+        this.symbolBudgetMillis = symbolBudgetMillis;
+
+        int shardTotal = Math.max(1, shardCount);
+        this.shardWorkers = Executors.newFixedThreadPool(shardTotal, ExecutionLayer.namedThreads("prefetch-shard", true));
+        this.trainingExecutor = ExecutionLayer.shared().cpu();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("prefetch-scheduler", true));
+
+        for (int i = 0; i < shardTotal; i++) {
+            BlockingQueue<PrefetchTask> queue = new LinkedBlockingQueue<>();
+            shards.add(queue);
+            shardWorkers.submit(() -> drain(queue));
+        }
+    }
+
+    /**
+     * Loads every symbol in the universe and blocks until all of them are loaded and
+     * trained, or until the estimated time for the universe has elapsed. Progress is
+     * logged every {@code progressSeconds}.
+     */
+    public void prefetch(long progressSeconds) {
+        int total = universe.size();
+        System.out.println("Loading stock data for " + total + " symbols across " + shards.size() + " shards...");
+
+        long startTime = System.currentTimeMillis();
+        CountDownLatch latch = new CountDownLatch(total);
+        for (String symbol : universe.symbols()) {
+            enqueue(new PrefetchTask(symbol, latch));
+        }
+
+        // Worst case each shard spends its per-symbol budget plus the API delay on every symbol
+        long symbolsPerShard = (total + shards.size() - 1) / shards.size();
+        long timeoutMillis = Math.max(60000, symbolsPerShard * (apiDelayMillis + symbolBudgetMillis));
+        System.out.println("Expecting data loading to finish within " + (timeoutMillis / 1000) + " seconds");
+
+        ScheduledFuture<?> progress = scheduler.scheduleAtFixedRate(
+            () -> logProgress(total, latch, startTime), progressSeconds, progressSeconds, TimeUnit.SECONDS);
+
+        try {
+            if (!latch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                System.err.println("Timeout waiting for data loading, " + latch.getCount() +
+                                 " symbols will finish loading in the background");
+            }
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted while waiting for data loading");
+            Thread.currentThread().interrupt();
+        } finally {
+            progress.cancel(false);
+        }
+
+        System.out.println("Data loading completed in " + ((System.currentTimeMillis() - startTime) / 1000) +
+                         " seconds. Cached data for " + dataCache.size() + " symbols, " +
+                         modelCache.size() + " trained models, " + failed.get() + " failures");
+    }
+
+    /**
+     * Re-queues each tier's symbols at that tier's refresh interval.
+     */
+    public void scheduleRefresh() {
+        universe.symbolsByTier().forEach((tier, symbols) -> {
+            long minutes = universe.refreshMinutes(tier);
+            if (minutes <= 0) {
+                return;
+            }
+            System.out.println("Refreshing " + symbols.size() + " " + tier + " tier symbols every " + minutes + " minutes");
+            scheduler.scheduleAtFixedRate(() -> {
+                for (String symbol : symbols) {
+                    enqueue(new PrefetchTask(symbol, null));
+                }
+            }, minutes, minutes, TimeUnit.MINUTES);
+        });
+    }
+
+    /**
+     * Called with the symbol whenever a symbol gets new bars and a newly trained model.
+     */
+    public void setUpdateListener(Consumer<String> updateListener) {
+        this.updateListener = updateListener;
+    }
+
+    /**
+     * Queues a background reload of the symbol unless one is already queued.
+     */
+    public void revalidate(String symbol) {
+        enqueue(new PrefetchTask(symbol, null));
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        shardWorkers.shutdownNow();
+    }
+
+    private void enqueue(PrefetchTask task) {
+        // Startup tasks carry a latch and must always run; refreshes are deduplicated
+        if (!queued.add(task.symbol) && task.done == null) {
+            return;
+        }
+        // Round-robin keeps tiers interleaved evenly across shards
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        shards.get(shard).add(task);
+    }
+
+    private void drain(BlockingQueue<PrefetchTask> queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                load(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void load(PrefetchTask task) throws InterruptedException {
+        String symbol = task.symbol;
+        queued.remove(symbol);
+        tracker.loading(symbol);
+        boolean trainingSubmitted = false;
+        StockDataManager stockManager = new StockDataManager(apiKey);
+        stockManager.setSymbol(symbol);
+
+        try {
+            // Bulk imported symbols are authoritative and only need training
+            List<StockDataManager.StockEntry> cached = dataCache.get(symbol);
+            boolean hasModel = modelCache.containsKey(symbol);
+            boolean imported = tracker.get(symbol).source == SymbolLoadTracker.Source.IMPORT;
+            List<StockDataManager.StockEntry> data = cached;
+            if (cached == null || cached.isEmpty() || hasModel || !imported) {
+                data = stockManager.fetchAndSaveStockData(symbol);
+            }
+            SymbolLoadTracker.Source source = imported && data == cached
+                ? SymbolLoadTracker.Source.IMPORT : SymbolLoadTracker.Source.FETCH;
+
+            if (data != null && !data.isEmpty() && hasModel && sameBars(cached, data)) {
+                // Nothing new since the model was trained (e.g. restored from a snapshot)
+                loaded.incrementAndGet();
+                tracker.fresh(symbol, source);
+            } else if (data != null && !data.isEmpty()) {
+                List<StockDataManager.StockEntry> trainingData = data;
+                dataCache.put(symbol, data);
+                barStore.put(BarSeries.fromEntries(symbol, data));
+                loaded.incrementAndGet();
+
+                trainingExecutor.submit(() -> {
+                    try {
+                        Model model = new Model();
+                        model.prepareData(trainingData);
+                        model.trainModel();
+                        modelCache.put(symbol, model);
+                        trained.incrementAndGet();
+                        tracker.fresh(symbol, source);
+                        updateListener.accept(symbol);
+                    } catch (Exception e) {
+                        System.err.println("Error training model for " + symbol + ": " + e.getMessage());
+                        tracker.failed(symbol, "Training failed: " + e.getMessage());
+                    } finally {
+                        if (task.done != null) {
+                            task.done.countDown();
+                        }
+                    }
+                });
+                trainingSubmitted = true;
+            } else {
+                failed.incrementAndGet();
+                tracker.failed(symbol, "No data available");
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            tracker.failed(symbol, e.getMessage());
+            System.err.println("Error processing " + symbol + ": " + e.getMessage());
+            if (e.getMessage() != null && e.getMessage().contains("rate limit")) {
+                System.out.println("Rate limit hit, waiting 30 seconds before next request...");
+                Thread.sleep(RATE_LIMIT_BACKOFF_MILLIS);
+            }
+        } finally {
+            if (!trainingSubmitted && task.done != null) {
+                task.done.countDown();
+            }
+        }
+
+        // Only pace requests that actually went to the API
+        if (stockManager.didCallApi()) {
+            Thread.sleep(apiDelayMillis);
+        }
+    }
+
+    private static boolean sameBars(List<StockDataManager.StockEntry> a, List<StockDataManager.StockEntry> b) {
+        return a != null && b != null && a.size() == b.size() && latestDate(a).equals(latestDate(b));
+    }
+
+    private static String latestDate(List<StockDataManager.StockEntry> data) {
+        String latest = "";
+        for (StockDataManager.StockEntry entry : data) {
+            if (entry.date.compareTo(latest) > 0) {
+                latest = entry.date;
+            }
+        }
+        return latest;
+    }
+
+    private void logProgress(int total, CountDownLatch latch, long startTime) {
+        long done = total - latch.getCount();
+        long elapsedSeconds = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+        String eta = done > 0 ? ((total - done) * elapsedSeconds / done) + "s" : "unknown";
+        System.out.println(String.format("Prefetch progress: %d/%d symbols done (%d loaded, %d trained, %d failed), %ds elapsed, ETA %s",
+            done, total, loaded.get(), trained.get(), failed.get(), elapsedSeconds, eta));
+    }
+}
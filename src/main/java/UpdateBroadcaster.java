@@ -0,0 +1,259 @@
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket endpoint that pushes compact deltas to open dashboards.
+ *
+ * Message types ({@code t}): {@code s} full state on connect, {@code p} one symbol's
+ * prediction and signals, {@code b} one symbol's latest bar, {@code r} the ranked order,
+ * {@code o} an order's state and {@code h} heartbeat. Each message is serialized once and the same string is handed to
+ * every subscriber.
+ *
+ * Every client has at most one write in flight. Messages queued behind it are keyed, so a
+ * newer update for the same symbol replaces the older one instead of queueing behind it; a
+ * client that still falls more than {@code maxPending} keys behind is disconnected rather
+ * than letting its backlog grow.
+ */
+@WebSocket
+public class UpdateBroadcaster {
+    private final Map<Session, Client> clients = new ConcurrentHashMap<>();
+    private final Map<String, String> lastPrediction = new ConcurrentHashMap<>();
+    private final int maxPending;
+    private final ScheduledExecutorService heartbeat;
+    private volatile String state = "{\"t\":\"s\",\"v\":0,\"p\":[]}";
+    private volatile long lastRankingVersion = -1;
+    private volatile String lastOrder = "";
+
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesCoalesced = new AtomicLong();
+    private final AtomicLong slowClientsDropped = new AtomicLong();
+
+    public UpdateBroadcaster(int maxPending, long heartbeatSeconds) {
+        this.maxPending = maxPending;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("ws-heartbeat", true));
+        if (heartbeatSeconds > 0) {
+            heartbeat.scheduleAtFixedRate(() -> broadcast("h", "{\"t\":\"h\"}"),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+        Client client = new Client(session);
+        clients.put(session, client);
+        client.offer("s", state);
+    }
+
+    @OnWebSocketClose
+    public void onClose(Session session, int statusCode, String reason) {
+        clients.remove(session);
+    }
+
+    @OnWebSocketError
+    public void onError(Session session, Throwable error) {
+        clients.remove(session);
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(Session session, String message) {
+        // Push only; clients have nothing to say
+    }
+
+    /**
+     * Sends deltas for a newly published ranking: changed predictions and, if it moved, the order.
+     */
+    public void rankingPublished(RankingService.Snapshot snapshot) {
+        if (snapshot.version <= lastRankingVersion) {
+            return;
+        }
+        lastRankingVersion = snapshot.version;
+
+        List<String> order = new ArrayList<>(snapshot.predictions.size());
+        List<PredictionRow> rows = new ArrayList<>(snapshot.predictions.size());
+        for (PredictionResult prediction : snapshot.predictions) {
+            PredictionRow row = PredictionRow.of(prediction);
+            String symbol = prediction.symbol();
+            order.add(symbol);
+            rows.add(row);
+
+            String message = Json.toJson(row);
+            if (!message.equals(lastPrediction.put(symbol, message))) {
+                broadcast("p:" + symbol, message);
+            }
+        }
+
+        String orderJson = Json.toJson(order);
+        if (!orderJson.equals(lastOrder)) {
+            lastOrder = orderJson;
+            broadcast("r", "{\"t\":\"r\",\"v\":" + snapshot.version + ",\"o\":" + orderJson + "}");
+        }
+
+        state = Json.toJson(new StateMessage("s", snapshot.version, rows));
+    }
+
+    /**
+     * Sends a symbol's latest bar.
+     */
+    public void barChanged(BarSeries series) {
+        if (series == null || series.size() == 0) {
+            return;
+        }
+        int last = series.size() - 1;
+        BarMessage bar = new BarMessage("b", series.getSymbol(), LocalDate.ofEpochDay(series.dateAt(last)).toString(),
+            round(series.openAt(last)), round(series.highAt(last)), round(series.lowAt(last)),
+            round(series.closeAt(last)), (long) series.volumeAt(last));
+        broadcast("b:" + series.getSymbol(), Json.toJson(bar));
+    }
+
+    /**
+     * Sends an order's new state.
+     */
+    public void orderChanged(OrderOutbox.OrderStatus status) {
+        broadcast("o:" + status.clientOrderId(), Json.toJson(new OrderMessage("o", status.clientOrderId(),
+            status.symbol(), status.side(), status.quantity(), status.state(), status.error())));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clients", clients.size());
+        stats.put("broadcasts", broadcasts.get());
+        stats.put("messagesSent", messagesSent.get());
+        stats.put("messagesCoalesced", messagesCoalesced.get());
+        stats.put("slowClientsDropped", slowClientsDropped.get());
+        return stats;
+    }
+
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        for (Session session : clients.keySet()) {
+            session.close(StatusCode.SHUTDOWN, "Server shutting down");
+        }
+    }
+
+    private void broadcast(String key, String message) {
+        broadcasts.incrementAndGet();
+        for (Client client : clients.values()) {
+            client.offer(key, message);
+        }
+    }
+
+    // Field names are one or two letters to keep per-update frames small
+    private record PredictionRow(String t, String s, String d, double o, double c, double pc, Double no,
+                                 double oc, double cp, Double nc, double ch, String se, String r,
+                                 double cf, String ds, boolean st) {
+        static PredictionRow of(PredictionResult prediction) {
+            TradingSignals signals = prediction.tradingSignals();
+            return new PredictionRow("p", prediction.symbol(), prediction.date(),
+                round(prediction.todayOpen()), round(prediction.currentPrice()), round(prediction.predictedClose()),
+                round(signals.nextDayPredictedOpen()), round(signals.openToCloseChange()),
+                round(signals.currentToPredictedChange()), round(signals.nextDayPredictedChange()),
+                round(signals.predictedChange()), signals.sentiment(), signals.recommendation(),
+                signals.confidence(), signals.dataSource(), prediction.stale());
+        }
+    }
+
+    private record StateMessage(String t, long v, List<PredictionRow> p) {
+    }
+
+    private record OrderMessage(String t, String id, String s, String sd, int q, String st, String e) {
+    }
+
+    private record BarMessage(String t, String s, String d, double o, double h, double l, double c, long v) {
+    }
+
+    private static Double round(Double value) {
+        return value != null ? round(value.doubleValue()) : null;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    // One subscriber: a single write in flight plus the latest message per key behind it
+    private class Client {
+        private final Session session;
+        private final Map<String, String> pending = new LinkedHashMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Client(Session session) {
+            this.session = session;
+        }
+
+        void offer(String key, String message) {
+            synchronized (pending) {
+                if (pending.put(key, message) != null) {
+                    messagesCoalesced.incrementAndGet();
+                }
+                if (pending.size() > maxPending) {
+                    pending.clear();
+                    slowClientsDropped.incrementAndGet();
+                    clients.remove(session);
+                    session.close(StatusCode.TRY_AGAIN_LATER, "Client too slow");
+                    return;
+                }
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (sending.compareAndSet(false, true)) {
+                String next;
+                synchronized (pending) {
+                    Iterator<String> values = pending.values().iterator();
+                    next = values.hasNext() ? values.next() : null;
+                    if (next != null) {
+                        values.remove();
+                    }
+                }
+                if (next == null) {
+                    sending.set(false);
+                    // A message may have arrived between the poll and the reset
+                    synchronized (pending) {
+                        if (pending.isEmpty()) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                if (!session.isOpen()) {
+                    clients.remove(session);
+                    return;
+                }
+                session.getRemote().sendString(next, new WriteCallback() {
+                    @Override
+                    public void writeSuccess() {
+                        messagesSent.incrementAndGet();
+                        sending.set(false);
+                        drain();
+                    }
+
+                    @Override
+                    public void writeFailed(Throwable error) {
+                        clients.remove(session);
+                    }
+                });
+                return;
+            }
+        }
+    }
+}
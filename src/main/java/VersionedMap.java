@@ -0,0 +1,49 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map that counts, per key, how often the entry was replaced or removed.
+ *
+ * Response caches use the count as the version of what they were built from: unlike an
+ * identity hash it never repeats. The count is bumped after the entry changes, so a caller
+ * that reads {@link #version} before {@link #get} never pairs a new version with an older
+ * value. Only {@code put}, {@code putAll} and {@code remove} are supported as mutators; the
+ * compute and merge family would bypass the counters.
+ */
+public class VersionedMap<K, V> extends ConcurrentHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<K, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Number of changes to the key's entry so far; 0 if it was never set.
+     */
+    public long version(K key) {
+        return versions.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V previous = super.put(key, value);
+        versions.merge(key, 1L, Long::sum);
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        // ConcurrentHashMap's putAll doesn't go through put
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        V previous = super.remove(key);
+        if (previous != null) {
+            versions.merge((K) key, 1L, Long::sum);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,173 @@
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the server's warm state: price series, trained models, the last
+ * prediction per symbol and the last top-predictions ranking.
+ *
+ * The file is a single binary blob written to a temporary file and renamed into place,
+ * so a crash mid-write never leaves a torn snapshot. Restoring reads the whole file in
+ * one sequential read and decodes it from memory.
+ */
+public class WarmStateSnapshot {
+    private static final int MAGIC = 0x57534E50; // "WSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final Type RANKING_TYPE = new TypeToken<List<PredictionResult>>() {}.getType();
+
+    public final Map<String, BarSeries> series = new HashMap<>();
+    public final Map<String, Model> models = new HashMap<>();
+    public final Map<String, PredictionResult> predictions = new HashMap<>();
+    public List<PredictionResult> ranking = new ArrayList<>();
+    public long createdAt;
+
+    /**
+     * Writes the snapshot atomically and returns the number of bytes written.
+     */
+    public long write(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        File temp = new File(directory, file.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(series.size());
+            for (BarSeries bars : series.values()) {
+                writeString(out, bars.getSymbol());
+                out.writeBoolean(bars.isMockData());
+                int n = bars.size();
+                out.writeInt(n);
+                for (int i = 0; i < n; i++) out.writeInt(bars.dateAt(i));
+                for (int i = 0; i < n; i++) out.writeDouble(bars.openAt(i));
+                for (int i = 0; i < n; i++) out.writeDouble(bars.highAt(i));
+                for (int i = 0; i < n; i++) out.writeDouble(bars.lowAt(i));
+                for (int i = 0; i < n; i++) out.writeDouble(bars.closeAt(i));
+                for (int i = 0; i < n; i++) out.writeDouble(bars.volumeAt(i));
+            }
+
+            out.writeInt(models.size());
+            for (Map.Entry<String, Model> entry : models.entrySet()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                    objects.writeObject(entry.getValue());
+                }
+                writeString(out, entry.getKey());
+                writeBytes(out, bytes.toByteArray());
+            }
+
+            out.writeInt(predictions.size());
+            for (Map.Entry<String, PredictionResult> entry : predictions.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, Json.toJson(entry.getValue()));
+            }
+
+            writeString(out, Json.toJson(ranking));
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file.length();
+    }
+
+    /**
+     * Reads a snapshot, or returns null if the file does not exist.
+     */
+    public static WarmStateSnapshot read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath())); // Big-endian, like DataOutputStream
+        WarmStateSnapshot snapshot = new WarmStateSnapshot();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a warm state snapshot: " + file.getPath());
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file.getPath());
+            }
+            snapshot.createdAt = in.getLong();
+
+            int seriesCount = in.getInt();
+            for (int s = 0; s < seriesCount; s++) {
+                String symbol = readString(in);
+                boolean mock = in.get() != 0;
+                int n = in.getInt();
+                int[] dates = new int[n];
+                in.asIntBuffer().get(dates);
+                in.position(in.position() + n * Integer.BYTES);
+                double[][] columns = new double[5][n];
+                for (double[] column : columns) {
+                    in.asDoubleBuffer().get(column);
+                    in.position(in.position() + n * Double.BYTES);
+                }
+                snapshot.series.put(symbol, new BarSeries(symbol, dates,
+                    columns[0], columns[1], columns[2], columns[3], columns[4], mock));
+            }
+
+            int modelCount = in.getInt();
+            for (int m = 0; m < modelCount; m++) {
+                String symbol = readString(in);
+                byte[] bytes = readBytes(in);
+                try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    snapshot.models.put(symbol, (Model) objects.readObject());
+                } catch (ClassNotFoundException | ClassCastException | IOException e) {
+                    // A model from an incompatible build is retrained during reconciliation
+                    System.err.println("Skipping snapshot model for " + symbol + ": " + e.getMessage());
+                }
+            }
+
+            int predictionCount = in.getInt();
+            for (int p = 0; p < predictionCount; p++) {
+                String symbol = readString(in);
+                snapshot.predictions.put(symbol, Json.GSON.fromJson(readString(in), PredictionResult.class));
+            }
+
+            List<PredictionResult> ranking = Json.GSON.fromJson(readString(in), RANKING_TYPE);
+            snapshot.ranking = ranking != null ? ranking : new ArrayList<>();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt snapshot: " + file.getPath(), e);
+        }
+        return snapshot;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ByteBuffer in) {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+}
@@ -1,79 +1,154 @@
 import static spark.Spark.*;
-import com.google.gson.Gson;
-import java.util.HashMap;
+import spark.Route;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.concurrent.*;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.File;
 import java.io.InputStream;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.OutputStream;
+import javax.servlet.http.HttpServletResponse;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import java.util.Arrays;
 
 public class WebVisualization {
     private static final String CONFIG_FILE = "config.properties";
+    private static final String HEALTH_RESPONSE = "{\"status\":\"UP\"}";
+    private static final String SESSION_COOKIE = "etoro_session";
     private static String apiKey;
-    private static final Map<String, List<StockDataManager.StockEntry>> stockDataCache = new ConcurrentHashMap<>();
-    private static final Map<String, Model> modelCache = new ConcurrentHashMap<>();
-    private static final String[] COMMON_STOCKS = {
-        "AAPL", "MSFT", "GOOGL", "AMZN", "NVDA", "META", "BRK-B", "LLY", "AVGO", "JPM",
-        "V", "XOM", "ORCL", "MA", "HD", "CVX", "MRK", "ABBV", "KO", "PEP", "BAC", "COST",
-        "MCD", "TMO", "CSCO", "CRM", "ACN", "ADBE", "AMD", "NFLX"
-    };
+    private static final VersionedMap<String, List<StockDataManager.StockEntry>> stockDataCache = new VersionedMap<>();
+    private static final VersionedMap<String, Model> modelCache = new VersionedMap<>();
+    private static final BarStore barStore = new BarStore();
+    private static final Map<String, PredictionResult> predictionCache = new ConcurrentHashMap<>();
+    private static final Map<String, CachedPayload> predictionPayloads = new ConcurrentHashMap<>();
+    private static final Map<String, CachedPayload> staticAssets = new ConcurrentHashMap<>();
+    private static final int SERIES_CACHE_ENTRIES = 256;
+    private static final Map<String, CachedPayload> seriesPayloads = Collections.synchronizedMap(
+        new LinkedHashMap<String, CachedPayload>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPayload> eldest) {
+                return size() > SERIES_CACHE_ENTRIES; // Least recently requested chart goes first
+            }
+        });
+    private static ScheduledExecutorService snapshotScheduler;
+    private static final Properties config = new Properties();
+    private static SymbolUniverse universe = SymbolUniverse.current();
+    private static UniversePrefetcher prefetcher;
+    private static SymbolLoadTracker loadTracker = new SymbolLoadTracker(universe);
+    private static RankingService rankingService;
+    private static ExecutionLayer execution;
+    private static UpdateBroadcaster updates;
+    private static BatchPredictor batchPredictor;
+    private static AdmissionController admission;
+    private static OrderOutbox orderOutbox;
+    private static PortfolioLedger ledger;
+    private static ScheduledExecutorService reconcileScheduler;
     private static final StockDataManager stockDataManager;
-    private static final EToroIntegration etoroIntegration;
+    private static TradingGateway tradingGateway;
+    private static EToroSessionManager sessions;
+    private static PriceService prices;
+    private static volatile TradingScheduler tradingScheduler;
+    private static RiskEngine riskEngine;
+    private static MonteCarloCalibrator calibrator;
 
     static {
         try {
             stockDataManager = new StockDataManager();
-            etoroIntegration = new EToroIntegration();
         } catch (IOException e) {
             throw new RuntimeException("Failed to initialize managers", e);
         }
     }
 
     public static void main(String[] args) {
-        int port = 8080;
+        int port = Integer.getInteger("server.port", 8080);
         boolean serverStarted = false;
+
+        // Load configuration and the symbol universe
+        loadConfiguration();
+        HttpTransport.configure(effectiveSettings("http."));
+        prices = new PriceService(effectiveSettings("prices."));
+        riskEngine = new RiskEngine(effectiveSettings("risk."));
+        if (Boolean.parseBoolean(setting("mc.enabled", "true"))) {
+            calibrator = new MonteCarloCalibrator(effectiveSettings("mc."));
+        }
+        // Every series written updates the last price and the return covariances
+        barStore.setUpdateListener(series -> {
+            prices.onSeries(series);
+            riskEngine.onSeries(series);
+        });
+        tradingGateway = createTradingGateway();
+        execution = ExecutionLayer.configure(effectiveSettings("execution."));
+        admission = new AdmissionController(effectiveSettings("admission."));
+        updates = new UpdateBroadcaster(Integer.parseInt(setting("ws.max.pending", "1000")),
+                                        Long.parseLong(setting("ws.heartbeat.seconds", "30")));
+        loadUniverse();
+        openLedger();
+        if (tradingGateway instanceof PaperBroker paper && ledger != null) {
+            paper.restore(ledger); // Before the outbox resends anything
+        }
+        openOrderOutbox();
+        scheduleReconciliation(); // After the outbox, whose replayed orders hold reconciliation off
+        prices.startPolling(stockDataManager::fetchLatestQuote);
+        startTradingScheduler();
+        batchPredictor = new BatchPredictor(predictionCache, WebVisualization::getPredictionForStock,
+            WebVisualization::isLoading, execution.fanout(),
+            Integer.parseInt(setting("batch.max.concurrency", "8")),
+            Long.parseLong(setting("batch.timeout.ms", "30000")));
+
+        // Restore the last warm state if there is one; it is revalidated in the background
+        restoreWarmState();
         
-        while (!serverStarted && port < 8090) {  // Try up to port 8089
+        int lastPort = port + 9;
+        while (!serverStarted && port <= lastPort) {  // Try up to 9 ports above the first
             try {
                 port(port);
+                // Bound Jetty's request threads; blocking calls are handed to the I/O pool
+                int maxThreads = Integer.parseInt(setting("server.threads.max", "64"));
+                threadPool(maxThreads, Math.min(8, maxThreads), 60000);
+
+                // WebSocket routes have to be mapped before any HTTP route
+                webSocket("/updates", updates);
+                webSocketIdleTimeoutMillis(Long.parseLong(setting("ws.heartbeat.seconds", "30")) * 4000);
                 staticFiles.location("/public");
                 
-                // Load configuration
-                loadConfiguration();
-                
-                // Pre-fetch all stock data
-                prefetchStockData();
-                
                 // Enable CORS
                 enableCORS();
                 
                 // Add error handler for 404 Not Found
                 notFound((req, res) -> {
                     res.type("application/json");
-                    Map<String, Object> error = new HashMap<>();
-                    error.put("success", false);
-                    error.put("error", "Resource not found: " + req.url());
-                    return new Gson().toJson(error);
+                    return createErrorResponse("Resource not found: " + req.url());
                 });
 
                 // Add general error handler
                 internalServerError((req, res) -> {
                     res.type("application/json");
-                    Map<String, Object> error = new HashMap<>();
-                    error.put("success", false);
-                    error.put("error", "Internal server error occurred");
-                    return new Gson().toJson(error);
+                    return createErrorResponse("Internal server error occurred");
                 });
                 
                 // Define routes
+                get("/health", (req, res) -> HEALTH_RESPONSE);
+
+                // Load balancers only route traffic here once every symbol can be served
+                get("/ready", (req, res) -> {
+                    Map<String, Object> report = loadTracker.report();
+                    if (!loadTracker.isReady()) {
+                        res.status(503);
+                    }
+                    return Json.toJson(report);
+                });
+
+                get("/metrics/executors", (req, res) -> Json.toJson(execution.stats()));
+                get("/metrics/updates", (req, res) -> Json.toJson(updates.stats()));
+                get("/metrics/admission", (req, res) -> Json.toJson(admission.stats()));
+                get("/metrics/http", (req, res) -> Json.toJson(HttpTransport.shared().stats()));
+
                 get("/", (req, res) -> {
                     System.out.println("Received request for /");
                     res.redirect("index.html");
@@ -81,15 +156,13 @@ public class WebVisualization {
                 });
 
                 get("/index.html", (req, res) -> {
-                    System.out.println("Serving index.html");
-                    try (InputStream is = WebVisualization.class.getClassLoader().getResourceAsStream("public/index.html")) {
-                        if (is == null) {
+                    try {
+                        CachedPayload page = staticAsset("public/index.html", "text/html; charset=utf-8");
+                        if (page == null) {
                             System.err.println("Could not find index.html in resources");
                             return createErrorResponse("Could not find index.html");
                         }
-                        String content = new String(is.readAllBytes());
-                        res.type("text/html");
-                        return content;
+                        return page.serve(req, res);
                     } catch (IOException e) {
                         System.err.println("Error reading index.html: " + e.getMessage());
                         return createErrorResponse("Error reading index.html");
@@ -104,49 +177,58 @@ public class WebVisualization {
                             return createErrorResponse("API key is not configured");
                         }
 
-                        List<Map<String, Object>> predictions = new ArrayList<>();
-                        ExecutorService executor = Executors.newFixedThreadPool(5); // Use 5 threads
-                        List<Future<Map<String, Object>>> futures = new ArrayList<>();
-
-                        // Submit tasks for each stock
-                        for (String symbol : COMMON_STOCKS) {
-                            futures.add(executor.submit(() -> getPredictionForStock(symbol)));
+                        // Pre-serialized, precompressed and maintained in the background
+                        try (AdmissionController.Permit permit = admission.acquire(AdmissionController.CACHED)) {
+                            return rankingService.current().payload.serve(req, res);
                         }
+                    } catch (AdmissionController.RejectedException e) {
+                        return reject(res, e);
+                    } catch (Exception e) {
+                        return createErrorResponse("Error processing request: " + e.getMessage());
+                    }
+                });
+                
+                // Streams each symbol as soon as it is ready, then the ranked order
+                get("/top-predictions/stream", (req, res) -> {
+                    if (apiKey == null || apiKey.trim().isEmpty()) {
+                        return createErrorResponse("API key is not configured");
+                    }
 
-                        // Collect results
-                        for (Future<Map<String, Object>> future : futures) {
-                            try {
-                                Map<String, Object> prediction = future.get(30, TimeUnit.SECONDS);
-                                if (prediction != null) {  // Remove the success check since we don't add it anymore
-                                    predictions.add(prediction);
-                                }
-                            } catch (Exception e) {
-                                System.err.println("Error getting prediction for a stock: " + e.getMessage());
-                            }
-                        }
+                    String accept = req.headers("Accept");
+                    boolean sse = "sse".equals(req.queryParams("format")) ||
+                                  (accept != null && accept.contains("text/event-stream"));
+                    boolean refresh = "true".equals(req.queryParams("refresh"));
 
-                        executor.shutdown();
-                        
-                        // Sort predictions by predicted change
-                        predictions.sort((a, b) -> {
-                            Map<String, Object> aSignals = (Map<String, Object>) a.get("tradingSignals");
-                            Map<String, Object> bSignals = (Map<String, Object>) b.get("tradingSignals");
-                            double aChange = aSignals != null ? ((Number) aSignals.get("predictedChange")).doubleValue() : 0.0;
-                            double bChange = bSignals != null ? ((Number) bSignals.get("predictedChange")).doubleValue() : 0.0;
-                            return Double.compare(Math.abs(bChange), Math.abs(aChange)); // Sort by absolute change
-                        });
-
-                        Map<String, Object> response = new HashMap<>();
-                        response.put("success", true);
-                        response.put("predictions", predictions);
-                        return new Gson().toJson(response);
+                    PredictionStream stream = new PredictionStream(universe, predictionCache,
+                        WebVisualization::getPredictionForStock, execution.fanout(),
+                        Long.parseLong(setting("stream.timeout.ms", "30000")));
 
-                    } catch (Exception e) {
-                        return createErrorResponse("Error processing request: " + e.getMessage());
+                    AdmissionController.Permit permit;
+                    try {
+                        permit = admission.acquire(AdmissionController.STREAM);
+                    } catch (AdmissionController.RejectedException e) {
+                        return reject(res, e);
                     }
+
+                    HttpServletResponse raw = res.raw();
+                    res.status(200);
+                    raw.setContentType(sse ? "text/event-stream" : "application/x-ndjson");
+                    raw.setCharacterEncoding("UTF-8");
+                    raw.setHeader("Cache-Control", "no-cache");
+                    raw.setHeader("X-Accel-Buffering", "no"); // Keep reverse proxies from buffering the stream
+
+                    try {
+                        OutputStream out = raw.getOutputStream();
+                        stream.stream(sse ? PredictionStream.serverSentEvents(out) : PredictionStream.ndjson(out), refresh);
+                    } catch (IOException e) {
+                        System.out.println("Prediction stream client disconnected: " + e.getMessage());
+                    } finally {
+                        permit.close();
+                    }
+                    return "";
                 });
                 
-                post("/predict", (req, res) -> {
+                Route predict = (req, res) -> {
                     res.type("application/json");
                     
                     // Get the stock symbol from the request
@@ -156,11 +238,97 @@ public class WebVisualization {
                     }
                     
                     try {
-                        Map<String, Object> prediction = getPredictionForStock(symbol);
-                        return new Gson().toJson(prediction);
+                        // Universe symbols are loaded in the background; don't duplicate the fetch
+                        if (isLoading(symbol)) {
+                            res.status(503);
+                            res.header("Retry-After", "5");
+                            return createErrorResponse("Data for " + symbol + " is still loading");
+                        }
+
+                        // Cached answers never queue behind predictions that have to fetch or train
+                        CachedPayload cached = cachedPredictionPayload(symbol);
+                        if (cached != null) {
+                            try (AdmissionController.Permit permit = admission.acquire(AdmissionController.CACHED)) {
+                                return cached.serve(req, res);
+                            }
+                        }
+                        try (AdmissionController.Permit permit = admission.acquire(AdmissionController.UNCACHED)) {
+                            return predictionPayload(symbol).serve(req, res);
+                        }
+                    } catch (AdmissionController.RejectedException e) {
+                        return reject(res, e);
                     } catch (Exception e) {
                         return createErrorResponse("Error processing request: " + e.getMessage());
                     }
+                };
+                post("/predict", predict);
+                get("/predict", predict); // Lets polling clients use conditional GETs
+
+                // History for charts, sliced and downsampled from the in-memory bars
+                get("/series/:symbol", (req, res) -> {
+                    res.type("application/json");
+                    String symbol = barStore.contains(req.params(":symbol")) ? req.params(":symbol")
+                        : req.params(":symbol").toUpperCase();
+                    // Read before the series, so a concurrent replacement can only cause an extra rebuild
+                    long seriesVersion = barStore.version(symbol);
+                    BarSeries series = barStore.get(symbol);
+                    if (series == null) {
+                        res.status(404);
+                        return createErrorResponse("No series for " + symbol);
+                    }
+
+                    SeriesQuery query;
+                    try {
+                        query = SeriesQuery.parse(req.queryParams("from"), req.queryParams("to"),
+                            req.queryParams("fields"), req.queryParams("points"), req.queryParams("method"),
+                            Integer.parseInt(setting("series.default.points", "1000")));
+                    } catch (IllegalArgumentException e) {
+                        res.status(400);
+                        return createErrorResponse(e.getMessage());
+                    }
+                    String key = series.getSymbol() + ":" + query.key();
+                    String version = Long.toString(seriesVersion);
+                    try (AdmissionController.Permit permit = admission.acquire(AdmissionController.CACHED)) {
+                        CachedPayload payload = seriesPayloads.get(key);
+                        if (payload == null || !payload.version.equals(version)) {
+                            payload = CachedPayload.of(version, "application/json", Json.toJson(query.run(series)),
+                                                       barStore.lastUpdated(series.getSymbol()));
+                            seriesPayloads.put(key, payload);
+                        }
+                        return payload.serve(req, res);
+                    } catch (AdmissionController.RejectedException e) {
+                        return reject(res, e);
+                    }
+                });
+
+                // Many symbols in one round trip; partial failures are reported per symbol
+                post("/predict/batch", (req, res) -> {
+                    res.type("application/json");
+                    BatchPredictor.Request request;
+                    try {
+                        request = Json.GSON.fromJson(req.body(), BatchPredictor.Request.class);
+                    } catch (com.google.gson.JsonParseException e) {
+                        res.status(400);
+                        return createErrorResponse("Invalid request body: " + e.getMessage());
+                    }
+                    if (request == null || request.symbols() == null || request.symbols().isEmpty()) {
+                        res.status(400);
+                        return createErrorResponse("A list of symbols is required");
+                    }
+                    int maxSymbols = Integer.parseInt(setting("batch.max.symbols", "200"));
+                    if (request.symbols().size() > maxSymbols) {
+                        res.status(400);
+                        return createErrorResponse("At most " + maxSymbols + " symbols per batch");
+                    }
+
+                    long timeoutMillis = request.timeoutMs() != null ? request.timeoutMs() : Long.MAX_VALUE;
+                    try (AdmissionController.Permit permit = admission.acquire(AdmissionController.BATCH)) {
+                        BatchPredictor.Result result = batchPredictor.predict(request.symbols(),
+                            Boolean.TRUE.equals(request.refresh()), timeoutMillis);
+                        return Json.toJson(result);
+                    } catch (AdmissionController.RejectedException e) {
+                        return reject(res, e);
+                    }
                 });
 
                 // Add eToro login endpoint
@@ -173,15 +341,34 @@ public class WebVisualization {
                         JsonObject jsonRequest = JsonParser.parseString(body).getAsJsonObject();
                         String username = jsonRequest.get("username").getAsString();
                         String password = jsonRequest.get("password").getAsString();
-                        
-                        if (etoroIntegration.login(username, password)) {
-                            double balance = etoroIntegration.getPortfolioBalance();
+
+                        // Each client gets its own eToro session; the paper broker has just the one account
+                        if (sessions != null) {
+                            EToroSessionManager.Session session = execution.callIo(() -> sessions.login(username, password),
+                                                                                   ioTimeoutMillis());
+                            if (session == null) {
+                                jsonResponse.addProperty("success", false);
+                                jsonResponse.addProperty("error", "Invalid credentials");
+                                return jsonResponse.toString();
+                            }
+                            double balance = execution.callIo(() -> etoro().getPortfolioBalance(session), ioTimeoutMillis());
+                            res.header("Set-Cookie", SESSION_COOKIE + "=" + session.id() + "; Path=/; HttpOnly; SameSite=Strict");
+                            jsonResponse.addProperty("success", true);
+                            jsonResponse.addProperty("sessionId", session.id());
+                            jsonResponse.addProperty("balance", balance);
+                        } else if (execution.callIo(() -> tradingGateway.login(username, password), ioTimeoutMillis())) {
+                            double balance = execution.callIo(tradingGateway::getPortfolioBalance, ioTimeoutMillis());
                             jsonResponse.addProperty("success", true);
                             jsonResponse.addProperty("balance", balance);
                         } else {
                             jsonResponse.addProperty("success", false);
                             jsonResponse.addProperty("error", "Invalid credentials");
                         }
+                    } catch (IllegalStateException e) {
+                        res.status(503);
+                        return createErrorResponse(e.getMessage());
+                    } catch (IOException e) {
+                        return etoroFailed(res, e);
                     } catch (Exception e) {
                         jsonResponse.addProperty("success", false);
                         jsonResponse.addProperty("error", "Server error: " + e.getMessage());
@@ -190,7 +377,19 @@ public class WebVisualization {
                     return jsonResponse.toString();
                 });
 
-                // Add eToro trade endpoint
+                post("/etoro-logout", (req, res) -> {
+                    res.type("application/json");
+                    String sessionId = sessionId(req);
+                    if (sessions != null && sessionId != null) {
+                        sessions.logout(sessionId);
+                    }
+                    res.header("Set-Cookie", SESSION_COOKIE + "=; Path=/; Max-Age=0; HttpOnly; SameSite=Strict");
+                    JsonObject jsonResponse = new JsonObject();
+                    jsonResponse.addProperty("success", true);
+                    return jsonResponse.toString();
+                });
+
+                // Orders are journaled and acknowledged at once; the outbox sends them to eToro
                 post("/etoro-trade", (req, res) -> {
                     res.type("application/json");
                     JsonObject jsonResponse = new JsonObject();
@@ -200,16 +399,41 @@ public class WebVisualization {
                         JsonObject jsonRequest = JsonParser.parseString(body).getAsJsonObject();
                         String symbol = jsonRequest.get("symbol").getAsString();
                         boolean isBuy = jsonRequest.get("isBuy").getAsBoolean();
-                        
                         // Default to 1 share for manual trades
-                        if (etoroIntegration.executeTrade(symbol, 1, isBuy)) {
-                            double newBalance = etoroIntegration.getPortfolioBalance();
-                            jsonResponse.addProperty("success", true);
-                            jsonResponse.addProperty("newBalance", newBalance);
+                        int quantity = jsonRequest.has("quantity") ? jsonRequest.get("quantity").getAsInt() : 1;
+                        String clientOrderId = jsonRequest.has("clientOrderId")
+                            ? jsonRequest.get("clientOrderId").getAsString() : null;
+                        // Limit and stop orders rest at "price"; only the paper broker takes them
+                        String type = jsonRequest.has("type")
+                            ? jsonRequest.get("type").getAsString().trim().toLowerCase() : OrderOutbox.MARKET;
+                        Double price = jsonRequest.has("price") ? jsonRequest.get("price").getAsDouble() : null;
+                        if (quantity <= 0) {
+                            res.status(400);
+                            return createErrorResponse("Quantity must be positive");
+                        }
+                        if (!OrderOutbox.MARKET.equals(type) && !OrderOutbox.LIMIT.equals(type) && !OrderOutbox.STOP.equals(type)) {
+                            res.status(400);
+                            return createErrorResponse("Order type must be market, limit or stop");
+                        }
+                        if (!OrderOutbox.MARKET.equals(type)) {
+                            if (!(tradingGateway instanceof PaperBroker)) {
+                                res.status(400);
+                                return createErrorResponse("eToro takes market orders only; " + type +
+                                                           " orders need trading.gateway=paper");
+                            }
+                            if (price == null || price <= 0) {
+                                res.status(400);
+                                return createErrorResponse("A " + type + " order needs a positive price");
+                            }
                         } else {
-                            jsonResponse.addProperty("success", false);
-                            jsonResponse.addProperty("error", "Trade execution failed");
+                            price = null;
+                        }
+                        EToroSessionManager.Session session = clientSession(req);
+                        String denied = sessionDenied(req, res, session);
+                        if (denied != null) {
+                            return denied;
                         }
+                        return queueOrder(res, clientOrderId, symbol, quantity, isBuy, session, type, price);
                     } catch (Exception e) {
                         jsonResponse.addProperty("success", false);
                         jsonResponse.addProperty("error", "Server error: " + e.getMessage());
@@ -218,7 +442,7 @@ public class WebVisualization {
                     return jsonResponse.toString();
                 });
 
-                // Add eToro automated trade endpoint
+                // Sized from the balance and price here, then queued like a manual order
                 post("/etoro-auto-trade", (req, res) -> {
                     res.type("application/json");
                     JsonObject jsonResponse = new JsonObject();
@@ -228,16 +452,37 @@ public class WebVisualization {
                         JsonObject jsonRequest = JsonParser.parseString(body).getAsJsonObject();
                         String symbol = jsonRequest.get("symbol").getAsString();
                         double predictedChange = jsonRequest.get("predictedChange").getAsDouble();
+                        String clientOrderId = jsonRequest.has("clientOrderId")
+                            ? jsonRequest.get("clientOrderId").getAsString() : null;
+                        EToroSessionManager.Session session = clientSession(req);
+                        String denied = sessionDenied(req, res, session);
+                        if (denied != null) {
+                            return denied;
+                        }
                         
                         // Use 80% confidence for automated trades
-                        if (etoroIntegration.executeAutomatedTrade(symbol, predictedChange, 0.8)) {
-                            double newBalance = etoroIntegration.getPortfolioBalance();
-                            jsonResponse.addProperty("success", true);
-                            jsonResponse.addProperty("newBalance", newBalance);
-                        } else {
-                            jsonResponse.addProperty("success", false);
-                            jsonResponse.addProperty("error", "Automated trade execution failed");
+                        // Sized from the local ledger when there is one, skipping the balance round trip;
+                        // a client's session is sized from that client's eToro balance
+                        MonteCarloCalibrator.Calibration calibration = calibrate(symbol, predictedChange);
+                        Double stopLoss = calibration != null ? calibration.best().stopLossPercent() / 100 : null;
+                        int quantity = session != null
+                            ? execution.callIo(() -> tradingGateway.automatedTradeQuantity(symbol, predictedChange, 0.8,
+                                                   etoro().getPortfolioBalance(session), stopLoss),
+                                               ioTimeoutMillis())
+                            : ledger != null
+                            ? riskCapped(symbol, predictedChange > 0,
+                                         tradingGateway.automatedTradeQuantity(symbol, predictedChange, 0.8, ledger.cash(), stopLoss))
+                            : execution.callIo(() -> tradingGateway.automatedTradeQuantity(symbol, predictedChange, 0.8,
+                                                   tradingGateway.getPortfolioBalance(), stopLoss),
+                                               ioTimeoutMillis());
+                        if (quantity > 0) {
+                            return queueOrder(res, clientOrderId, symbol, quantity, predictedChange > 0, session,
+                                              OrderOutbox.MARKET, null);
                         }
+                        jsonResponse.addProperty("success", false);
+                        jsonResponse.addProperty("error", "Automated trade execution failed");
+                    } catch (IOException e) {
+                        return etoroFailed(res, e);
                     } catch (Exception e) {
                         jsonResponse.addProperty("success", false);
                         jsonResponse.addProperty("error", "Server error: " + e.getMessage());
@@ -245,9 +490,125 @@ public class WebVisualization {
                     
                     return jsonResponse.toString();
                 });
+
+                get("/etoro-balance", (req, res) -> {
+                    res.type("application/json");
+                    JsonObject jsonResponse = new JsonObject();
+                    try {
+                        EToroSessionManager.Session session = clientSession(req);
+                        String denied = sessionDenied(req, res, session);
+                        if (denied != null) {
+                            return denied;
+                        }
+                        double balance = session != null
+                            ? execution.callIo(() -> etoro().getPortfolioBalance(session), ioTimeoutMillis())
+                            : ledger != null ? ledger.cash()
+                            : execution.callIo(tradingGateway::getPortfolioBalance, ioTimeoutMillis());
+                        jsonResponse.addProperty("success", true);
+                        jsonResponse.addProperty("balance", balance);
+                    } catch (IOException e) {
+                        return etoroFailed(res, e);
+                    } catch (Exception e) {
+                        jsonResponse.addProperty("success", false);
+                        jsonResponse.addProperty("error", "Server error: " + e.getMessage());
+                    }
+                    return jsonResponse.toString();
+                });
+
+                // Cash, positions and P&L from the local ledger, marked at the latest price
+                get("/portfolio", (req, res) -> {
+                    res.type("application/json");
+                    if (ledger == null) {
+                        res.status(503);
+                        return createErrorResponse("Portfolio ledger unavailable");
+                    }
+                    return Json.toJson(ledger.valuation(prices::price));
+                });
+
+                // Portfolio VaR and each position's contribution, from the rolling covariances
+                get("/risk", (req, res) -> {
+                    res.type("application/json");
+                    if (ledger == null) {
+                        res.status(503);
+                        return createErrorResponse("Portfolio ledger unavailable");
+                    }
+                    PortfolioLedger.State state = ledger.state();
+                    return Json.toJson(riskEngine.report(state.positions(), prices::price, state.cash()));
+                });
+
+                // Simulated stop/target grid for the latest bar; ?change= is the predicted move in percent
+                get("/calibration/:symbol", (req, res) -> {
+                    res.type("application/json");
+                    String symbol = req.params(":symbol").toUpperCase();
+                    double change;
+                    try {
+                        change = req.queryParams("change") != null ? Double.parseDouble(req.queryParams("change"))
+                            : predictedChangeOf(symbol);
+                    } catch (NumberFormatException e) {
+                        res.status(400);
+                        return createErrorResponse("change must be a number");
+                    }
+                    MonteCarloCalibrator.Calibration calibration = calibrate(symbol, change);
+                    if (calibration == null) {
+                        res.status(404);
+                        return createErrorResponse("Not enough history to calibrate " + symbol);
+                    }
+                    return Json.toJson(calibration);
+                });
+
+                get("/orders/:clientOrderId", (req, res) -> {
+                    res.type("application/json");
+                    // A client's orders are only shown to that client's sessions; the server's are public
+                    EToroSessionManager.Session session = clientSession(req);
+                    String clientOrderId = req.params(":clientOrderId");
+                    OrderOutbox.OrderStatus status = null;
+                    if (orderOutbox != null) {
+                        status = session != null ? orderOutbox.status(session.account(), clientOrderId) : null;
+                        if (status == null) {
+                            status = orderOutbox.status(null, clientOrderId);
+                        }
+                    }
+                    if (status == null) {
+                        res.status(404);
+                        return createErrorResponse("Unknown order " + req.params(":clientOrderId"));
+                    }
+                    return Json.toJson(status);
+                });
+
+                get("/metrics/paper", (req, res) -> {
+                    res.type("application/json");
+                    if (!(tradingGateway instanceof PaperBroker paper)) {
+                        res.status(404);
+                        return createErrorResponse("Not trading through the paper broker");
+                    }
+                    return Json.toJson(paper.stats());
+                });
+
+                // Latest price with its age and staleness, as trade sizing sees it
+                get("/prices/:symbol", (req, res) -> {
+                    res.type("application/json");
+                    String symbol = req.params(":symbol").toUpperCase();
+                    PriceService.QuoteView quote = prices.view(symbol);
+                    if (quote == null) {
+                        res.status(404);
+                        return createErrorResponse("No price for " + symbol);
+                    }
+                    return Json.toJson(quote);
+                });
+
+                get("/metrics/prices", (req, res) -> Json.toJson(prices.stats()));
+                get("/metrics/sessions", (req, res) -> Json.toJson(sessions != null ? sessions.stats() : Map.of()));
+                get("/metrics/calibration", (req, res) -> Json.toJson(calibrator != null ? calibrator.stats() : Map.of()));
+                get("/metrics/risk", (req, res) -> Json.toJson(riskEngine.stats()));
+                get("/metrics/autotrade", (req, res) -> Json.toJson(tradingScheduler != null ? tradingScheduler.stats() : Map.of()));
+                get("/metrics/orders", (req, res) -> Json.toJson(orderOutbox != null ? orderOutbox.stats() : Map.of()));
                 
                 serverStarted = true;
                 System.out.println("Server started on port " + port);
+
+                // Load everything else in the background while requests are already served
+                startBackgroundLoad();
+                scheduleSnapshots();
             } catch (Exception e) {
                 System.out.println("Port " + port + " is in use, trying next port...");
                 port++;
@@ -255,121 +616,558 @@ public class WebVisualization {
         }
         
         if (!serverStarted) {
-            System.err.println("Could not start server on any port between 8080 and 8089");
+            System.err.println("Could not start server on any port up to " + lastPort);
             System.exit(1);
         }
     }
 
-    private static void prefetchStockData() {
-        System.out.println("Loading stock data for all symbols...");
-        
-        // Create thread pools for different tasks
-        ExecutorService apiExecutor = Executors.newFixedThreadPool(3);  // 3 threads for API calls
-        ExecutorService processingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());  // CPU-bound tasks
-        
-        CountDownLatch latch = new CountDownLatch(COMMON_STOCKS.length);
-        final AtomicInteger processedCount = new AtomicInteger(0);
-        
-        // Group stocks into batches of 5 to respect rate limits while allowing parallel processing
-        List<List<String>> batches = new ArrayList<>();
-        for (int i = 0; i < COMMON_STOCKS.length; i += 5) {
-            int end = Math.min(i + 5, COMMON_STOCKS.length);
-            batches.add(Arrays.asList(Arrays.copyOfRange(COMMON_STOCKS, i, end)));
+    private static void openOrderOutbox() {
+        try {
+            orderOutbox = new OrderOutbox(new File(setting("outbox.file", "data/orders/outbox.log")),
+                                          tradingGateway::submitOrder, effectiveSettings("outbox."));
+            orderOutbox.setListener(status -> {
+                // Clients' orders are theirs alone: not broadcast, and not in the server's ledger
+                if (status.account() == null) {
+                    updates.orderChanged(status);
+                    recordFill(status);
+                    TradingScheduler scheduler = tradingScheduler;
+                    if (scheduler != null) {
+                        scheduler.settled(status); // Now that the fill is in the ledger
+                    }
+                }
+            });
+            orderOutbox.start();
+        } catch (IOException e) {
+            System.err.println("Error opening the order journal, trading is disabled: " + e.getMessage());
         }
+    }
 
-        for (List<String> batch : batches) {
-            // Process each batch
-            for (String symbol : batch) {
-                apiExecutor.submit(() -> {
-                    try {
-                        int count = processedCount.incrementAndGet();
-                        System.out.println("Processing " + symbol + " (" + count + "/" + COMMON_STOCKS.length + ")...");
-                        StockDataManager stockManager = new StockDataManager(apiKey);
-                        stockManager.setSymbol(symbol);
-                        
-                        try {
-                            // Fetch data
-                            List<StockDataManager.StockEntry> data = stockManager.fetchAndSaveStockData(symbol);
-                            
-                            if (data != null && !data.isEmpty()) {
-                                stockDataCache.put(symbol, data);
-                                
-                                // Submit model training to processing executor
-                                processingExecutor.submit(() -> {
-                                    try {
-                                        Model model = new Model();
-                                        model.prepareData(data);
-                                        model.trainModel();
-                                        modelCache.put(symbol, model);
-                                        System.out.println("Successfully loaded and processed data for " + symbol);
-                                    } catch (Exception e) {
-                                        System.err.println("Error training model for " + symbol + ": " + e.getMessage());
-                                    }
-                                });
-                            }
-                            
-                            // Shorter wait time between API calls within a batch
-                            Thread.sleep(5000);
-                            
-                        } catch (Exception e) {
-                            System.err.println("Error processing " + symbol + ": " + e.getMessage());
-                            if (e.getMessage() != null && e.getMessage().contains("rate limit")) {
-                                System.out.println("Rate limit hit, waiting 30 seconds before next request...");
-                                Thread.sleep(30000);
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Error processing " + symbol + ": " + e.getMessage());
-                    } finally {
-                        latch.countDown();
-                    }
-                });
+    // autotrade.enabled lets the server trade its own predictions across the universe
+    private static void startTradingScheduler() {
+        if (!Boolean.parseBoolean(setting("autotrade.enabled", "false"))) {
+            return;
+        }
+        if (ledger == null || orderOutbox == null) {
+            System.err.println("Automated trading needs the portfolio ledger and order journal; not started");
+            return;
+        }
+        tradingScheduler = new TradingScheduler(tradingGateway, ledger, prices, riskEngine, orderOutbox::submit, execution.fanout(),
+                                                effectiveSettings("autotrade."));
+        // The bars already traded, so a restart can't trade them again
+        tradingScheduler.rememberTraded(ledger.filledOrderIds());
+        tradingScheduler.rememberTraded(orderOutbox.serverOrderIds());
+        for (OrderOutbox.OrderStatus status : orderOutbox.pending()) {
+            trackServerOrder(status); // Replayed from the journal, still in flight
+        }
+        System.out.println("Automated trading scheduler started");
+    }
+
+    // trading.gateway=paper trades against the stored bars instead of eToro
+    private static TradingGateway createTradingGateway() {
+        if ("paper".equalsIgnoreCase(setting("trading.gateway", "etoro").trim())) {
+            System.out.println("Trading through the paper broker");
+            PaperBroker paper = new PaperBroker(prices::price, effectiveSettings("paper."));
+            paper.setFillListener(WebVisualization::recordPaperFill);
+            return paper;
+        }
+        try {
+            EToroIntegration etoro = new EToroIntegration(prices, effectiveSettings("etoro.session."));
+            sessions = etoro.sessions();
+            return etoro;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to initialize managers", e);
+        }
+    }
+
+    private static void openLedger() {
+        try {
+            ledger = new PortfolioLedger(new File(setting("ledger.file", "data/orders/ledger.log")),
+                                         Double.parseDouble(setting("ledger.initial.cash", "100000")));
+        } catch (IOException e) {
+            System.err.println("Error opening the portfolio ledger, sizing from the broker balance: " + e.getMessage());
+        }
+    }
+
+    private static void scheduleReconciliation() {
+        if (ledger == null) {
+            return;
+        }
+        long intervalMinutes = Long.parseLong(setting("ledger.reconcile.minutes", "15"));
+        if (intervalMinutes <= 0) {
+            return;
+        }
+        reconcileScheduler = Executors.newSingleThreadScheduledExecutor(ExecutionLayer.namedThreads("ledger-reconcile", true));
+        reconcileScheduler.scheduleWithFixedDelay(WebVisualization::reconcileLedger, 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    // The broker's balance wins; mock balances are never taken as the truth. An order the broker
+    // may have executed but whose fill isn't in the ledger yet would be counted twice, so the pass
+    // is skipped unless every order was settled before the balance was read and still is.
+    private static void reconcileLedger() {
+        try {
+            long mark = orderOutbox != null ? orderOutbox.settledMark() : 0;
+            if (mark < 0) {
+                System.out.println("Portfolio ledger: orders in flight, reconciliation deferred");
+                return;
             }
-            
-            // Wait between batches to respect rate limits
-            try {
-                Thread.sleep(10000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            long fills = ledger.state().fills(); // Paper stops and limits fill outside the outbox
+            Double brokerCash = tradingGateway.fetchBrokerBalance();
+            if (brokerCash == null) {
+                return;
+            }
+            Double drift = ledger.reconcile(brokerCash, () -> (orderOutbox == null || orderOutbox.settledMark() == mark)
+                                                              && ledger.state().fills() == fills);
+            if (drift == null) {
+                System.out.println("Portfolio ledger: orders arrived while reading the balance, reconciliation deferred");
+            } else if (Math.abs(drift) >= 0.01) {
+                System.out.println("Portfolio ledger: reconciled cash with eToro, drift " + String.format("%.2f", drift));
             }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reconciling the portfolio ledger: " + e.getMessage());
         }
+    }
 
-        // Wait for all operations to complete or timeout after 15 minutes
+    // Acknowledged orders become fills, at the broker's price or else the latest price. The
+    // paper broker reports its fills itself, resting orders and fees included.
+    private static void recordFill(OrderOutbox.OrderStatus status) {
+        if (ledger == null || tradingGateway instanceof PaperBroker || !OrderOutbox.ACKNOWLEDGED.equals(status.state())) {
+            return;
+        }
+        Double price = status.fillPrice() != null ? status.fillPrice() : prices.price(status.symbol());
+        if (price == null) {
+            System.err.println("Portfolio ledger: no price for fill of " + status.symbol() + " (" + status.clientOrderId() +
+                               "), left to reconciliation");
+            return;
+        }
         try {
-            if (!latch.await(15, TimeUnit.MINUTES)) {
-                System.err.println("Timeout waiting for data loading");
+            ledger.recordFill(status.clientOrderId(), status.symbol(), status.quantity(), "buy".equals(status.side()), price);
+        } catch (IOException e) {
+            System.err.println("Error recording fill " + status.clientOrderId() + ": " + e.getMessage());
+        }
+    }
+
+    private static void recordPaperFill(PaperBroker.Fill fill) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.recordFill(fill.clientOrderId(), fill.symbol(), fill.quantity(), fill.buy(), fill.price(), fill.fee());
+        } catch (IOException e) {
+            System.err.println("Error recording fill " + fill.clientOrderId() + ": " + e.getMessage());
+        }
+    }
+
+    // The cached prediction's move, or 0 (no edge) when there is none
+    private static double predictedChangeOf(String symbol) {
+        PredictionResult prediction = predictionCache.get(symbol);
+        return prediction != null && prediction.tradingSignals() != null ? prediction.tradingSignals().predictedChange() : 0;
+    }
+
+    // Null when calibration is off or the symbol has too little history
+    private static MonteCarloCalibrator.Calibration calibrate(String symbol, double predictedChange) {
+        return calibrator != null ? calibrator.calibrate(barStore.get(symbol), predictedChange) : null;
+    }
+
+    // Trims a sized trade so portfolio VaR, with correlations to current holdings, stays in its limit
+    private static int riskCapped(String symbol, boolean buy, int quantity) {
+        if (quantity <= 0) {
+            return quantity;
+        }
+        PortfolioLedger.Valuation valuation = ledger.valuation(prices::price);
+        int allowed = riskEngine.maxTradeQuantity(symbol, buy, prices.currentPrice(symbol), ledger.state().positions(),
+                                                  prices::price, valuation.equity());
+        if (allowed < quantity) {
+            System.out.println("Risk engine: " + symbol + " trade cut from " + quantity + " to " + allowed + " shares by the VaR limit");
+        }
+        return Math.min(quantity, allowed);
+    }
+
+    private static String queueOrder(spark.Response res, String clientOrderId, String symbol, int quantity,
+                                     boolean isBuy, EToroSessionManager.Session session, String type, Double price) {
+        if (orderOutbox == null) {
+            res.status(503);
+            return createErrorResponse("Order journal unavailable");
+        }
+        // The scheduler's IDs are predictable; a client could otherwise take one before it does
+        if (clientOrderId != null && clientOrderId.startsWith("auto-")) {
+            res.status(400);
+            return createErrorResponse("Client order IDs starting with auto- are reserved for automated trading");
+        }
+        try {
+            OrderOutbox.OrderStatus status = orderOutbox.submit(clientOrderId, symbol, quantity, isBuy,
+                                                                session != null ? session.account() : null, type, price);
+            trackServerOrder(status);
+            res.status(202);
+            JsonObject jsonResponse = new JsonObject();
+            jsonResponse.addProperty("success", true);
+            jsonResponse.addProperty("clientOrderId", status.clientOrderId());
+            jsonResponse.addProperty("state", status.state());
+            jsonResponse.addProperty("quantity", status.quantity());
+            return jsonResponse.toString();
+        } catch (OrderOutbox.ConflictingOrderException e) {
+            res.status(409);
+            return createErrorResponse(e.getMessage());
+        } catch (IOException e) {
+            res.status(503);
+            return createErrorResponse("Could not journal order: " + e.getMessage());
+        }
+    }
+
+    // The scheduler's limits count the server's orders from every route until they settle. One
+    // that settled before it was tracked is released again at once.
+    private static void trackServerOrder(OrderOutbox.OrderStatus status) {
+        TradingScheduler scheduler = tradingScheduler;
+        if (scheduler == null || status.account() != null || !OrderOutbox.MARKET.equals(status.type())) {
+            return;
+        }
+        scheduler.track(status);
+        OrderOutbox.OrderStatus current = orderOutbox.status(null, status.clientOrderId());
+        if (current == null || !OrderOutbox.PENDING.equals(current.state())) {
+            scheduler.release(status.clientOrderId());
+        }
+    }
+
+    // A client's eToro call that failed: 401 once eToro refuses the session's credentials, else 503
+    private static String etoroFailed(spark.Response res, IOException e) {
+        if (e instanceof EToroIntegration.UnauthorizedException) {
+            res.status(401);
+            return createErrorResponse("eToro session ended, log in again");
+        }
+        res.status(503);
+        return createErrorResponse("eToro unreachable: " + e.getMessage());
+    }
+
+    // The client's session ID, from the X-Session-Id header or the etoro_session cookie
+    private static String sessionId(spark.Request req) {
+        String id = req.headers("X-Session-Id");
+        return id != null && !id.isBlank() ? id.trim() : req.cookie(SESSION_COOKIE);
+    }
+
+    // The client's eToro session; null when it sent none (the server's account) or it has ended
+    private static EToroSessionManager.Session clientSession(spark.Request req) {
+        String id = sessionId(req);
+        return sessions != null && id != null ? sessions.get(id) : null;
+    }
+
+    // 401 for a session that has ended, 429 once it is over its rate; null lets the request through
+    private static String sessionDenied(spark.Request req, spark.Response res, EToroSessionManager.Session session) {
+        if (session == null) {
+            if (sessions != null && sessionId(req) != null) {
+                res.status(401);
+                return createErrorResponse("eToro session expired, please log in again");
             }
-        } catch (InterruptedException e) {
-            System.err.println("Interrupted while waiting for data loading");
-            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (!session.tryAcquire()) {
+            sessions.rateLimited();
+            res.status(429);
+            res.header("Retry-After", "1");
+            return createErrorResponse("Too many requests for this eToro session");
         }
+        return null;
+    }
+
+    private static EToroIntegration etoro() {
+        return (EToroIntegration) tradingGateway;
+    }
 
-        // Shutdown executors
-        apiExecutor.shutdown();
-        processingExecutor.shutdown();
+    private static void loadUniverse() {
         try {
-            if (!apiExecutor.awaitTermination(5, TimeUnit.MINUTES)) {
-                apiExecutor.shutdownNow();
+            universe = SymbolUniverse.load(config);
+        } catch (IOException e) {
+            System.err.println("Error loading symbol universe, using defaults: " + e.getMessage());
+        }
+        loadTracker = new SymbolLoadTracker(universe);
+
+        int shards = Integer.parseInt(setting("prefetch.shards", "3"));
+        long apiDelayMillis = Long.parseLong(setting("prefetch.api.delay.ms", "5000"));
+        long symbolBudgetMillis = Long.parseLong(setting("prefetch.symbol.budget.ms", "30000"));
+        prefetcher = new UniversePrefetcher(universe, apiKey, stockDataCache, modelCache, barStore,
+                                            loadTracker, shards, apiDelayMillis, symbolBudgetMillis);
+
+        long debounceMillis = Long.parseLong(setting("ranking.debounce.ms", "500"));
+        long rankingRefreshMinutes = Long.parseLong(setting("ranking.refresh.minutes", "5"));
+        // Only rank symbols with a trained model so ranking never triggers a fetch
+        rankingService = new RankingService(universe, loadTracker, predictionCache,
+            symbol -> modelCache.containsKey(symbol) ? getPredictionForStock(symbol) : null,
+            debounceMillis, rankingRefreshMinutes);
+        rankingService.setPublishListener(snapshot -> {
+            updates.rankingPublished(snapshot);
+            if (tradingScheduler != null) {
+                tradingScheduler.onRanking(snapshot.predictions); // Each recompute follows new bars or models
+            }
+        });
+        prefetcher.setUpdateListener(symbol -> {
+            rankingService.markDirty(symbol);
+            updates.barChanged(barStore.get(symbol));
+            if (tradingGateway instanceof PaperBroker paper) {
+                paper.onBar(barStore.get(symbol)); // Fills resting orders the new bar crosses
+            }
+        });
+    }
+
+    /**
+     * Seeds the caches from local files, then revalidates the whole universe and keeps it
+     * refreshed, all on a background thread so the server answers from the first second.
+     */
+    private static void startBackgroundLoad() {
+        Thread loader = new Thread(() -> {
+            // Seed the cache from local CSV archives so those symbols skip the API entirely
+            String importDir = setting("import.dir", null);
+            if (importDir != null && !importDir.trim().isEmpty()) {
+                importHistoricalData(importDir.trim());
             }
-            if (!processingExecutor.awaitTermination(5, TimeUnit.MINUTES)) {
-                processingExecutor.shutdownNow();
+            loadCachedFiles();
+
+            rankingService.start();
+
+            long progressSeconds = Long.parseLong(setting("prefetch.progress.seconds", "10"));
+            prefetcher.prefetch(progressSeconds);
+            loadTracker.markInitialLoadComplete();
+            rankingService.markAllDirty();
+            prefetcher.scheduleRefresh();
+        }, "initial-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Makes symbols with data/json files servable right away, without touching the API
+     * or training; the prefetcher revalidates them afterwards.
+     */
+    private static void loadCachedFiles() {
+        int loaded = 0;
+        for (String symbol : universe.symbols()) {
+            File jsonFile = new File("data/json/" + symbol + "_daily.json");
+            if (stockDataCache.containsKey(symbol) || !jsonFile.exists() || jsonFile.length() == 0) {
+                continue;
+            }
+            try {
+                List<StockDataManager.StockEntry> data = StockDataManager.processData(jsonFile.getPath(), symbol);
+                if (!data.isEmpty()) {
+                    cacheStockData(symbol, data);
+                    loadTracker.cached(symbol, SymbolLoadTracker.Source.DISK);
+                    loaded++;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error reading cached data for " + symbol + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Serving " + loaded + " symbols from files on disk while revalidating");
+    }
+
+    private static void importHistoricalData(String importDir) {
+        int threads = Integer.parseInt(setting("import.threads",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        try {
+            BulkCsvImporter.ImportStats stats = new BulkCsvImporter(threads, 8 * 1024 * 1024)
+                .importPaths(Arrays.asList(new File(importDir)), barStore);
+            System.out.println(stats);
+
+            int seeded = 0;
+            for (String symbol : universe.symbols()) {
+                BarSeries series = barStore.get(symbol);
+                if (series != null && series.size() > 0) {
+                    stockDataCache.put(symbol, series.toEntries());
+                    barStore.put(series);
+                    loadTracker.cached(symbol, SymbolLoadTracker.Source.IMPORT);
+                    seeded++;
+                }
             }
-        } catch (InterruptedException e) {
-            apiExecutor.shutdownNow();
-            processingExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
+            System.out.println("Seeded " + seeded + " of " + universe.size() + " symbols from " + importDir);
+        } catch (IOException e) {
+            System.err.println("Error importing historical data from " + importDir + ": " + e.getMessage());
+        }
+    }
+
+    private static void cacheStockData(String symbol, List<StockDataManager.StockEntry> data) {
+        stockDataCache.put(symbol, data);
+        BarSeries series = BarSeries.fromEntries(symbol, data);
+        barStore.put(series);
+        updates.barChanged(series);
+    }
+
+    private static File snapshotFile() {
+        return new File(setting("snapshot.file", "data/snapshot/warm-state.bin"));
+    }
+
+    private static boolean restoreWarmState() {
+        if (!Boolean.parseBoolean(setting("snapshot.enabled", "true"))) {
+            return false;
         }
 
-        System.out.println("Data loading completed. Cached data for " + stockDataCache.size() + " symbols");
-        if (stockDataCache.size() > 0) {
-            System.out.println("\nAvailable stocks:");
-            stockDataCache.forEach((symbol, data) -> {
-                System.out.println(symbol + ": " + data.size() + " entries, latest date: " + data.get(0).date);
+        long startTime = System.currentTimeMillis();
+        try {
+            WarmStateSnapshot snapshot = WarmStateSnapshot.read(snapshotFile());
+            if (snapshot == null || snapshot.series.isEmpty()) {
+                return false;
+            }
+
+            snapshot.series.forEach((symbol, series) -> {
+                barStore.put(series);
+                stockDataCache.put(symbol, series.toEntries());
+                loadTracker.cached(symbol, SymbolLoadTracker.Source.SNAPSHOT);
             });
+            modelCache.putAll(snapshot.models);
+            predictionCache.putAll(snapshot.predictions);
+            rankingService.seed(snapshot.ranking);
+
+            long ageMinutes = (System.currentTimeMillis() - snapshot.createdAt) / 60000;
+            System.out.println("Restored warm state for " + snapshot.series.size() + " symbols (" +
+                             snapshot.models.size() + " models, " + snapshot.ranking.size() + " ranked) in " +
+                             (System.currentTimeMillis() - startTime) + " ms, snapshot age " + ageMinutes + " minutes");
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error restoring warm state, loading from scratch: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void scheduleSnapshots() {
+        if (!Boolean.parseBoolean(setting("snapshot.enabled", "true"))) {
+            return;
+        }
+
+        long intervalMinutes = Long.parseLong(setting("snapshot.interval.minutes", "15"));
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warm-state-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleAtFixedRate(WebVisualization::writeSnapshot, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(WebVisualization::writeSnapshot, "warm-state-shutdown"));
+    }
+
+    private static synchronized void writeSnapshot() {
+        if (barStore.size() == 0) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        WarmStateSnapshot snapshot = new WarmStateSnapshot();
+        for (String symbol : barStore.symbols()) {
+            snapshot.series.put(symbol, barStore.get(symbol));
+        }
+        snapshot.models.putAll(modelCache);
+        snapshot.predictions.putAll(predictionCache);
+        snapshot.ranking = new ArrayList<>(rankingService.current().predictions);
+
+        try {
+            long bytes = snapshot.write(snapshotFile());
+            System.out.println("Wrote warm state snapshot (" + snapshot.series.size() + " symbols, " +
+                             (bytes / 1024) + " KB) in " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (IOException e) {
+            System.err.println("Error writing warm state snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Trains on the shared CPU pool so concurrent requests cannot oversubscribe the cores.
+     */
+    private static Model trainModel(String symbol, List<StockDataManager.StockEntry> data) throws Exception {
+        Future<Model> training = execution.cpu().submit(() -> {
+            Model model = new Model();
+            model.prepareData(data);
+            model.trainModel();
+            return model;
+        });
+        Model model;
+        try {
+            model = training.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        modelCache.put(symbol, model);
+        return model;
+    }
+
+    // True while a universe symbol's first background load is still running
+    private static boolean isLoading(String symbol) {
+        SymbolLoadTracker.Status status = loadTracker.get(symbol);
+        return universe.contains(symbol) && !stockDataCache.containsKey(symbol) &&
+               (status.state == SymbolLoadTracker.State.PENDING || status.state == SymbolLoadTracker.State.LOADING);
+    }
+
+    private static long ioTimeoutMillis() {
+        return Long.parseLong(setting("execution.io.timeout.ms", "30000"));
+    }
+
+    /**
+     * Loads a classpath resource once and keeps it, compressed, in memory.
+     */
+    private static CachedPayload staticAsset(String resource, String contentType) throws IOException {
+        CachedPayload asset = staticAssets.get(resource);
+        if (asset == null) {
+            try (InputStream is = WebVisualization.class.getClassLoader().getResourceAsStream(resource)) {
+                if (is == null) {
+                    return null;
+                }
+                asset = CachedPayload.of(resource, contentType, is.readAllBytes(), System.currentTimeMillis());
+            }
+            staticAssets.putIfAbsent(resource, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * Returns the symbol's prediction as a cached payload, rebuilt only when its data,
+     * model, market session or staleness changed.
+     */
+    private static CachedPayload predictionPayload(String symbol) throws Exception {
+        CachedPayload cached = cachedPredictionPayload(symbol);
+        if (cached != null) {
+            return cached; // Built by another request while this one waited
+        }
+
+        String before = predictionVersion(symbol);
+        PredictionResult prediction = getPredictionForStock(symbol);
+        // Computing may have fetched data or trained a model; only a prediction made from the
+        // data and model that are still cached is kept
+        String built = predictionVersion(symbol);
+        CachedPayload payload = CachedPayload.of(built != null ? built : "", "application/json",
+                                                 Json.toJson(prediction), System.currentTimeMillis());
+        if (built != null && built.equals(before)) {
+            predictionPayloads.put(symbol, payload);
         }
+        return payload;
     }
 
-    private static Map<String, Object> getPredictionForStock(String symbol) throws Exception {
+    /**
+     * Returns the symbol's payload if it is still current, or null if it has to be computed.
+     */
+    private static CachedPayload cachedPredictionPayload(String symbol) {
+        String version = predictionVersion(symbol);
+        CachedPayload cached = predictionPayloads.get(symbol);
+        if (version != null && cached != null && cached.version.equals(version)) {
+            if (universe.contains(symbol) && loadTracker.isStale(symbol) && prefetcher != null) {
+                prefetcher.revalidate(symbol);
+            }
+            return cached;
+        }
+        return null;
+    }
+
+    // Counts replacements of the cached data list and model; read before the entries themselves
+    private static String predictionVersion(String symbol) {
+        long dataVersion = stockDataCache.version(symbol);
+        long modelVersion = modelCache.version(symbol);
+        List<StockDataManager.StockEntry> data = stockDataCache.get(symbol);
+        Model model = modelCache.get(symbol);
+        if (data == null || data.isEmpty() || model == null) {
+            return null;
+        }
+        boolean stale = universe.contains(symbol) && loadTracker.isStale(symbol);
+        return dataVersion + "-" + modelVersion + "-" + isMarketClosed() + "-" + stale;
+    }
+
+    private static boolean isMarketClosed() {
+        java.time.LocalTime currentTime = java.time.LocalTime.now();
+        java.time.LocalTime marketOpen = java.time.LocalTime.of(9, 30);  // Market opens at 9:30 AM
+        java.time.LocalTime marketClose = java.time.LocalTime.of(16, 0); // Market closes at 4:00 PM
+        return currentTime.isAfter(marketClose) || currentTime.isBefore(marketOpen);
+    }
+
+    private static PredictionResult getPredictionForStock(String symbol) throws Exception {
         if (apiKey == null || apiKey.trim().isEmpty()) {
             throw new Exception("API key is not configured");
         }
@@ -378,31 +1176,31 @@ public class WebVisualization {
         List<StockDataManager.StockEntry> data = stockDataCache.get(symbol);
         Model model = modelCache.get(symbol);
 
+        // Data loaded from disk without a model yet: train on it now, revalidate later
+        if (data != null && !data.isEmpty() && model == null) {
+            model = trainModel(symbol, data);
+            rankingService.markDirty(symbol);
+        }
+
         // If no data in cache or no model, try to fetch and process new data
         if (data == null || data.isEmpty() || model == null) {
             try {
                 StockDataManager stockManager = new StockDataManager(apiKey);
                 stockManager.setSymbol(symbol);
-                data = stockManager.fetchAndSaveStockData(symbol);
+                data = execution.callIo(() -> stockManager.fetchAndSaveStockData(symbol), ioTimeoutMillis());
                 
                 if (data == null || data.isEmpty()) {
                     System.out.println("No data available for " + symbol + ", using mock data");
                     data = StockDataManager.generateMockData(symbol);
                 }
                 
-                stockDataCache.put(symbol, data);
-                model = new Model();
-                model.prepareData(data);
-                model.trainModel();
-                modelCache.put(symbol, model);
+                cacheStockData(symbol, data);
+                model = trainModel(symbol, data);
             } catch (Exception e) {
                 System.out.println("Error fetching data for " + symbol + ", using mock data: " + e.getMessage());
                 data = StockDataManager.generateMockData(symbol);
-                stockDataCache.put(symbol, data);
-                model = new Model();
-                model.prepareData(data);
-                model.trainModel();
-                modelCache.put(symbol, model);
+                cacheStockData(symbol, data);
+                model = trainModel(symbol, data);
             }
         }
 
@@ -410,10 +1208,7 @@ public class WebVisualization {
         StockDataManager.StockEntry lastEntry = data.get(0); // Data is in reverse chronological order
         
         // Check if market is closed
-        java.time.LocalTime currentTime = java.time.LocalTime.now();
-        java.time.LocalTime marketOpen = java.time.LocalTime.of(9, 30);  // Market opens at 9:30 AM
-        java.time.LocalTime marketClose = java.time.LocalTime.of(16, 0); // Market closes at 4:00 PM
-        boolean isMarketClosed = currentTime.isAfter(marketClose) || currentTime.isBefore(marketOpen);
+        boolean isMarketClosed = isMarketClosed();
         
         // Get predictions
         double predictedClose = model.predictNextDayPrice(lastEntry, data);
@@ -426,35 +1221,18 @@ public class WebVisualization {
         double predictedHigh = Math.max(predictedOpen, predictedClose) * 1.01;   // Estimate 1% higher
         double predictedLow = Math.min(predictedOpen, predictedClose) * 0.99;    // Estimate 1% lower
         
-        // Create response map
-        Map<String, Object> response = new HashMap<>();
-        response.put("success", true);
-        response.put("symbol", symbol);
-        response.put("date", lastEntry.date);
-        response.put("lastClose", lastEntry.close);
-        response.put("todayOpen", lastEntry.open); // Always use actual open price
-        response.put("currentPrice", lastEntry.close); // Use actual current price
-        response.put("predictedHigh", predictedHigh);
-        response.put("predictedLow", predictedLow);
-        response.put("predictedClose", predictedClose);
-        response.put("volume", lastEntry.volume);
-        
-        // Calculate trading signals
-        Map<String, Object> tradingSignals = new HashMap<>();
-        
         // Calculate price changes
         double openToCloseChange = ((lastEntry.close - lastEntry.open) / lastEntry.open) * 100;
         double currentToPredictedChange = ((predictedClose - lastEntry.close) / lastEntry.close) * 100;
         
         // If market is closed, predict next day's open
+        Double nextDayPredictedOpen = null;
+        Double nextDayPredictedChange = null;
         if (isMarketClosed) {
-            double nextDayPredictedOpen = predictedClose; // Use predicted close as next day's open
-            response.put("nextDayPredictedOpen", nextDayPredictedOpen);
-            tradingSignals.put("nextDayPredictedOpen", nextDayPredictedOpen);
+            nextDayPredictedOpen = predictedClose; // Use predicted close as next day's open
             
             // Calculate next day's predicted movement
-            double nextDayPredictedChange = ((nextDayPredictedOpen - lastEntry.close) / lastEntry.close) * 100;
-            tradingSignals.put("nextDayPredictedChange", nextDayPredictedChange);
+            nextDayPredictedChange = ((nextDayPredictedOpen - lastEntry.close) / lastEntry.close) * 100;
         }
         
         // Use the more significant change for the main prediction
@@ -463,21 +1241,16 @@ public class WebVisualization {
             Math.abs(openToCloseChange) > Math.abs(currentToPredictedChange) ? 
                 openToCloseChange : currentToPredictedChange;
         
-        // Add data source information
-        tradingSignals.put("dataSource", lastEntry.isMockData ? "Mock Data" : "Real Data");
-        
         // Risk management calculations
         double volatility = Math.abs(predictedHigh - predictedLow) / predictedOpen * 100;
         double stopLossPercent = Math.max(2.0, volatility * 0.5); // Minimum 2% stop loss
         double takeProfitPercent = Math.max(stopLossPercent * 1.5, Math.abs(percentChange)); // Minimum 1.5:1 reward:risk
-        
-        tradingSignals.put("stopLossPercent", stopLossPercent);
-        tradingSignals.put("takeProfitPercent", takeProfitPercent);
-        tradingSignals.put("riskRewardRatio", takeProfitPercent / stopLossPercent);
-        tradingSignals.put("predictedChange", percentChange);
-        tradingSignals.put("openToCloseChange", openToCloseChange);
-        tradingSignals.put("currentToPredictedChange", currentToPredictedChange);
-        tradingSignals.put("confidence", 0.85); // Default confidence value
+        // Simulated levels replace the rules of thumb when there is enough history (cached per bar)
+        MonteCarloCalibrator.Calibration calibration = calibrate(symbol, percentChange);
+        if (calibration != null) {
+            stopLossPercent = calibration.best().stopLossPercent();
+            takeProfitPercent = calibration.best().takeProfitPercent();
+        }
         
         // Determine sentiment and recommendation based on both changes
         String sentiment;
@@ -493,15 +1266,49 @@ public class WebVisualization {
             recommendation = "Hold";
         }
         
-        tradingSignals.put("sentiment", sentiment);
-        tradingSignals.put("recommendation", recommendation);
-        response.put("tradingSignals", tradingSignals);
+        TradingSignals tradingSignals = new TradingSignals(
+            nextDayPredictedOpen,
+            nextDayPredictedChange,
+            lastEntry.isMockData ? "Mock Data" : "Real Data",
+            stopLossPercent,
+            takeProfitPercent,
+            takeProfitPercent / stopLossPercent,
+            percentChange,
+            openToCloseChange,
+            currentToPredictedChange,
+            0.85, // Default confidence value
+            sentiment,
+            recommendation);
+
+        // Stale-while-revalidate: answer now, refresh in the background
+        boolean stale = universe.contains(symbol) && loadTracker.isStale(symbol);
+        long refreshedAt = loadTracker.get(symbol).refreshedAt;
+        if (stale && prefetcher != null) {
+            prefetcher.revalidate(symbol);
+        }
+
+        PredictionResult response = new PredictionResult(
+            true,
+            symbol,
+            lastEntry.date,
+            lastEntry.close,
+            lastEntry.open,  // Always use actual open price
+            lastEntry.close, // Use actual current price
+            predictedHigh,
+            predictedLow,
+            predictedClose,
+            lastEntry.volume,
+            nextDayPredictedOpen,
+            tradingSignals,
+            stale,
+            refreshedAt > 0 ? java.time.Instant.ofEpochMilli(refreshedAt).toString() : null);
+        predictionCache.put(symbol, response);
         
         return response;
     }
     
     private static void loadConfiguration() {
-        Properties props = new Properties();
+        Properties props = config;
         
         // First try loading from classpath
         try (InputStream inputStream = WebVisualization.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
@@ -550,11 +1357,44 @@ public class WebVisualization {
         }
     }
     
+    /**
+     * Looks up a setting, letting -D system properties override config.properties.
+     */
+    private static String setting(String key, String defaultValue) {
+        return System.getProperty(key, config.getProperty(key, defaultValue));
+    }
+
+    /**
+     * All settings with the given prefix, with -D system properties applied on top.
+     */
+    private static Properties effectiveSettings(String prefix) {
+        Properties settings = new Properties();
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                settings.setProperty(key, config.getProperty(key));
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                settings.setProperty(key, System.getProperty(key));
+            }
+        }
+        return settings;
+    }
+
+    // Fast rejection: the client is told when to come back instead of holding a thread
+    private static String reject(spark.Response res, AdmissionController.RejectedException e) {
+        res.type("application/json");
+        res.status(e.status);
+        res.header("Retry-After", String.valueOf(e.retryAfterSeconds));
+        return createErrorResponse(e.getMessage());
+    }
+
     private static String createErrorResponse(String message) {
-        Map<String, Object> error = new HashMap<>();
-        error.put("success", false);
-        error.put("error", message);
-        return new Gson().toJson(error);
+        return Json.toJson(new ErrorResponse(false, message));
+    }
+
+    private record ErrorResponse(boolean success, String error) {
     }
     
     private static void enableCORS() {
@@ -575,7 +1415,7 @@ public class WebVisualization {
         before((request, response) -> {
             response.header("Access-Control-Allow-Origin", "*");
             response.header("Access-Control-Request-Method", "GET,POST,PUT,DELETE,OPTIONS");
-            response.header("Access-Control-Allow-Headers", "Content-Type,Authorization,X-Requested-With,Content-Length,Accept,Origin");
+            response.header("Access-Control-Allow-Headers", "Content-Type,Authorization,X-Requested-With,Content-Length,Accept,Origin,X-Session-Id");
             response.type("application/json");
         });
     }